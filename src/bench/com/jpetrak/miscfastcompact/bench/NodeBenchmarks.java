@@ -0,0 +1,81 @@
+package com.jpetrak.miscfastcompact.bench;
+
+import com.jpetrak.miscfastcompact.graph.GraphStore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding nodes to a new store and bulk loading the edges of an R-MAT 
+ * graph. 
+ * 
+ * @author Johann Petrak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NodeBenchmarks {
+  
+  static final int NR_NODES = 1 << 16;
+  
+  @Param({"16"})
+  public int scale;
+  
+  @Param({"16"})
+  public int edgeFactor;
+  
+  private String[] names;
+  private RmatGenerator generator;
+  private int[][] edges;
+  
+  @Setup
+  public void setup() {
+    names = new String[NR_NODES];
+    for(int i=0; i<NR_NODES; i++) {
+      names[i] = RmatGenerator.nodeName(i);
+    }
+    generator = new RmatGenerator(scale, edgeFactor, 42L);
+    edges = generator.generate();
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(NR_NODES)
+  public GraphStore addNode() {
+    GraphStore gstore = new GraphStore();
+    for(String name : names) {
+      gstore.addNode(name);
+    }
+    return gstore;
+  }
+  
+  @Benchmark
+  public GraphStore bulkLoad() {
+    GraphStore gstore = new GraphStore();
+    int n = generator.getNumberOfNodes();
+    for(int i=0; i<n; i++) {
+      gstore.addNode(RmatGenerator.nodeName(i));
+    }
+    int[] from = edges[0];
+    int[] to = edges[1];
+    int[] data = edges[2];
+    gstore.startImport(from.length);
+    for(int i=0; i<from.length; i++) {
+      gstore.addEdge(from[i], to[i], data[i]);
+    }
+    gstore.finishImport();
+    return gstore;
+  }
+}
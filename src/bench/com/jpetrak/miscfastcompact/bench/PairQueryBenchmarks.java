@@ -0,0 +1,126 @@
+package com.jpetrak.miscfastcompact.bench;
+
+import com.jpetrak.miscfastcompact.graph.GraphStore;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The pair queries on an R-MAT graph, for pairs of nodes with a similar 
+ * degree (balanced) and pairs of one of the nodes with the highest degree 
+ * and a node with a low degree (skewed). Each invocation runs the query 
+ * for PAIRS pairs.
+ * 
+ * @author Johann Petrak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PairQueryBenchmarks {
+  
+  static final int PAIRS = 1024;
+  
+  @Param({"18"})
+  public int scale;
+  
+  @Param({"16"})
+  public int edgeFactor;
+  
+  @Param({"balanced", "skewed"})
+  public String pairs;
+  
+  @Param({"false", "true"})
+  public boolean frozen;
+  
+  private GraphStore gstore;
+  private int[] nodes1 = new int[PAIRS];
+  private int[] nodes2 = new int[PAIRS];
+  
+  @Setup
+  public void setup() {
+    gstore = new RmatGenerator(scale, edgeFactor, 42L).createStore();
+    if(frozen) {
+      gstore.freeze();
+    }
+    // nodes with at least one edge, ordered by degree
+    int n = gstore.getNumberOfNodes();
+    long[] keys = new long[n];
+    int m = 0;
+    for(int i=0; i<n; i++) {
+      long degree = (long)gstore.getOutDegree(i) + gstore.getInDegree(i);
+      if(degree > 0) {
+        keys[m++] = (degree << 32) | i;
+      }
+    }
+    Arrays.sort(keys, 0, m);
+    Random rnd = new Random(1);
+    for(int i=0; i<PAIRS; i++) {
+      if(pairs.equals("balanced")) {
+        // two nodes at most 1% apart in the degree order
+        int p = rnd.nextInt(m);
+        int q = Math.min(m-1, p + rnd.nextInt(Math.max(1, m/100)));
+        nodes1[i] = (int)keys[p];
+        nodes2[i] = (int)keys[q];
+      } else {
+        // one of the top 0.1% and one of the bottom half
+        nodes1[i] = (int)keys[m-1-rnd.nextInt(Math.max(1, m/1000))];
+        nodes2[i] = (int)keys[rnd.nextInt(Math.max(1, m/2))];
+      }
+    }
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public int firstEdgeData() {
+    int sum = 0;
+    for(int i=0; i<PAIRS; i++) {
+      sum += gstore.getFirstEdgeData(nodes1[i], nodes2[i]);
+    }
+    return sum;
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public int sumEdgeDataSharedParent() {
+    int sum = 0;
+    for(int i=0; i<PAIRS; i++) {
+      sum += gstore.getSumEdgeDataSharedParent(nodes1[i], nodes2[i]);
+    }
+    return sum;
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public int sumEdgeDataSharedChild() {
+    int sum = 0;
+    for(int i=0; i<PAIRS; i++) {
+      sum += gstore.getSumEdgeDataSharedChild(nodes1[i], nodes2[i]);
+    }
+    return sum;
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(PAIRS)
+  public int sumEdgeDataSequence() {
+    int sum = 0;
+    for(int i=0; i<PAIRS; i++) {
+      sum += gstore.getSumEdgeDataSequence(nodes1[i], nodes2[i]);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,134 @@
+package com.jpetrak.miscfastcompact.bench;
+
+import com.jpetrak.miscfastcompact.graph.GraphStore;
+import java.util.Random;
+
+/**
+ * Reproducible generator for random graphs with a power law degree 
+ * distribution using the R-MAT method: each edge is placed by recursively
+ * choosing one of the four quadrants of the adjacency matrix with 
+ * probabilities a, b, c and d, scale times. The defaults are the ones
+ * used by Graph500, which give a few hubs with very many edges and many 
+ * nodes with only a few. Node ids are scrambled so that the hubs are not 
+ * all at small ids. The same parameters and seed always give the same 
+ * edges in the same order.
+ * 
+ * @author Johann Petrak
+ */
+public class RmatGenerator {
+  
+  private final int scale;
+  private final int edgeFactor;
+  private final double a, b, c;
+  private final long seed;
+  
+  /**
+   * Generator for 2^scale nodes and edgeFactor*2^scale edges with the 
+   * Graph500 probabilities a=0.57, b=0.19, c=0.19, d=0.05.
+   * @param scale
+   * @param edgeFactor
+   * @param seed 
+   */
+  public RmatGenerator(int scale, int edgeFactor, long seed) {
+    this(scale, edgeFactor, 0.57, 0.19, 0.19, seed);
+  }
+  
+  public RmatGenerator(int scale, int edgeFactor, double a, double b, double c, long seed) {
+    if(scale < 1 || scale > 30) {
+      throw new RuntimeException("Scale must be between 1 and 30 but is "+scale);
+    }
+    if(a+b+c > 1.0) {
+      throw new RuntimeException("The probabilities a, b and c must add up to at most 1");
+    }
+    this.scale = scale;
+    this.edgeFactor = edgeFactor;
+    this.a = a;
+    this.b = b;
+    this.c = c;
+    this.seed = seed;
+  }
+  
+  public int getNumberOfNodes() {
+    return 1 << scale;
+  }
+  
+  public long getNumberOfEdges() {
+    return (long)edgeFactor << scale;
+  }
+  
+  /**
+   * The name of the node with the given id, a URI like the ones this 
+   * library is meant for.
+   * @param nodeId
+   * @return 
+   */
+  public static String nodeName(int nodeId) {
+    return "http://example.org/resource/node"+nodeId;
+  }
+  
+  /**
+   * Generate all edges: from[i] -> to[i] with edge data data[i] between 
+   * 1 and 100. 
+   * @return an array with the from, to and data arrays
+   */
+  public int[][] generate() {
+    long m = getNumberOfEdges();
+    if(m > Integer.MAX_VALUE-8) {
+      throw new RuntimeException("Too many edges to generate into arrays: "+m);
+    }
+    int[] from = new int[(int)m];
+    int[] to = new int[(int)m];
+    int[] data = new int[(int)m];
+    Random rnd = new Random(seed);
+    int mask = (1 << scale) - 1;
+    for(int i=0; i<m; i++) {
+      int u = 0;
+      int v = 0;
+      for(int bit=0; bit<scale; bit++) {
+        double r = rnd.nextDouble();
+        u <<= 1;
+        v <<= 1;
+        if(r < a) {
+          // top left
+        } else if(r < a+b) {
+          v |= 1;
+        } else if(r < a+b+c) {
+          u |= 1;
+        } else {
+          u |= 1;
+          v |= 1;
+        }
+      }
+      from[i] = scramble(u) & mask;
+      to[i] = scramble(v) & mask;
+      data[i] = 1+rnd.nextInt(100);
+    }
+    return new int[][]{from, to, data};
+  }
+  
+  /**
+   * Create a store with all the nodes and generated edges, using the bulk
+   * import.
+   * @return 
+   */
+  public GraphStore createStore() {
+    GraphStore gstore = new GraphStore();
+    int n = getNumberOfNodes();
+    for(int i=0; i<n; i++) {
+      gstore.addNode(nodeName(i));
+    }
+    int[][] edges = generate();
+    gstore.startImport(edges[0].length);
+    for(int i=0; i<edges[0].length; i++) {
+      gstore.addEdge(edges[0][i], edges[1][i], edges[2][i]);
+    }
+    gstore.finishImport();
+    return gstore;
+  }
+  
+  // a bijection on the ids below 2^scale: multiplying by an odd number 
+  // modulo 2^scale permutes them
+  private int scramble(int id) {
+    return (int)(id * 0x9E3779B1L + (seed & 0xFFFF));
+  }
+}
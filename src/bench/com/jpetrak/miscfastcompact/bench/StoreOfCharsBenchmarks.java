@@ -0,0 +1,91 @@
+package com.jpetrak.miscfastcompact.bench;
+
+import com.jpetrak.miscfastcompact.store.StoreOfChars;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The list operations of StoreOfChars: appending elements to a list, 
+ * getting an element by its index and finding an element.
+ * 
+ * @author Johann Petrak
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StoreOfCharsBenchmarks {
+  
+  static final int LOOKUPS = 1024;
+  
+  @Param({"10", "1000"})
+  public int listSize;
+  
+  private char[][] elements;
+  private StoreOfChars store;
+  private int listIndex;
+  private int[] lookups = new int[LOOKUPS];
+  
+  @Setup
+  public void setup() {
+    Random rnd = new Random(1);
+    elements = new char[listSize][];
+    for(int i=0; i<listSize; i++) {
+      elements[i] = ("element"+i+"-"+rnd.nextInt(1000)).toCharArray();
+    }
+    store = new StoreOfChars();
+    listIndex = buildList(store);
+    for(int i=0; i<LOOKUPS; i++) {
+      lookups[i] = rnd.nextInt(listSize);
+    }
+  }
+  
+  private int buildList(StoreOfChars s) {
+    // index 0 cannot be appended to, so make sure the list starts later
+    s.addData(new char[]{' '});
+    int index = s.addListData(elements[0]);
+    for(int i=1; i<listSize; i++) {
+      index = s.addListData(index, elements[i]);
+    }
+    return index;
+  }
+  
+  @Benchmark
+  public int appendList() {
+    return buildList(new StoreOfChars());
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(LOOKUPS)
+  public int getListData() {
+    int sum = 0;
+    for(int i=0; i<LOOKUPS; i++) {
+      sum += store.getListData(listIndex, lookups[i]).length;
+    }
+    return sum;
+  }
+  
+  @Benchmark
+  @OperationsPerInvocation(LOOKUPS)
+  public int findListElementIndex() {
+    int sum = 0;
+    for(int i=0; i<LOOKUPS; i++) {
+      sum += store.findListElementIndex(listIndex, elements[lookups[i]]);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,99 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * An edge cursor that views int arrays: the node id of the edge at 
+ * position i is at nodeIds[nodeIdBase+i*stride] and the edge data is at 
+ * edgeData[edgeDataBase+i*stride]. This covers both the interleaved 
+ * (nodeId, edgeData) chunks of a StoreOfInts (same array, stride 2) and 
+ * separate flat arrays (stride 1).
+ * 
+ * @author Johann Petrak
+ */
+public final class ArrayEdgeCursor extends EdgeCursor {
+  private int[] nodeIds;
+  private int nodeIdBase;
+  private int[] edgeData;
+  private int edgeDataBase;
+  private int stride = 1;
+  private int size = 0;
+  // buffer owned by the cursor, for edge lists which have to assemble
+  // the edges of a node first, see DeltaEdgeLists
+  private int[] buffer;
+  
+  /**
+   * Position the cursor on a range of edges in the given arrays.
+   * @param nodeIds
+   * @param nodeIdBase
+   * @param edgeData
+   * @param edgeDataBase
+   * @param stride
+   * @param size 
+   */
+  public void set(int[] nodeIds, int nodeIdBase, int[] edgeData, int edgeDataBase, int stride, int size) {
+    this.nodeIds = nodeIds;
+    this.nodeIdBase = nodeIdBase;
+    this.edgeData = edgeData;
+    this.edgeDataBase = edgeDataBase;
+    this.stride = stride;
+    this.size = size;
+  }
+  
+  // return the buffer of the cursor, with at least the given length: if a 
+  // new buffer is needed, the content of the old one is not kept
+  @Override
+  int[] getBuffer(int length) {
+    if(buffer == null || buffer.length < length) {
+      buffer = new int[Math.max(length, 2*(buffer == null ? 16 : buffer.length))];
+    }
+    return buffer;
+  }
+  
+  @Override
+  void viewBuffer(int size) {
+    set(buffer, 0, buffer, 1, 2, size);
+  }
+  
+  @Override
+  public void clear() {
+    nodeIds = null;
+    edgeData = null;
+    size = 0;
+  }
+  
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int nodeId(int pos) {
+    return nodeIds[nodeIdBase+pos*stride];
+  }
+
+  @Override
+  public int edgeData(int pos) {
+    return edgeData[edgeDataBase+pos*stride];
+  }
+
+  @Override
+  public int find(int nodeId, int from, int to) {
+    // same as the generic version, but directly on the array
+    final int[] ids = nodeIds;
+    final int base = nodeIdBase;
+    final int s = stride;
+    int low = from;
+    int high = to-1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midVal = ids[base+mid*s];
+      if (midVal < nodeId) {
+        low = mid + 1;
+      } else if (midVal > nodeId) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -low-1;
+  }
+}
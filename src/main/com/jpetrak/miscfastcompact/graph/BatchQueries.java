@@ -0,0 +1,80 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs one kind of pair query for many pairs of nodes. 
+ * The pairs are first ordered by the first and then the second node, so 
+ * that the queries which follow each other access the same or nearby 
+ * edge lists, then the ordered pairs are split into blocks which are 
+ * processed in parallel in a ForkJoinPool. The results are written to the
+ * result array in the original order of the pairs.
+ * 
+ * @author Johann Petrak
+ */
+class BatchQueries {
+  
+  // blocks of pairs smaller than this are processed by a single task
+  static final int BLOCK_SIZE = 1024;
+  
+  private BatchQueries() {}
+  
+  static void run(final GraphStore gstore, final PairQuery query, 
+          int[] node1s, int[] node2s, final int[] result, ForkJoinPool pool) {
+    if(node1s.length != node2s.length) {
+      throw new RuntimeException("Different number of first and second nodes: "+node1s.length+"/"+node2s.length);
+    }
+    if(result.length < node1s.length) {
+      throw new RuntimeException("Result array too small: "+result.length+"/"+node1s.length);
+    }
+    final int n = node1s.length;
+    if(n <= BLOCK_SIZE || pool == null) {
+      // not worth sorting and splitting
+      for(int i=0; i<n; i++) {
+        result[i] = gstore.query(query, node1s[i], node2s[i]);
+      }
+      return;
+    }
+    final int[] sorted1 = node1s.clone();
+    final int[] sorted2 = node2s.clone();
+    final int[] index = new int[n];
+    for(int i=0; i<n; i++) {
+      index[i] = i;
+    }
+    IntArrays.radixSort(new int[][]{sorted1, sorted2, index});
+    pool.invoke(new Block(gstore, query, sorted1, sorted2, index, result, 0, n));
+  }
+  
+  private static class Block extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final GraphStore gstore;
+    private final PairQuery query;
+    private final int[] node1s, node2s, index, result;
+    private final int from, to;
+    Block(GraphStore gstore, PairQuery query, int[] node1s, int[] node2s, 
+            int[] index, int[] result, int from, int to) {
+      this.gstore = gstore;
+      this.query = query;
+      this.node1s = node1s;
+      this.node2s = node2s;
+      this.index = index;
+      this.result = result;
+      this.from = from;
+      this.to = to;
+    }
+    @Override
+    protected void compute() {
+      if(to - from <= BLOCK_SIZE) {
+        for(int i=from; i<to; i++) {
+          result[index[i]] = gstore.query(query, node1s[i], node2s[i]);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Block(gstore, query, node1s, node2s, index, result, from, mid),
+                new Block(gstore, query, node1s, node2s, index, result, mid, to));
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.BigStoreOfInts;
+
+/**
+ * Modifiable edge lists like ChunkedEdgeLists, but the chunks are kept in
+ * a BigStoreOfInts and the list which maps each node id to its chunk index 
+ * contains longs, so there can be more than about 1 billion edges in one
+ * direction. The edges of a single node are limited to half the segment 
+ * size of the store. 
+ * <p>
+ * ChunkedEdgeLists switch to this automatically when their store gets too
+ * large, see ensureCapacity: the array of their store becomes the first 
+ * segments of the big store, so no edges get copied.
+ * 
+ * @author Johann Petrak
+ */
+public class BigChunkedEdgeLists extends ModifiableEdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  private BigStoreOfInts store;
+  private PagedLongList id2chunk;
+  private long nrEdges = 0;
+  
+  public BigChunkedEdgeLists() {
+    this(BigStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create empty edge lists with a store that has segments of 
+   * 2^segmentShift ints.
+   * @param segmentShift 
+   */
+  public BigChunkedEdgeLists(int segmentShift) {
+    this(new BigStoreOfInts(segmentShift), new PagedLongList(), 0);
+  }
+  
+  private BigChunkedEdgeLists(BigStoreOfInts store, PagedLongList id2chunk, long nrEdges) {
+    this.store = store;
+    this.id2chunk = id2chunk;
+    this.nrEdges = nrEdges;
+  }
+  
+  // for the chunks of ChunkedEdgeLists, which are at the same index in 
+  // the store
+  BigChunkedEdgeLists(BigStoreOfInts store, PagedIntList id2chunk, long nrEdges) {
+    this(store, new PagedLongList(), nrEdges);
+    int n = id2chunk.size();
+    for(int i=0; i<n; i++) {
+      this.id2chunk.add(id2chunk.getInt(i));
+    }
+  }
+  
+  /**
+   * Create big edge lists with a copy of all the edges of some other 
+   * edge lists.
+   * @param edges 
+   */
+  public BigChunkedEdgeLists(EdgeLists edges) {
+    this(edges, BigStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create big edge lists with segments of 2^segmentShift ints with a 
+   * copy of all the edges of some other edge lists.
+   * @param edges 
+   * @param segmentShift
+   */
+  public BigChunkedEdgeLists(EdgeLists edges, int segmentShift) {
+    this(segmentShift);
+    int n = edges.getNumberOfNodes();
+    EdgeCursor cursor = edges.newCursor();
+    int[] chunk = new int[64];
+    for(int i=0; i<n; i++) {
+      addNode();
+      if(edges.position(i, cursor)) {
+        int size = cursor.size();
+        if(chunk.length < 2*size) {
+          chunk = new int[Math.max(2*size, 2*chunk.length)];
+        }
+        for(int j=0; j<size; j++) {
+          chunk[2*j] = cursor.nodeId(j);
+          chunk[2*j+1] = cursor.edgeData(j);
+        }
+        setEdges(i, chunk, 2*size);
+      }
+    }
+  }
+  
+  @Override
+  public void addNode() {
+    id2chunk.add(-1);
+  }
+  
+  @Override
+  public void setEdges(int nodeId, int[] chunk, int length) {
+    long old = id2chunk.getLong(nodeId);
+    if(old >= 0) {
+      nrEdges -= store.getSize(old)/2;
+    }
+    id2chunk.set(nodeId, store.addData(chunk, length));
+    nrEdges += length/2;
+  }
+  
+  /**
+   * The index of the chunk for the node or -1.
+   * @param nodeId
+   * @return 
+   */
+  public long getChunkIndex(int nodeId) {
+    return id2chunk.getLong(nodeId);
+  }
+  
+  /**
+   * The store which contains all the chunks.
+   * @return 
+   */
+  public BigStoreOfInts getStore() {
+    return store;
+  }
+  
+  @Override
+  public ModifiableEdgeLists newEmpty() {
+    return new BigChunkedEdgeLists(store.getSegmentShift());
+  }
+  
+  @Override
+  public ModifiableEdgeLists snapshot() {
+    return new BigChunkedEdgeLists(store.snapshot(), id2chunk.snapshot(), nrEdges);
+  }
+  
+  @Override
+  public EdgeCursor newCursor() {
+    return new ArrayEdgeCursor();
+  }
+
+  // a chunk in the store is the length followed by the interleaved 
+  // (nodeId, edgeData) pairs, all in the array of one segment
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    ArrayEdgeCursor c = (ArrayEdgeCursor)cursor;
+    long chunkIndex = id2chunk.getLong(nodeId);
+    if(chunkIndex < 0) {
+      c.clear();
+      return false;
+    }
+    int[] elements = store.getSegment(chunkIndex);
+    int offset = store.getOffset(chunkIndex);
+    c.set(elements, offset+1, elements, offset+2, 2, elements[offset]/2);
+    return true;
+  }
+  
+  @Override
+  public int getDegree(int nodeId) {
+    long chunkIndex = id2chunk.getLong(nodeId);
+    return chunkIndex < 0 ? 0 : store.getSize(chunkIndex)/2;
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return id2chunk.size();
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return nrEdges;
+  }
+  
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".store", store.getMemoryFootprint());
+    footprint.add(prefix+".id2chunk", id2chunk.getMemoryFootprint());
+  }
+}
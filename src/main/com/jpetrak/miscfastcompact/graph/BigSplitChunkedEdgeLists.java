@@ -0,0 +1,167 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.BigStoreOfInts;
+
+/**
+ * Modifiable edge lists like SplitChunkedEdgeLists, but the node ids and
+ * the edge data are kept in two BigStoreOfInts and the list which maps
+ * each node id to its chunk index contains longs, so there can be more
+ * than about 2 billion edges in one direction. The edges of a single node
+ * are limited to the segment size of the stores.
+ * <p>
+ * SplitChunkedEdgeLists switch to this automatically when their stores
+ * get too large, see ensureCapacity: the arrays of their stores become
+ * the first segments of the big stores, so no edges get copied.
+ *
+ * @author Johann Petrak
+ */
+public class BigSplitChunkedEdgeLists extends ModifiableEdgeLists {
+  private static final long serialVersionUID = 1L;
+
+  private BigStoreOfInts idStore;
+  private BigStoreOfInts dataStore;
+  private PagedLongList id2chunk;
+  private long nrEdges = 0;
+  // buffers for splitting the interleaved chunks passed to setEdges
+  private transient int[] idBuffer;
+  private transient int[] dataBuffer;
+
+  public BigSplitChunkedEdgeLists() {
+    this(BigStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create empty edge lists with stores that have segments of
+   * 2^segmentShift ints.
+   * @param segmentShift
+   */
+  public BigSplitChunkedEdgeLists(int segmentShift) {
+    this(new BigStoreOfInts(segmentShift), new BigStoreOfInts(segmentShift), new PagedLongList(), 0);
+  }
+
+  private BigSplitChunkedEdgeLists(BigStoreOfInts idStore, BigStoreOfInts dataStore,
+          PagedLongList id2chunk, long nrEdges) {
+    this.idStore = idStore;
+    this.dataStore = dataStore;
+    this.id2chunk = id2chunk;
+    this.nrEdges = nrEdges;
+  }
+
+  // for the chunks of SplitChunkedEdgeLists, which are at the same index
+  // in the stores
+  BigSplitChunkedEdgeLists(BigStoreOfInts idStore, BigStoreOfInts dataStore,
+          PagedIntList id2chunk, long nrEdges) {
+    this(idStore, dataStore, new PagedLongList(), nrEdges);
+    int n = id2chunk.size();
+    for(int i=0; i<n; i++) {
+      this.id2chunk.add(id2chunk.getInt(i));
+    }
+  }
+
+  @Override
+  public void addNode() {
+    id2chunk.add(-1);
+  }
+
+  @Override
+  public void setEdges(int nodeId, int[] chunk, int length) {
+    int n = length/2;
+    if(idBuffer == null || idBuffer.length < n) {
+      idBuffer = new int[Math.max(n, 16)];
+      dataBuffer = new int[idBuffer.length];
+    }
+    for(int i=0; i<n; i++) {
+      idBuffer[i] = chunk[2*i];
+      dataBuffer[i] = chunk[2*i+1];
+    }
+    long old = id2chunk.getLong(nodeId);
+    if(old >= 0) {
+      nrEdges -= idStore.getSize(old);
+    }
+    // both stores always get chunks of the same length, so the indices
+    // are the same
+    long index = idStore.addData(idBuffer, n);
+    dataStore.addData(dataBuffer, n);
+    id2chunk.set(nodeId, index);
+    nrEdges += n;
+  }
+
+  /**
+   * The index of the chunks for the node or -1.
+   * @param nodeId
+   * @return
+   */
+  public long getChunkIndex(int nodeId) {
+    return id2chunk.getLong(nodeId);
+  }
+
+  /**
+   * The store which contains all the chunks of node ids.
+   * @return
+   */
+  public BigStoreOfInts getIdStore() {
+    return idStore;
+  }
+
+  /**
+   * The store which contains all the chunks of edge data.
+   * @return
+   */
+  public BigStoreOfInts getDataStore() {
+    return dataStore;
+  }
+
+  @Override
+  public ModifiableEdgeLists newEmpty() {
+    return new BigSplitChunkedEdgeLists(idStore.getSegmentShift());
+  }
+
+  @Override
+  public ModifiableEdgeLists snapshot() {
+    return new BigSplitChunkedEdgeLists(idStore.snapshot(), dataStore.snapshot(), id2chunk.snapshot(), nrEdges);
+  }
+
+  @Override
+  public EdgeCursor newCursor() {
+    return new ArrayEdgeCursor();
+  }
+
+  // the chunks in both stores are the length followed by the node ids or
+  // the edge data, all in the array of one segment
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    ArrayEdgeCursor c = (ArrayEdgeCursor)cursor;
+    long chunkIndex = id2chunk.getLong(nodeId);
+    if(chunkIndex < 0) {
+      c.clear();
+      return false;
+    }
+    int[] ids = idStore.getSegment(chunkIndex);
+    int offset = idStore.getOffset(chunkIndex);
+    c.set(ids, offset+1, dataStore.getSegment(chunkIndex), offset+1, 1, ids[offset]);
+    return true;
+  }
+
+  @Override
+  public int getDegree(int nodeId) {
+    long chunkIndex = id2chunk.getLong(nodeId);
+    return chunkIndex < 0 ? 0 : idStore.getSize(chunkIndex);
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return id2chunk.size();
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return nrEdges;
+  }
+
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".idStore", idStore.getMemoryFootprint());
+    footprint.add(prefix+".dataStore", dataStore.getMemoryFootprint());
+    footprint.add(prefix+".id2chunk", id2chunk.getMemoryFootprint());
+  }
+}
@@ -0,0 +1,148 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.BigStoreOfInts;
+import com.jpetrak.miscfastcompact.store.StoreOfInts;
+
+/**
+ * Modifiable edge lists, where the edge list of each node is stored as
+ * one chunk of variable length data in a StoreOfInts. The chunk contains 
+ * two ints per edge, first the id of the other node, then the edge data.
+ * A list maps each node id to the chunk index or -1 if the node does not
+ * have any edges (yet). That list is kept in pages which get shared with 
+ * snapshots, see PagedIntList.
+ * 
+ * @author Johann Petrak
+ */
+public class ChunkedEdgeLists extends ModifiableEdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  // the largest number of ints in the store, the limit for the array
+  // of an IntArrayList
+  static final long MAX_STORE_SIZE = Integer.MAX_VALUE-8;
+  
+  private StoreOfInts store;
+  private PagedIntList id2chunk;
+  private long nrEdges = 0;
+  // the segment shift for the big edge lists, see ensureCapacity
+  private int segmentShift;
+  
+  public ChunkedEdgeLists() {
+    this(BigStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create empty edge lists which switch to big edge lists with segments 
+   * of 2^segmentShift ints when the store gets full.
+   * @param segmentShift 
+   */
+  public ChunkedEdgeLists(int segmentShift) {
+    this(new StoreOfInts(), new PagedIntList(), 0, segmentShift);
+  }
+  
+  private ChunkedEdgeLists(StoreOfInts store, PagedIntList id2chunk, long nrEdges, int segmentShift) {
+    this.store = store;
+    this.id2chunk = id2chunk;
+    this.nrEdges = nrEdges;
+    this.segmentShift = segmentShift;
+  }
+  
+  @Override
+  public void addNode() {
+    id2chunk.add(-1);
+  }
+  
+  @Override
+  public void setEdges(int nodeId, int[] chunk, int length) {
+    int old = id2chunk.getInt(nodeId);
+    if(old >= 0) {
+      nrEdges -= store.getSize(old)/2;
+    }
+    id2chunk.set(nodeId, store.addData(chunk, length));
+    nrEdges += length/2;
+  }
+  
+  /**
+   * The index of the chunk for the node or -1.
+   * @param nodeId
+   * @return 
+   */
+  public int getChunkIndex(int nodeId) {
+    return id2chunk.getInt(nodeId);
+  }
+  
+  /**
+   * The store which contains all the chunks.
+   * @return 
+   */
+  public StoreOfInts getStore() {
+    return store;
+  }
+  
+  @Override
+  public ModifiableEdgeLists ensureCapacity(int length) {
+    if(store.size() + (long)length + 1 <= MAX_STORE_SIZE) {
+      return this;
+    }
+    return toBig();
+  }
+  
+  // the big edge lists take over the array of the store without copying
+  // any edges, these edge lists must not be used any more after that
+  BigChunkedEdgeLists toBig() {
+    return new BigChunkedEdgeLists(
+            new BigStoreOfInts(segmentShift, store.getBackingArray(), store.size()), 
+            id2chunk, nrEdges);
+  }
+  
+  @Override
+  public ModifiableEdgeLists newEmpty() {
+    return new ChunkedEdgeLists(segmentShift);
+  }
+  
+  @Override
+  public ModifiableEdgeLists snapshot() {
+    return new ChunkedEdgeLists(store.snapshot(), id2chunk.snapshot(), nrEdges, segmentShift);
+  }
+  
+  @Override
+  public EdgeCursor newCursor() {
+    return new ArrayEdgeCursor();
+  }
+
+  // a chunk in the store is the length followed by the interleaved 
+  // (nodeId, edgeData) pairs
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    ArrayEdgeCursor c = (ArrayEdgeCursor)cursor;
+    int chunkIndex = id2chunk.getInt(nodeId);
+    if(chunkIndex < 0) {
+      c.clear();
+      return false;
+    }
+    int[] elements = store.getBackingArray();
+    c.set(elements, chunkIndex+1, elements, chunkIndex+2, 2, elements[chunkIndex]/2);
+    return true;
+  }
+  
+  @Override
+  public int getDegree(int nodeId) {
+    int chunkIndex = id2chunk.getInt(nodeId);
+    return chunkIndex < 0 ? 0 : store.getSize(chunkIndex)/2;
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return id2chunk.size();
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return nrEdges;
+  }
+  
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".store", store.getMemoryFootprint());
+    footprint.add(prefix+".id2chunk", id2chunk.getMemoryFootprint());
+  }
+}
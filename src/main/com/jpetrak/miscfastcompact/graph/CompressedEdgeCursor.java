@@ -0,0 +1,128 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * An edge cursor for CompressedEdges, which keeps the last block accessed 
+ * decoded in two small arrays.
+ * 
+ * @author Johann Petrak
+ */
+public final class CompressedEdgeCursor extends EdgeCursor {
+  private CompressedEdges edges;
+  // index of the first block of the edge list
+  private int blockBase;
+  private int size = 0;
+  // the decoded block, -1 if none
+  private int block = -1;
+  private final int[] ids = new int[CompressedEdges.BLOCK_SIZE];
+  private final int[] data = new int[CompressedEdges.BLOCK_SIZE];
+  
+  void set(CompressedEdges edges, int blockBase, int size) {
+    this.edges = edges;
+    this.blockBase = blockBase;
+    this.size = size;
+    block = -1;
+  }
+  
+  @Override
+  public void clear() {
+    edges = null;
+    size = 0;
+    block = -1;
+  }
+  
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int nodeId(int pos) {
+    int b = pos >>> CompressedEdges.BLOCK_SHIFT;
+    if(b != block) {
+      decode(b);
+    }
+    return ids[pos & (CompressedEdges.BLOCK_SIZE-1)];
+  }
+
+  @Override
+  public int edgeData(int pos) {
+    int b = pos >>> CompressedEdges.BLOCK_SHIFT;
+    if(b != block) {
+      decode(b);
+    }
+    return data[pos & (CompressedEdges.BLOCK_SIZE-1)];
+  }
+  
+  @Override
+  public int find(int nodeId, int from, int to) {
+    if(from >= to) {
+      return -from-1;
+    }
+    // find the last block in the range whose first id is <= nodeId using the
+    // skip table, then search only in that block
+    final int[] firstIds = edges.blockFirstIds;
+    int low = from >>> CompressedEdges.BLOCK_SHIFT;
+    int high = (to-1) >>> CompressedEdges.BLOCK_SHIFT;
+    int b = low;
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      if(firstIds[blockBase+mid] <= nodeId) {
+        b = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if(b != block) {
+      decode(b);
+    }
+    int blockFrom = b << CompressedEdges.BLOCK_SHIFT;
+    int lo = Math.max(from, blockFrom) - blockFrom;
+    int hi = Math.min(to, blockFrom+CompressedEdges.BLOCK_SIZE) - blockFrom - 1;
+    while(lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int midVal = ids[mid];
+      if(midVal < nodeId) {
+        lo = mid + 1;
+      } else if(midVal > nodeId) {
+        hi = mid - 1;
+      } else {
+        return blockFrom + mid;
+      }
+    }
+    return -(blockFrom+lo)-1;
+  }
+  
+  private void decode(int b) {
+    int n = Math.min(CompressedEdges.BLOCK_SIZE, size - (b << CompressedEdges.BLOCK_SHIFT));
+    long start = edges.blockStarts[blockBase+b];
+    final byte[] bytes = edges.bytes[(int)(start >>> edges.segmentShift)];
+    int pos = (int)(start & ((1 << edges.segmentShift)-1));
+    int id = edges.blockFirstIds[blockBase+b];
+    ids[0] = id;
+    for(int i=1; i<n; i++) {
+      int value = 0;
+      int shift = 0;
+      byte x;
+      do {
+        x = bytes[pos++];
+        value |= (x & 0x7F) << shift;
+        shift += 7;
+      } while(x < 0);
+      id += value;
+      ids[i] = id;
+    }
+    for(int i=0; i<n; i++) {
+      int value = 0;
+      int shift = 0;
+      byte x;
+      do {
+        x = bytes[pos++];
+        value |= (x & 0x7F) << shift;
+        shift += 7;
+      } while(x < 0);
+      data[i] = (value >>> 1) ^ -(value & 1);
+    }
+    block = b;
+  }
+}
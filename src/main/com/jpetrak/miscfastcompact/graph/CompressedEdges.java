@@ -0,0 +1,183 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Immutable compressed representation of all the edges in one direction 
+ * of a GraphStore. 
+ * <p>
+ * The edge list of each node is split into blocks of BLOCK_SIZE edges. 
+ * For each block, the id of the first node is stored in a skip table, 
+ * together with the index of the first byte of the block. A block contains 
+ * the gaps between the increasing node ids after the first one, followed 
+ * by the edge data of all the edges in the block, all as variable length
+ * integers (7 bits per byte, edge data zigzag encoded so that small 
+ * negative values are short too). 
+ * <p>
+ * Since the ids of neighbours are usually close together, a gap needs one 
+ * or two bytes instead of four and small edge data one byte. To find a 
+ * node id, a cursor does a binary search over the skip table first, and 
+ * then only decodes the one block which can contain the id. A cursor 
+ * keeps the block decoded last, so going through a list in order decodes 
+ * each block only once.
+ * <p>
+ * The bytes are kept in segments of at most 2^segmentShift bytes (2^29 by
+ * default) and a block never spans two segments, so there can be more 
+ * than 2GB of encoded blocks.
+ * 
+ * @author Johann Petrak
+ */
+public class CompressedEdges extends EdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  static final int BLOCK_SHIFT = 6;
+  static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+  // at most 5 bytes per gap and per edge data
+  private static final int MAX_BLOCK_BYTES = 10*BLOCK_SIZE;
+  public static final int DEFAULT_SEGMENT_SHIFT = 29;
+  
+  // the edges of node i are at positions offsets[i] to offsets[i+1] 
+  // (exclusive), the blocks of node i start at firstBlock[i]
+  final long[] offsets;
+  final int[] firstBlock;
+  // for each block, the id of the first node and the index of the first 
+  // byte, whose upper bits are the segment and lower bits the position in
+  // the segment
+  final int[] blockFirstIds;
+  final long[] blockStarts;
+  final int segmentShift;
+  final byte[][] bytes;
+  
+  /**
+   * Create the compressed representation from some other representation of 
+   * edge lists.
+   * @param edges
+   */
+  public CompressedEdges(EdgeLists edges) {
+    this(edges, DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create the compressed representation with segments of 2^segmentShift
+   * bytes from some other representation of edge lists.
+   * @param edges
+   * @param segmentShift
+   */
+  public CompressedEdges(EdgeLists edges, int segmentShift) {
+    if(segmentShift < 10 || segmentShift > 30) {
+      throw new RuntimeException("Segment shift must be between 10 and 30 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    int segmentSize = 1 << segmentShift;
+    int nrNodes = edges.getNumberOfNodes();
+    offsets = new long[nrNodes+1];
+    firstBlock = new int[nrNodes+1];
+    IntArrayList firstIds = new IntArrayList();
+    LongArrayList starts = new LongArrayList();
+    ArrayList<byte[]> segments = new ArrayList<byte[]>();
+    byte[] buffer = new byte[1024];
+    int length = 0;
+    long total = 0;
+    EdgeCursor cursor = edges.newCursor();
+    for(int i=0; i<nrNodes; i++) {
+      offsets[i] = total;
+      firstBlock[i] = firstIds.size();
+      edges.position(i, cursor);
+      int size = cursor.size();
+      for(int from=0; from<size; from+=BLOCK_SIZE) {
+        int to = Math.min(size, from+BLOCK_SIZE);
+        if(length + MAX_BLOCK_BYTES > segmentSize) {
+          // the block may not fit, continue in a new segment
+          segments.add(Arrays.copyOf(buffer, length));
+          length = 0;
+        } else if(length + MAX_BLOCK_BYTES > buffer.length) {
+          buffer = Arrays.copyOf(buffer, Math.min(segmentSize, 2*buffer.length));
+        }
+        if(firstIds.size() == Integer.MAX_VALUE-8) {
+          throw new RuntimeException("Too many blocks for a compressed representation");
+        }
+        firstIds.add(cursor.nodeId(from));
+        starts.add(((long)segments.size() << segmentShift) + length);
+        for(int j=from+1; j<to; j++) {
+          length = writeVInt(buffer, length, cursor.nodeId(j)-cursor.nodeId(j-1));
+        }
+        for(int j=from; j<to; j++) {
+          int data = cursor.edgeData(j);
+          length = writeVInt(buffer, length, (data << 1) ^ (data >> 31));
+        }
+      }
+      total += size;
+    }
+    segments.add(Arrays.copyOf(buffer, length));
+    offsets[nrNodes] = total;
+    firstBlock[nrNodes] = firstIds.size();
+    blockFirstIds = firstIds.toIntArray();
+    blockStarts = starts.toLongArray();
+    bytes = segments.toArray(new byte[segments.size()][]);
+  }
+  
+  /**
+   * Number of bytes used for the encoded blocks, offsets and skip tables.
+   * @return 
+   */
+  public long getEncodedSize() {
+    long size = 8L*offsets.length + 4L*firstBlock.length
+            + 4L*blockFirstIds.length + 8L*blockStarts.length;
+    for(byte[] segment : bytes) {
+      size += segment.length;
+    }
+    return size;
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return offsets.length-1;
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return offsets[offsets.length-1];
+  }
+
+  @Override
+  public int getDegree(int nodeId) {
+    return (int)(offsets[nodeId+1]-offsets[nodeId]);
+  }
+
+  @Override
+  public EdgeCursor newCursor() {
+    return new CompressedEdgeCursor();
+  }
+
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    int size = getDegree(nodeId);
+    ((CompressedEdgeCursor)cursor).set(this, firstBlock[nodeId], size);
+    return size > 0;
+  }
+  
+  private static int writeVInt(byte[] buffer, int pos, int value) {
+    while((value & ~0x7F) != 0) {
+      buffer[pos++] = (byte)((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte)value;
+    return pos;
+  }
+  
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".offsets", Utils.arrayBytes(offsets.length, 8));
+    footprint.add(prefix+".skipTable", Utils.arrayBytes(firstBlock.length, 4)
+            + Utils.arrayBytes(blockFirstIds.length, 4) + Utils.arrayBytes(blockStarts.length, 8));
+    long size = Utils.arrayBytes(bytes.length, 4);
+    for(byte[] segment : bytes) {
+      size += Utils.arrayBytes(segment.length, 1);
+    }
+    footprint.add(prefix+".bytes", size);
+  }
+}
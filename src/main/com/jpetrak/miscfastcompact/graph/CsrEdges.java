@@ -0,0 +1,158 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.util.Arrays;
+
+/**
+ * Immutable compressed sparse row representation of all the edges in one
+ * direction (either all outgoing or all incoming edges) of a GraphStore.
+ * The node ids and edge data of all edges are kept in flat arrays, sorted
+ * by increasing node id within the edges of each node.
+ * <p>
+ * So that there can be more than 2^31 edges, the flat arrays are split
+ * into segments of at most 2^segmentShift elements (2^27 by default) in
+ * the same way as for BigStoreOfInts: the edges of a node never span two
+ * segments, so a node can have at most 2^segmentShift edges. The edges of
+ * node i start at the long position offsets[i], where the upper bits are
+ * the segment and the lower bits the position in the segment, and end at
+ * offsets[i+1] or, if that is in the next segment, at the end of the
+ * segment. A node without edges has offsets[i]==offsets[i+1].
+ *
+ * @author Johann Petrak
+ */
+public class CsrEdges extends EdgeLists {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_SEGMENT_SHIFT = 27;
+
+  final int segmentShift;
+  final long[] offsets;
+  final int[][] nodeIds;
+  final int[][] edgeData;
+  final long nrEdges;
+
+  /**
+   * Create the CSR representation from some other representation of
+   * edge lists.
+   * @param edges
+   */
+  public CsrEdges(EdgeLists edges) {
+    this(edges, DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create the CSR representation with segments of 2^segmentShift
+   * elements from some other representation of edge lists.
+   * @param edges
+   * @param segmentShift
+   */
+  public CsrEdges(EdgeLists edges, int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 30) {
+      throw new RuntimeException("Segment shift must be between 4 and 30 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    int segmentSize = 1 << segmentShift;
+    int nrNodes = edges.getNumberOfNodes();
+    offsets = new long[nrNodes+1];
+    // first find the position of each node and the used size of each
+    // segment, then fill the segments
+    int nrSegments = 0;
+    int[] used = new int[4];
+    long pos = 0;
+    long total = 0;
+    for(int i=0; i<nrNodes; i++) {
+      int degree = edges.getDegree(i);
+      if(degree > segmentSize) {
+        throw new RuntimeException("Node "+i+" has "+degree+" edges, more than the segment size "+segmentSize);
+      }
+      int segment = (int)(pos >>> segmentShift);
+      int inSegment = (int)(pos & (segmentSize-1));
+      if(degree > 0 && inSegment + degree > segmentSize) {
+        segment++;
+        pos = (long)segment << segmentShift;
+      }
+      offsets[i] = pos;
+      if(degree > 0) {
+        if(segment >= used.length) {
+          used = Arrays.copyOf(used, 2*used.length);
+        }
+        used[segment] = (int)(pos & (segmentSize-1)) + degree;
+        nrSegments = segment+1;
+      }
+      pos += degree;
+      total += degree;
+    }
+    offsets[nrNodes] = pos;
+    nrEdges = total;
+    nodeIds = new int[nrSegments][];
+    edgeData = new int[nrSegments][];
+    for(int s=0; s<nrSegments; s++) {
+      nodeIds[s] = new int[used[s]];
+      edgeData[s] = new int[used[s]];
+    }
+    EdgeCursor cursor = edges.newCursor();
+    for(int i=0; i<nrNodes; i++) {
+      if(edges.position(i, cursor)) {
+        int[] ids = nodeIds[(int)(offsets[i] >>> segmentShift)];
+        int[] data = edgeData[(int)(offsets[i] >>> segmentShift)];
+        int from = (int)(offsets[i] & (segmentSize-1));
+        for(int j=0; j<cursor.size(); j++) {
+          ids[from+j] = cursor.nodeId(j);
+          data[from+j] = cursor.edgeData(j);
+        }
+      }
+    }
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return offsets.length-1;
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return nrEdges;
+  }
+
+  @Override
+  public int getDegree(int nodeId) {
+    long from = offsets[nodeId];
+    long to = offsets[nodeId+1];
+    int segment = (int)(from >>> segmentShift);
+    if((to >>> segmentShift) != segment) {
+      // the edges of the next node start in a new segment
+      return (int)(((long)segment << segmentShift) + nodeIds[segment].length - from);
+    }
+    return (int)(to-from);
+  }
+
+  @Override
+  public EdgeCursor newCursor() {
+    return new ArrayEdgeCursor();
+  }
+
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    ArrayEdgeCursor c = (ArrayEdgeCursor)cursor;
+    int size = getDegree(nodeId);
+    if(size == 0) {
+      c.clear();
+      return false;
+    }
+    int segment = (int)(offsets[nodeId] >>> segmentShift);
+    int from = (int)(offsets[nodeId] & ((1 << segmentShift)-1));
+    c.set(nodeIds[segment], from, edgeData[segment], from, 1, size);
+    return true;
+  }
+
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".offsets", Utils.arrayBytes(offsets.length, 8));
+    long bytes = Utils.arrayBytes(nodeIds.length, 4);
+    for(int[] segment : nodeIds) {
+      bytes += Utils.arrayBytes(segment.length, 4);
+    }
+    footprint.add(prefix+".nodeIds", bytes);
+    footprint.add(prefix+".edgeData", bytes);
+  }
+}
@@ -0,0 +1,370 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Modifiable edge lists that allow adding single edges cheaply: the edges
+ * of each node are the edges in some base edge lists plus the edges
+ * in a small sorted delta buffer for the node. Whenever the edge list of
+ * a node is accessed, the cursor merges both into a buffer of its own.
+ * <p>
+ * When the delta buffer of a node gets full, it is folded into a new
+ * chunk of the base edge lists for the node, so the work for a query
+ * stays bounded. Since this leaves the old chunk as garbage in the base,
+ * compact should be called from time to time, which creates fresh base
+ * edge lists with all the deltas folded in.
+ * <p>
+ * The base and the delta buffers are kept together in one state object,
+ * which compact replaces through a single volatile field. A query which
+ * runs in another thread while compact runs therefore sees either the old
+ * base with the old deltas or the fresh base without any deltas. All the
+ * methods which modify the edge lists must not run at the same time as
+ * compact or each other.
+ * <p>
+ * A snapshot shares the base through its snapshot and the pages of the 
+ * list of delta buffer indices, only the delta buffers in use are copied.
+ *
+ * @author Johann Petrak
+ */
+public class DeltaEdgeLists extends ModifiableEdgeLists {
+  private static final long serialVersionUID = 1L;
+
+  private int maxDeltaSize;
+  private volatile State state;
+  // true for a snapshot
+  private boolean readOnly = false;
+  // buffer for merging a node into a chunk of the base
+  private transient int[] chunkBuffer;
+
+  // The base edge lists and the delta buffers on top of them. A new state
+  // is created whenever the base gets replaced.
+  private static class State implements Serializable {
+    private static final long serialVersionUID = 1L;
+    final ModifiableEdgeLists base;
+    // for each node, the index of the delta buffer or -1
+    final PagedIntList node2delta;
+    // the delta buffers with sorted (nodeId, edgeData) pairs, the number of
+    // edges in each and the indices of unused buffers
+    final ArrayList<int[]> deltas;
+    final IntArrayList deltaSizes;
+    final IntArrayList freeDeltas;
+    long nrDeltaEdges;
+
+    // no delta buffers for any node of the base
+    State(ModifiableEdgeLists base) {
+      this.base = base;
+      int n = base.getNumberOfNodes();
+      node2delta = new PagedIntList();
+      for(int i=0; i<n; i++) {
+        node2delta.add(-1);
+      }
+      deltas = new ArrayList<int[]>();
+      deltaSizes = new IntArrayList();
+      freeDeltas = new IntArrayList();
+    }
+
+    // the delta buffers of the other state on top of a new base
+    State(ModifiableEdgeLists base, State other) {
+      this.base = base;
+      node2delta = other.node2delta;
+      deltas = other.deltas;
+      deltaSizes = other.deltaSizes;
+      freeDeltas = other.freeDeltas;
+      nrDeltaEdges = other.nrDeltaEdges;
+    }
+
+    // a read-only copy of the other state, see snapshot
+    State(State other) {
+      base = other.base.snapshot();
+      node2delta = other.node2delta.snapshot();
+      int n = other.deltas.size();
+      deltas = new ArrayList<int[]>(n);
+      for(int d=0; d<n; d++) {
+        deltas.add(Arrays.copyOf(other.deltas.get(d), 2*other.deltaSizes.getInt(d)));
+      }
+      deltaSizes = new IntArrayList(other.deltaSizes);
+      freeDeltas = new IntArrayList();
+      nrDeltaEdges = other.nrDeltaEdges;
+    }
+  }
+
+  /**
+   * Create delta edge lists on top of the given base, which is used and
+   * modified directly. A node can have at most maxDeltaSize edges in its
+   * delta buffer before they are folded into the base.
+   * @param base
+   * @param maxDeltaSize
+   */
+  public DeltaEdgeLists(ModifiableEdgeLists base, int maxDeltaSize) {
+    if(maxDeltaSize < 1) {
+      throw new RuntimeException("Maximum delta size must be > 0 but is "+maxDeltaSize);
+    }
+    this.maxDeltaSize = maxDeltaSize;
+    state = new State(base);
+  }
+
+  private DeltaEdgeLists(State state, int maxDeltaSize) {
+    this.state = state;
+    this.maxDeltaSize = maxDeltaSize;
+    readOnly = true;
+  }
+
+  @Override
+  public ModifiableEdgeLists ensureCapacity(int length) {
+    setBase(state.base.ensureCapacity(length));
+    return this;
+  }
+
+  // replace the base, which may be the same one, keeping the deltas
+  private void setBase(ModifiableEdgeLists base) {
+    State s = state;
+    if(base != s.base) {
+      state = new State(base, s);
+    }
+  }
+
+  @Override
+  public void close() {
+    state.base.close();
+  }
+
+  public void setMaxDeltaSize(int maxDeltaSize) {
+    if(maxDeltaSize < 1) {
+      throw new RuntimeException("Maximum delta size must be > 0 but is "+maxDeltaSize);
+    }
+    this.maxDeltaSize = maxDeltaSize;
+  }
+
+  /**
+   * Add an edge to the edge list of a node.
+   * @param nodeId
+   * @param otherNodeId
+   * @param edgeData
+   */
+  public void addEdge(int nodeId, int otherNodeId, int edgeData) {
+    checkNotReadOnly();
+    State s = state;
+    int d = s.node2delta.getInt(nodeId);
+    if(d < 0) {
+      if(s.freeDeltas.isEmpty()) {
+        d = s.deltas.size();
+        s.deltas.add(new int[8]);
+        s.deltaSizes.add(0);
+      } else {
+        d = s.freeDeltas.removeInt(s.freeDeltas.size()-1);
+      }
+      s.node2delta.set(nodeId, d);
+    }
+    int size = s.deltaSizes.getInt(d);
+    int[] delta = s.deltas.get(d);
+    if(2*size+2 > delta.length) {
+      int[] tmp = new int[2*delta.length];
+      System.arraycopy(delta, 0, tmp, 0, 2*size);
+      delta = tmp;
+      s.deltas.set(d, delta);
+    }
+    // insert after all the edges with a node id <= the new one
+    int low = 0;
+    int high = size-1;
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      if(delta[2*mid] <= otherNodeId) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    System.arraycopy(delta, 2*low, delta, 2*low+2, 2*(size-low));
+    delta[2*low] = otherNodeId;
+    delta[2*low+1] = edgeData;
+    s.deltaSizes.set(d, size+1);
+    s.nrDeltaEdges++;
+    if(size+1 >= maxDeltaSize) {
+      fold(nodeId);
+    }
+  }
+
+  // replace the chunk of the node in the base with the merged edges
+  private void fold(int nodeId) {
+    EdgeCursor cursor = newCursor();
+    position(nodeId, cursor);
+    int n = cursor.size();
+    if(chunkBuffer == null || chunkBuffer.length < 2*n) {
+      chunkBuffer = new int[Math.max(2*n, 64)];
+    }
+    for(int i=0; i<n; i++) {
+      chunkBuffer[2*i] = cursor.nodeId(i);
+      chunkBuffer[2*i+1] = cursor.edgeData(i);
+    }
+    removeDelta(nodeId);
+    ensureCapacity(2*n);
+    state.base.setEdges(nodeId, chunkBuffer, 2*n);
+  }
+
+  private void removeDelta(int nodeId) {
+    State s = state;
+    int d = s.node2delta.getInt(nodeId);
+    if(d >= 0) {
+      s.nrDeltaEdges -= s.deltaSizes.getInt(d);
+      s.deltaSizes.set(d, 0);
+      s.freeDeltas.add(d);
+      s.node2delta.set(nodeId, -1);
+    }
+  }
+
+  /**
+   * Fold all delta buffers into fresh base edge lists, which leaves no
+   * garbage from replaced chunks. The fresh base is built without changing
+   * anything that the queries use and then swapped in together with empty
+   * delta buffers, so queries can run in other threads at the same time.
+   * <p>
+   * The old base edge lists are returned and not closed, since such a query
+   * may still be reading them: the caller has to close them once this
+   * cannot happen any more.
+   * @return the old base edge lists
+   */
+  public ModifiableEdgeLists compact() {
+    checkNotReadOnly();
+    State s = state;
+    ModifiableEdgeLists fresh = s.base.newEmpty();
+    EdgeCursor cursor = newCursor();
+    int[] buffer = new int[64];
+    int n = s.node2delta.size();
+    for(int i=0; i<n; i++) {
+      fresh.addNode();
+      if(position(s, i, cursor)) {
+        int size = cursor.size();
+        if(buffer.length < 2*size) {
+          buffer = new int[2*size];
+        }
+        for(int j=0; j<size; j++) {
+          buffer[2*j] = cursor.nodeId(j);
+          buffer[2*j+1] = cursor.edgeData(j);
+        }
+        fresh = fresh.ensureCapacity(2*size);
+        fresh.setEdges(i, buffer, 2*size);
+      }
+    }
+    state = new State(fresh);
+    return s.base;
+  }
+
+  /**
+   * The number of edges which are currently in delta buffers.
+   * @return
+   */
+  public long getNumberOfDeltaEdges() {
+    return state.nrDeltaEdges;
+  }
+
+  @Override
+  public void addNode() {
+    checkNotReadOnly();
+    State s = state;
+    s.base.addNode();
+    s.node2delta.add(-1);
+  }
+
+  @Override
+  public void setEdges(int nodeId, int[] chunk, int length) {
+    checkNotReadOnly();
+    removeDelta(nodeId);
+    state.base.setEdges(nodeId, chunk, length);
+  }
+
+  @Override
+  public ModifiableEdgeLists newEmpty() {
+    return new DeltaEdgeLists(state.base.newEmpty(), maxDeltaSize);
+  }
+
+  @Override
+  public ModifiableEdgeLists snapshot() {
+    return new DeltaEdgeLists(new State(state), maxDeltaSize);
+  }
+
+  private void checkNotReadOnly() {
+    if(readOnly) {
+      throw new RuntimeException("Cannot modify a snapshot of edge lists");
+    }
+  }
+
+  @Override
+  public EdgeCursor newCursor() {
+    return state.base.newCursor();
+  }
+
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    return position(state, nodeId, cursor);
+  }
+
+  // if the node has a delta buffer, the edges from the base and from the
+  // delta buffer get merged into the buffer of the cursor
+  private static boolean position(State s, int nodeId, EdgeCursor cursor) {
+    int d = s.node2delta.getInt(nodeId);
+    if(d < 0) {
+      return s.base.position(nodeId, cursor);
+    }
+    s.base.position(nodeId, cursor);
+    int size1 = cursor.size();
+    int size2 = s.deltaSizes.getInt(d);
+    int[] delta = s.deltas.get(d);
+    int[] buffer = cursor.getBuffer(2*(size1+size2));
+    int i = 0, j = 0, k = 0;
+    while(i < size1 && j < size2) {
+      if(cursor.nodeId(i) <= delta[2*j]) {
+        buffer[k++] = cursor.nodeId(i);
+        buffer[k++] = cursor.edgeData(i);
+        i++;
+      } else {
+        buffer[k++] = delta[2*j];
+        buffer[k++] = delta[2*j+1];
+        j++;
+      }
+    }
+    for(; i<size1; i++) {
+      buffer[k++] = cursor.nodeId(i);
+      buffer[k++] = cursor.edgeData(i);
+    }
+    System.arraycopy(delta, 2*j, buffer, k, 2*(size2-j));
+    cursor.viewBuffer(size1+size2);
+    return true;
+  }
+
+  @Override
+  public int getDegree(int nodeId) {
+    State s = state;
+    int d = s.node2delta.getInt(nodeId);
+    return s.base.getDegree(nodeId) + (d < 0 ? 0 : s.deltaSizes.getInt(d));
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return state.base.getNumberOfNodes();
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    State s = state;
+    return s.base.getNumberOfEdges() + s.nrDeltaEdges;
+  }
+
+  // the base edge lists plus the delta buffers and the lists to manage them
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    State s = state;
+    s.base.addFootprint(prefix, footprint);
+    long bytes = Utils.arrayBytes(s.deltas.size(), 4);
+    for(int[] delta : s.deltas) {
+      bytes += Utils.arrayBytes(delta.length, 4);
+    }
+    footprint.add(prefix+".deltas", bytes);
+    footprint.add(prefix+".node2delta", s.node2delta.getMemoryFootprint()
+            + Utils.arrayBytes(s.deltaSizes.elements().length, 4)
+            + Utils.arrayBytes(s.freeDeltas.elements().length, 4));
+  }
+}
@@ -0,0 +1,12 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * The direction of the edges to use for a node: its outgoing edges, which
+ * lead to its children, or its incoming edges, which come from its parents.
+ * 
+ * @author Johann Petrak
+ */
+public enum Direction {
+  OUT,
+  IN
+}
@@ -0,0 +1,95 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * A reusable view of the edges of one node, sorted by increasing node id. 
+ * A cursor gets positioned on the edges of a node by the store and can
+ * then be used to access the edges by position 0...(size()-1) without
+ * copying any data. A cursor can be re-positioned any number of times, so
+ * a client that keeps its own cursors does not create any garbage.
+ * The view is only valid as long as the store is not modified.
+ * <p>
+ * A cursor is not thread-safe, each thread needs to use its own cursors.
+ * 
+ * @author Johann Petrak
+ */
+public abstract class EdgeCursor {
+  
+  /**
+   * Number of edges in the view. 
+   * @return 
+   */
+  public abstract int size();
+  
+  /**
+   * The id of the other node for the edge at the given position.
+   * @param pos
+   * @return 
+   */
+  public abstract int nodeId(int pos);
+  
+  /**
+   * The edge data for the edge at the given position.
+   * @param pos
+   * @return 
+   */
+  public abstract int edgeData(int pos);
+  
+  /**
+   * Find the position of the edge with the given other node id, starting
+   * at position from. Returns the position if found or (-insertionPoint-1)
+   * if not found, where insertionPoint is the position of the first edge 
+   * with a larger node id (or size()). 
+   * @param nodeId
+   * @param from
+   * @return 
+   */
+  public int find(int nodeId, int from) {
+    return find(nodeId, from, size());
+  }
+  
+  /**
+   * Find the position of the edge with the given other node id, only 
+   * looking at the positions from (inclusive) to to (exclusive). Returns
+   * the position if found or (-insertionPoint-1) if not found, where
+   * insertionPoint is at most to.
+   * @param nodeId
+   * @param from
+   * @param to
+   * @return 
+   */
+  public int find(int nodeId, int from, int to) {
+    int low = from;
+    int high = to-1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midVal = nodeId(mid);
+      if (midVal < nodeId) {
+        low = mid + 1;
+      } else if (midVal > nodeId) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -low-1;
+  }
+  
+  /**
+   * Make the cursor an empty view.
+   */
+  public abstract void clear();
+  
+  // For edge lists which have to assemble the edges of a node first (see
+  // DeltaEdgeLists): return a buffer owned by the cursor with at least the
+  // given length, for interleaved (nodeId, edgeData) pairs. If a new buffer
+  // is needed, the content of the old one is not kept. Only the cursors 
+  // of modifiable edge lists support this.
+  int[] getBuffer(int length) {
+    throw new RuntimeException("Cursor does not support a buffer: "+getClass().getName());
+  }
+  
+  // make the cursor a view of the first size edges in its buffer
+  void viewBuffer(int size) {
+    throw new RuntimeException("Cursor does not support a buffer: "+getClass().getName());
+  }
+}
@@ -0,0 +1,305 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects unsorted (from, to, edgeData) triples for a bulk import into
+ * a GraphStore and creates the sorted in- and out-edge chunks for all nodes
+ * once the import is finished.
+ * <p>
+ * The triples are kept in three primitive int arrays. Whenever the number
+ * of triples reaches the maximum number of edges to keep in memory, the
+ * buffer is sorted once by (from,to) and once by (to,from) and each sorted
+ * run is spilled to its own temporary file. When the import is finished,
+ * all runs for a direction are merged and the chunks are created in one pass
+ * over the merged, sorted triples. If nothing had to be spilled, the chunks
+ * get created directly from the in-memory buffer.
+ *
+ * @author Johann Petrak
+ */
+class EdgeImporter {
+
+  private final int maxEdges;
+  private final File tmpDir;
+  private int[] froms;
+  private int[] tos;
+  private int[] datas;
+  private int nrEdges = 0;
+  // the spilled runs: the run files sorted by from node and by to node
+  // and the number of triples in each run
+  private List<File> outRuns = new ArrayList<File>();
+  private List<File> inRuns = new ArrayList<File>();
+  private IntArrayList runSizes = new IntArrayList();
+
+  private static final int IO_BUFFER_SIZE = 1<<16;
+
+  EdgeImporter(int maxEdgesInMemory, File tmpDir) {
+    if(maxEdgesInMemory < 1) {
+      throw new RuntimeException("Maximum number of edges in memory must be > 0 but is "+maxEdgesInMemory);
+    }
+    this.maxEdges = maxEdgesInMemory;
+    this.tmpDir = tmpDir;
+    // start small and grow up to the maximum so that a large budget does not
+    // cost anything for small imports
+    int initial = Math.min(maxEdgesInMemory, 1024);
+    froms = new int[initial];
+    tos = new int[initial];
+    datas = new int[initial];
+  }
+
+  void addEdge(int fromId, int toId, int edgeData) {
+    if(nrEdges == maxEdges) {
+      spill();
+    }
+    if(nrEdges == froms.length) {
+      int newLength = (int)Math.min((long)maxEdges, 2L*froms.length);
+      froms = IntArrays.grow(froms, newLength, nrEdges);
+      tos = IntArrays.grow(tos, newLength, nrEdges);
+      datas = IntArrays.grow(datas, newLength, nrEdges);
+    }
+    froms[nrEdges] = fromId;
+    tos[nrEdges] = toId;
+    datas[nrEdges] = edgeData;
+    nrEdges++;
+  }
+
+  /**
+   * Create all the out-edge chunks and in-edge chunks and set them for
+   * their nodes in the graph store. This also removes all temporary files.
+   *
+   * @param gstore
+   */
+  void finish(GraphStore gstore) {
+    try {
+      if(outRuns.isEmpty()) {
+        // everything fits into memory, no need to go to disk at all
+        IntArrays.radixSort(new int[][]{froms, tos, datas}, 0, nrEdges);
+        buildChunks(gstore, true, new ArrayRun(froms, tos, datas, nrEdges));
+        IntArrays.radixSort(new int[][]{tos, froms, datas}, 0, nrEdges);
+        buildChunks(gstore, false, new ArrayRun(tos, froms, datas, nrEdges));
+      } else {
+        if(nrEdges > 0) {
+          spill();
+        }
+        // release the buffer before merging
+        froms = null;
+        tos = null;
+        datas = null;
+        buildChunks(gstore, true, new MergedRuns(outRuns, runSizes));
+        buildChunks(gstore, false, new MergedRuns(inRuns, runSizes));
+      }
+    } catch (IOException ex) {
+      throw new RuntimeException("Could not read back import run files",ex);
+    } finally {
+      cleanup();
+    }
+  }
+
+  void cleanup() {
+    for(File f : outRuns) {
+      f.delete();
+    }
+    for(File f : inRuns) {
+      f.delete();
+    }
+    outRuns.clear();
+    inRuns.clear();
+  }
+
+  // sort the current buffer in both orders and write each order to a run file
+  private void spill() {
+    try {
+      IntArrays.radixSort(new int[][]{froms, tos, datas}, 0, nrEdges);
+      outRuns.add(writeRun(froms, tos, datas));
+      IntArrays.radixSort(new int[][]{tos, froms, datas}, 0, nrEdges);
+      inRuns.add(writeRun(tos, froms, datas));
+      runSizes.add(nrEdges);
+      nrEdges = 0;
+    } catch (IOException ex) {
+      cleanup();
+      throw new RuntimeException("Could not write import run file",ex);
+    }
+  }
+
+  private File writeRun(int[] keys, int[] nodes, int[] data) throws IOException {
+    File file = File.createTempFile("gstore-import", ".run", tmpDir);
+    file.deleteOnExit();
+    DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_SIZE));
+    try {
+      for(int i=0; i<nrEdges; i++) {
+        out.writeInt(keys[i]);
+        out.writeInt(nodes[i]);
+        out.writeInt(data[i]);
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  // Go through the triples sorted by key node and then other node and
+  // create one chunk for each block of identical key nodes.
+  private void buildChunks(GraphStore gstore, boolean outgoing, Run run) throws IOException {
+    IntArrayList chunk = new IntArrayList();
+    int curKey = -1;
+    while(run.next()) {
+      if(run.key != curKey) {
+        if(curKey >= 0) {
+          setChunk(gstore, outgoing, curKey, chunk);
+        }
+        curKey = run.key;
+        chunk.clear();
+      }
+      chunk.add(run.node);
+      chunk.add(run.data);
+    }
+    if(curKey >= 0) {
+      setChunk(gstore, outgoing, curKey, chunk);
+    }
+    run.close();
+  }
+
+  private void setChunk(GraphStore gstore, boolean outgoing, int nodeId, IntArrayList chunk) {
+    if(outgoing) {
+      gstore.setOutEdgesChunk(nodeId, chunk.elements(), chunk.size());
+    } else {
+      gstore.setInEdgesChunk(nodeId, chunk.elements(), chunk.size());
+    }
+  }
+
+
+  // A sorted sequence of triples: after next() returned true, the fields
+  // hold the current triple.
+  private static abstract class Run {
+    int key;
+    int node;
+    int data;
+    abstract boolean next() throws IOException;
+    void close() throws IOException { }
+  }
+
+  private static class ArrayRun extends Run {
+    private final int[] keys, nodes, datas;
+    private final int size;
+    private int pos = 0;
+    ArrayRun(int[] keys, int[] nodes, int[] datas, int size) {
+      this.keys = keys;
+      this.nodes = nodes;
+      this.datas = datas;
+      this.size = size;
+    }
+    @Override
+    boolean next() {
+      if(pos >= size) {
+        return false;
+      }
+      key = keys[pos];
+      node = nodes[pos];
+      data = datas[pos];
+      pos++;
+      return true;
+    }
+  }
+
+  private static class FileRun extends Run {
+    private final DataInputStream in;
+    private int remaining;
+    FileRun(File file, int size) throws IOException {
+      in = new DataInputStream(
+              new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+      remaining = size;
+    }
+    @Override
+    boolean next() throws IOException {
+      if(remaining == 0) {
+        return false;
+      }
+      key = in.readInt();
+      node = in.readInt();
+      data = in.readInt();
+      remaining--;
+      return true;
+    }
+    @Override
+    void close() throws IOException {
+      in.close();
+    }
+  }
+
+  // k-way merge of several sorted file runs, using a binary min-heap of
+  // run numbers ordered by the current (key,node,data) of each run.
+  private static class MergedRuns extends Run {
+    private final FileRun[] runs;
+    private final int[] heap;
+    private int heapSize = 0;
+    MergedRuns(List<File> files, IntArrayList sizes) throws IOException {
+      runs = new FileRun[files.size()];
+      heap = new int[files.size()];
+      for(int i=0; i<runs.length; i++) {
+        runs[i] = new FileRun(files.get(i), sizes.getInt(i));
+        if(runs[i].next()) {
+          heap[heapSize++] = i;
+        }
+      }
+      for(int i=heapSize/2-1; i>=0; i--) {
+        siftDown(i);
+      }
+    }
+    @Override
+    boolean next() throws IOException {
+      if(heapSize == 0) {
+        return false;
+      }
+      FileRun top = runs[heap[0]];
+      key = top.key;
+      node = top.node;
+      data = top.data;
+      if(!top.next()) {
+        heap[0] = heap[--heapSize];
+      }
+      if(heapSize > 0) {
+        siftDown(0);
+      }
+      return true;
+    }
+    @Override
+    void close() throws IOException {
+      for(FileRun run : runs) {
+        run.close();
+      }
+    }
+    private boolean less(int r1, int r2) {
+      FileRun a = runs[r1];
+      FileRun b = runs[r2];
+      if(a.key != b.key) { return a.key < b.key; }
+      if(a.node != b.node) { return a.node < b.node; }
+      return a.data < b.data;
+    }
+    private void siftDown(int i) {
+      int r = heap[i];
+      while(true) {
+        int child = 2*i+1;
+        if(child >= heapSize) { break; }
+        if(child+1 < heapSize && less(heap[child+1], heap[child])) {
+          child++;
+        }
+        if(!less(heap[child], r)) { break; }
+        heap[i] = heap[child];
+        i = child;
+      }
+      heap[i] = r;
+    }
+  }
+}
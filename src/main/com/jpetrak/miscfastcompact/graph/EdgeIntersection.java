@@ -0,0 +1,187 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * Methods for finding the node ids which occur in two edge lists. 
+ * <p>
+ * All methods go through the smaller list in increasing order and 
+ * find each id in the larger list, starting at the position after the 
+ * last match or insertion point, using one of the IntersectionStrategy 
+ * methods. A merge needs about small+large comparisons, a galloping search
+ * about small*log(large/small) and a binary search about small*log(large)
+ * comparisons, so with ADAPTIVE, a merge is used if the lists have a
+ * similar size, galloping if they differ a lot and binary search if the
+ * smaller list only has very few elements.
+ * 
+ * @author Johann Petrak
+ */
+public class EdgeIntersection {
+  
+  // ADAPTIVE uses a merge if large < MERGE_RATIO*small
+  static final int MERGE_RATIO = 8;
+  // ADAPTIVE uses binary search if small <= BINARY_MAX_SIZE
+  static final int BINARY_MAX_SIZE = 2;
+  
+  private EdgeIntersection() {}
+  
+  /**
+   * Return the strategy that ADAPTIVE would use for lists of these sizes.
+   * @param size1
+   * @param size2
+   * @return 
+   */
+  public static IntersectionStrategy choose(int size1, int size2) {
+    int small = Math.min(size1, size2);
+    int large = Math.max(size1, size2);
+    if(small <= BINARY_MAX_SIZE) {
+      return IntersectionStrategy.BINARY;
+    } else if(large < (long)MERGE_RATIO*small) {
+      return IntersectionStrategy.MERGE;
+    } else {
+      return IntersectionStrategy.GALLOP;
+    }
+  }
+  
+  /**
+   * Sum the edge data of both edges for all the node ids which occur in 
+   * both edge lists. 
+   * @param edges1
+   * @param edges2
+   * @param strategy
+   * @return 
+   */
+  public static int sumEdgeData(EdgeCursor edges1, EdgeCursor edges2, IntersectionStrategy strategy) {
+    if(edges1.size() > edges2.size()) {
+      EdgeCursor tmp = edges1; edges1 = edges2; edges2 = tmp;
+    }
+    int size1 = edges1.size();
+    int size2 = edges2.size();
+    if(size1 == 0) {
+      return 0;
+    }
+    if(strategy == IntersectionStrategy.ADAPTIVE) {
+      strategy = choose(size1, size2);
+    }
+    int sumData = 0;
+    if(strategy == IntersectionStrategy.MERGE) {
+      int i = 0, j = 0;
+      int id1 = edges1.nodeId(0);
+      int id2 = edges2.nodeId(0);
+      while(true) {
+        if(id1 < id2) {
+          if(++i == size1) { break; }
+          id1 = edges1.nodeId(i);
+        } else if(id1 > id2) {
+          if(++j == size2) { break; }
+          id2 = edges2.nodeId(j);
+        } else {
+          sumData += edges1.edgeData(i) + edges2.edgeData(j);
+          if(++i == size1 || ++j == size2) { break; }
+          id1 = edges1.nodeId(i);
+          id2 = edges2.nodeId(j);
+        }
+      }
+    } else {
+      boolean gallop = (strategy == IntersectionStrategy.GALLOP);
+      int start = 0;
+      for(int i=0; i<size1 && start<size2; i++) {
+        int index = gallop ? gallop(edges2, edges1.nodeId(i), start) : edges2.find(edges1.nodeId(i), start);
+        if(index >= 0) {
+          sumData += edges1.edgeData(i) + edges2.edgeData(index);
+          start = index+1;
+        } else {
+          start = -index-1;
+        }
+      }
+    }
+    return sumData;
+  }
+  
+  /**
+   * Find all node ids which occur in both edge lists and store the 
+   * positions of the matching edges in positions1 and positions2. Both
+   * arrays must have at least the size of the smaller list. 
+   * Returns the number of matches.
+   * @param edges1
+   * @param edges2
+   * @param strategy
+   * @param positions1
+   * @param positions2
+   * @return 
+   */
+  public static int intersect(EdgeCursor edges1, EdgeCursor edges2, IntersectionStrategy strategy,
+          int[] positions1, int[] positions2) {
+    boolean swapped = false;
+    if(edges1.size() > edges2.size()) {
+      EdgeCursor tmp = edges1; edges1 = edges2; edges2 = tmp;
+      int[] tmpPos = positions1; positions1 = positions2; positions2 = tmpPos;
+      swapped = true;
+    }
+    int size1 = edges1.size();
+    int size2 = edges2.size();
+    if(size1 == 0) {
+      return 0;
+    }
+    if(strategy == IntersectionStrategy.ADAPTIVE) {
+      strategy = choose(size1, size2);
+    }
+    int n = 0;
+    if(strategy == IntersectionStrategy.MERGE) {
+      int i = 0, j = 0;
+      int id1 = edges1.nodeId(0);
+      int id2 = edges2.nodeId(0);
+      while(true) {
+        if(id1 < id2) {
+          if(++i == size1) { break; }
+          id1 = edges1.nodeId(i);
+        } else if(id1 > id2) {
+          if(++j == size2) { break; }
+          id2 = edges2.nodeId(j);
+        } else {
+          positions1[n] = i;
+          positions2[n] = j;
+          n++;
+          if(++i == size1 || ++j == size2) { break; }
+          id1 = edges1.nodeId(i);
+          id2 = edges2.nodeId(j);
+        }
+      }
+    } else {
+      boolean gallop = (strategy == IntersectionStrategy.GALLOP);
+      int start = 0;
+      for(int i=0; i<size1 && start<size2; i++) {
+        int index = gallop ? gallop(edges2, edges1.nodeId(i), start) : edges2.find(edges1.nodeId(i), start);
+        if(index >= 0) {
+          positions1[n] = i;
+          positions2[n] = index;
+          n++;
+          start = index+1;
+        } else {
+          start = -index-1;
+        }
+      }
+    }
+    return n;
+  }
+  
+  /**
+   * Exponential search for the node id starting at position from: first find
+   * a range from+2^(k-1) to from+2^k which must contain the id, then do a 
+   * binary search in that range. Returns the same as EdgeCursor.find.
+   * @param edges
+   * @param nodeId
+   * @param from
+   * @return 
+   */
+  public static int gallop(EdgeCursor edges, int nodeId, int from) {
+    int size = edges.size();
+    int low = from;
+    int step = 1;
+    int high = from;
+    while(high < size && edges.nodeId(high) < nodeId) {
+      low = high+1;
+      high = from + step;
+      step <<= 1;
+    }
+    return edges.find(nodeId, low, Math.min(high+1, size));
+  }
+}
@@ -0,0 +1,28 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * How the edge lists of a modifiable GraphStore are kept in memory. 
+ * When the int indexed stores of INTERLEAVED or SPLIT get full, they 
+ * switch to the big version of the same layout with long indexes, 
+ * BigChunkedEdgeLists or BigSplitChunkedEdgeLists, which take over the 
+ * arrays of the full stores as their first segments without copying any 
+ * edges. Once the store is frozen, all layouts get replaced by CsrEdges, which
+ * always keeps the node ids and the edge data in separate segmented 
+ * arrays.
+ * 
+ * @author Johann Petrak
+ */
+public enum EdgeLayout {
+  /** one chunk per node with (nodeId, edgeData) pairs, see ChunkedEdgeLists */
+  INTERLEAVED,
+  /** one chunk of node ids and a parallel chunk of edge data per node, 
+   * so searching only reads the node ids, see SplitChunkedEdgeLists */
+  SPLIT,
+  /** like INTERLEAVED, but with long chunk indexes for more than about
+   * 1 billion edges per direction, see BigChunkedEdgeLists. INTERLEAVED 
+   * switches to this automatically when needed. */
+  BIG,
+  /** like BIG, but the chunks are kept off the Java heap, see 
+   * OffHeapChunkedEdgeLists and GraphStore.close */
+  OFF_HEAP
+}
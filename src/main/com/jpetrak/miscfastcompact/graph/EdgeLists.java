@@ -0,0 +1,70 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.io.Serializable;
+
+/**
+ * The edges in one direction (either all outgoing or all incoming edges) 
+ * for all the nodes of a graph: for each node id, a list of edges sorted
+ * by increasing id of the other node. 
+ * Different subclasses store the edge lists in different ways, all of them 
+ * give access to the edge list of a node through an EdgeCursor which has
+ * to be created by newCursor of the same object.
+ * 
+ * @author Johann Petrak
+ */
+public abstract class EdgeLists implements Serializable {
+  private static final long serialVersionUID = 1L;
+  
+  /**
+   * Create a cursor that can be used with the position method.
+   * @return 
+   */
+  public abstract EdgeCursor newCursor();
+  
+  /**
+   * Position the cursor on the edge list of the node. Returns false and 
+   * makes the cursor empty if the node does not have any edges.
+   * @param nodeId
+   * @param cursor
+   * @return 
+   */
+  public abstract boolean position(int nodeId, EdgeCursor cursor);
+  
+  /**
+   * Number of edges of the node.
+   * @param nodeId
+   * @return 
+   */
+  public abstract int getDegree(int nodeId);
+  
+  /**
+   * Number of nodes, i.e. the node ids 0...(n-1) can be used.
+   * @return 
+   */
+  public abstract int getNumberOfNodes();
+  
+  /**
+   * Total number of edges in all the edge lists.
+   * @return 
+   */
+  public abstract long getNumberOfEdges();
+  
+  /**
+   * Add the bytes of heap memory used by these edge lists to the footprint,
+   * as parts whose names start with prefix. Edge lists which do not 
+   * override this do not add anything.
+   * @param prefix
+   * @param footprint 
+   */
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+  }
+  
+  /**
+   * Free memory which is not managed by the garbage collector, like the 
+   * off-heap memory of OffHeapChunkedEdgeLists. The edge lists must not 
+   * be used after this. Edge lists which do not override this do not 
+   * need to be closed.
+   */
+  public void close() {
+  }
+}
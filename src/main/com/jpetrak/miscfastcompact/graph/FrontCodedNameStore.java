@@ -0,0 +1,357 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.BigStoreOfBytes;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Space efficient container for node names by node id, using front coding.
+ * <p>
+ * The names are kept as UTF-8 bytes in buckets of bucketSize names. The
+ * first name of each bucket (the bucket head) is stored completely, each
+ * other name is stored as the number of leading bytes it shares with the
+ * name before it plus the remaining bytes. Names with long common
+ * prefixes, like URIs from the same namespace, therefore only need a few
+ * bytes each. All numbers are stored as variable length integers (7 bits
+ * per byte).
+ * <p>
+ * The encoded names are kept in a BigStoreOfBytes, so they can use more
+ * than 2GB. All bytes of a bucket are in the same segment of the store: if
+ * a name does not fit into the rest of the segment, the bucket so far is
+ * moved to a new segment, which wastes at most one bucket per segment.
+ * <p>
+ * Names can be added in any order, just like for NodeNameStore, and are
+ * then retrieved by id. Compression is best if names are added in sorted
+ * order and only if all names have been added in sorted order (by their
+ * UTF-8 bytes, which is the same as sorting by Unicode code points), the
+ * id for a name can be found with getNodeId, which does a binary search
+ * over the bucket heads and then decodes at most one bucket. The
+ * createSorted method creates a store where ids are assigned in sorted order.
+ *
+ * @author Johann Petrak
+ */
+public class FrontCodedNameStore implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final int bucketSize;
+  private final BigStoreOfBytes bytes;
+  // the index of the first byte of each bucket in the bytes store
+  private LongArrayList bucketStarts = new LongArrayList();
+  private int size = 0;
+  private int maxLength = 0;
+  private boolean sorted = true;
+  // the name added last, needed to front code the next one
+  private byte[] last = new byte[16];
+  private int lastLength = 0;
+  // buffer to assemble the encoded name before adding it to the store
+  private transient byte[] encodeBuffer;
+
+  public FrontCodedNameStore() {
+    this(16);
+  }
+
+  /**
+   * Create a store that starts a new bucket every bucketSize names. Larger
+   * buckets compress better, but getting a name needs to decode up to
+   * bucketSize-1 names before it.
+   * @param bucketSize
+   */
+  public FrontCodedNameStore(int bucketSize) {
+    this(bucketSize, BigStoreOfBytes.DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create a store with the given bucket size which keeps the encoded names
+   * in segments of 2^segmentShift bytes. A bucket must fit into a segment.
+   * @param bucketSize
+   * @param segmentShift
+   */
+  public FrontCodedNameStore(int bucketSize, int segmentShift) {
+    if(bucketSize < 1) {
+      throw new RuntimeException("Bucket size must be > 0 but is "+bucketSize);
+    }
+    this.bucketSize = bucketSize;
+    bytes = new BigStoreOfBytes(segmentShift);
+  }
+
+  /**
+   * Create a store for the given names where the ids are assigned in sorted
+   * order of the names, so that getNodeId can be used. The names array is
+   * not modified. Duplicate names are not allowed.
+   * @param names
+   * @param bucketSize
+   * @return
+   */
+  public static FrontCodedNameStore createSorted(String[] names, int bucketSize) {
+    byte[][] encoded = new byte[names.length][];
+    for(int i=0; i<names.length; i++) {
+      encoded[i] = names[i].getBytes(UTF8);
+    }
+    Arrays.sort(encoded, new Comparator<byte[]>() {
+      @Override
+      public int compare(byte[] o1, byte[] o2) {
+        return compareBytes(o1, 0, o1.length, o2, o2.length);
+      }
+    });
+    FrontCodedNameStore store = new FrontCodedNameStore(bucketSize);
+    for(int i=0; i<encoded.length; i++) {
+      if(i > 0) {
+        if(compareBytes(encoded[i-1], 0, encoded[i-1].length, encoded[i], encoded[i].length) == 0) {
+          throw new RuntimeException("Duplicate name: "+new String(encoded[i], UTF8));
+        }
+        // let the garbage collector get the ones already added
+        encoded[i-1] = null;
+      }
+      store.addNode(encoded[i], encoded[i].length);
+    }
+    return store;
+  }
+
+  /**
+   * Add a node name - if the names are used for the nodes of a GraphStore,
+   * this MUST be done in the same order in which the nodes were added to
+   * the GraphStore!!
+   *
+   * @param nodeName
+   */
+  public void addNode(String nodeName) {
+    byte[] b = nodeName.getBytes(UTF8);
+    addNode(b, b.length);
+  }
+
+  private void addNode(byte[] name, int length) {
+    if(size == Integer.MAX_VALUE) {
+      throw new RuntimeException("Capacity of name store exhausted");
+    }
+    if(size > 0 && sorted && compareBytes(last, 0, lastLength, name, length) > 0) {
+      sorted = false;
+    }
+    if(encodeBuffer == null || encodeBuffer.length < length+10) {
+      encodeBuffer = new byte[Math.max(length+10, 64)];
+    }
+    int pos = 0;
+    if(size % bucketSize == 0) {
+      // bucket head: length and the complete name
+      pos = writeVInt(encodeBuffer, pos, length);
+      System.arraycopy(name, 0, encodeBuffer, pos, length);
+      pos += length;
+      long start = bytes.addFixedLengthData(encodeBuffer, pos);
+      bucketStarts.add(start);
+    } else {
+      int common = 0;
+      int max = Math.min(length, lastLength);
+      while(common < max && last[common] == name[common]) {
+        common++;
+      }
+      pos = writeVInt(encodeBuffer, pos, common);
+      pos = writeVInt(encodeBuffer, pos, length-common);
+      System.arraycopy(name, common, encodeBuffer, pos, length-common);
+      pos += length-common;
+      // the bucket is always at the end of the last segment
+      int current = bucketStarts.size()-1;
+      long start = bucketStarts.getLong(current);
+      int used = (int)(bytes.size()-start);
+      if(bytes.getOffset(start)+used+pos > (1 << bytes.getSegmentShift())) {
+        byte[] moved = new byte[used+pos];
+        System.arraycopy(bytes.getSegment(start), bytes.getOffset(start), moved, 0, used);
+        System.arraycopy(encodeBuffer, 0, moved, used, pos);
+        bucketStarts.set(current, bytes.addFixedLengthData(moved));
+      } else {
+        bytes.addFixedLengthData(encodeBuffer, pos);
+      }
+    }
+    if(last.length < length) {
+      last = new byte[Math.max(length, last.length*2)];
+    }
+    System.arraycopy(name, 0, last, 0, length);
+    lastLength = length;
+    maxLength = Math.max(maxLength, length);
+    size++;
+  }
+
+  /**
+   * Number of names stored.
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * True if all names have been added in sorted order, so getNodeId can
+   * be used.
+   * @return
+   */
+  public boolean isSorted() {
+    return sorted;
+  }
+
+  /**
+   * The maximum length of the UTF-8 bytes of any name: a buffer of this
+   * size is big enough for getNodeNameBytes.
+   * @return
+   */
+  public int getMaxNameLength() {
+    return maxLength;
+  }
+
+  public String getNodeName(int nodeId) {
+    byte[] buffer = new byte[maxLength];
+    int length = getNodeNameBytes(nodeId, buffer);
+    return new String(buffer, 0, length, UTF8);
+  }
+
+  /**
+   * Decode the UTF-8 bytes of the name into the buffer and return the
+   * length. Only the common prefix and the differing bytes of each name
+   * before the one wanted in the bucket are copied into the buffer, no
+   * objects are created.
+   * @param nodeId
+   * @param buffer a buffer of at least getMaxNameLength() bytes
+   * @return
+   */
+  public int getNodeNameBytes(int nodeId, byte[] buffer) {
+    if(nodeId < 0 || nodeId >= size) {
+      throw new IndexOutOfBoundsException("No name for node id "+nodeId);
+    }
+    long start = bucketStarts.getLong(nodeId / bucketSize);
+    byte[] b = bytes.getSegment(start);
+    int pos = bytes.getOffset(start);
+    int length = readVInt(b, pos);
+    pos += vIntSize(length);
+    System.arraycopy(b, pos, buffer, 0, length);
+    pos += length;
+    int n = nodeId % bucketSize;
+    for(int i=0; i<n; i++) {
+      int common = readVInt(b, pos);
+      pos += vIntSize(common);
+      int suffix = readVInt(b, pos);
+      pos += vIntSize(suffix);
+      System.arraycopy(b, pos, buffer, common, suffix);
+      pos += suffix;
+      length = common+suffix;
+    }
+    return length;
+  }
+
+  /**
+   * Return the id for the name or -1 if the name is not in the store. This
+   * can only be used if all names were added in sorted order.
+   * @param nodeName
+   * @return
+   */
+  public int getNodeId(String nodeName) {
+    if(!sorted) {
+      throw new RuntimeException("getNodeId can only be used if the names were added in sorted order");
+    }
+    if(size == 0) {
+      return -1;
+    }
+    byte[] name = nodeName.getBytes(UTF8);
+    // find the last bucket whose head is <= the name
+    int low = 0;
+    int high = bucketStarts.size()-1;
+    int bucket = -1;
+    while(low <= high) {
+      int mid = (low + high) >>> 1;
+      long start = bucketStarts.getLong(mid);
+      byte[] b = bytes.getSegment(start);
+      int pos = bytes.getOffset(start);
+      int length = readVInt(b, pos);
+      int cmp = compareBytes(b, pos+vIntSize(length), length, name, name.length);
+      if(cmp < 0) {
+        bucket = mid;
+        low = mid + 1;
+      } else if(cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid*bucketSize;
+      }
+    }
+    if(bucket < 0) {
+      return -1;
+    }
+    // decode the names in the bucket after the head and compare
+    byte[] buffer = new byte[Math.max(maxLength, name.length)];
+    long start = bucketStarts.getLong(bucket);
+    byte[] b = bytes.getSegment(start);
+    int pos = bytes.getOffset(start);
+    int length = readVInt(b, pos);
+    pos += vIntSize(length);
+    System.arraycopy(b, pos, buffer, 0, length);
+    pos += length;
+    int n = Math.min(bucketSize, size-bucket*bucketSize);
+    for(int i=1; i<n; i++) {
+      int common = readVInt(b, pos);
+      pos += vIntSize(common);
+      int suffix = readVInt(b, pos);
+      pos += vIntSize(suffix);
+      System.arraycopy(b, pos, buffer, common, suffix);
+      pos += suffix;
+      length = common+suffix;
+      int cmp = compareBytes(buffer, 0, length, name, name.length);
+      if(cmp == 0) {
+        return bucket*bucketSize+i;
+      } else if(cmp > 0) {
+        break;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Number of bytes used for the encoded names.
+   * @return
+   */
+  public long getEncodedSize() {
+    return bytes.size();
+  }
+
+  // compare bytes a[aFrom..aFrom+aLength) with b[0..bLength) as unsigned bytes
+  private static int compareBytes(byte[] a, int aFrom, int aLength, byte[] b, int bLength) {
+    int n = Math.min(aLength, bLength);
+    for(int i=0; i<n; i++) {
+      int x = a[aFrom+i] & 0xFF;
+      int y = b[i] & 0xFF;
+      if(x != y) {
+        return x - y;
+      }
+    }
+    return aLength - bLength;
+  }
+
+  private static int writeVInt(byte[] buffer, int pos, int value) {
+    while((value & ~0x7F) != 0) {
+      buffer[pos++] = (byte)((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte)value;
+    return pos;
+  }
+
+  private static int readVInt(byte[] buffer, int pos) {
+    int value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = buffer[pos++];
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    } while(b < 0);
+    return value;
+  }
+
+  private static int vIntSize(int value) {
+    int n = 1;
+    while((value & ~0x7F) != 0) {
+      value >>>= 7;
+      n++;
+    }
+    return n;
+  }
+}
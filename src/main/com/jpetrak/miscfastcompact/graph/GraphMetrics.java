@@ -0,0 +1,335 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics for the pair queries of a GraphStore, collected only after
+ * GraphStore.enableMetrics has been called. When metrics are not enabled,
+ * the queries only pay for one check of a volatile field.
+ * <p>
+ * For each kind of PairQuery, this counts the queries (including the ones
+ * answered from the query cache) and keeps a histogram of the latencies
+ * in nanoseconds. For the sum queries, there are histograms of the sizes
+ * of the smaller and the larger of the two edge lists intersected, which
+ * show if hubs are involved. Finally, the number of node ids read while
+ * searching or intersecting (the probes) is counted together with the
+ * number of edges in the lists searched: a ratio close to 1 means the
+ * lists get scanned, a small ratio that binary or galloping search is
+ * effective. To count the probes, the lists are searched with the plain
+ * binary search of EdgeCursor while metrics are enabled, so for compressed
+ * edges, latencies are somewhat higher than without metrics.
+ * <p>
+ * All histograms have power of two buckets: bucket 0 counts the value 0,
+ * bucket i &gt; 0 the values from 2^(i-1) to 2^i-1.
+ * <p>
+ * The metrics can be read directly, through JMX (see registerMBean) or
+ * pushed to a MetricsSink with report.
+ *
+ * @author Johann Petrak
+ */
+public class GraphMetrics implements GraphMetricsMBean {
+
+  public static final int BUCKETS = 64;
+  private static final int NR_QUERIES = PairQuery.values().length;
+
+  private final AtomicLongArray queryCounts = new AtomicLongArray(NR_QUERIES);
+  private final AtomicLongArray queryNanos = new AtomicLongArray(NR_QUERIES);
+  // the latency histogram of query q is at q*BUCKETS
+  private final AtomicLongArray latencies = new AtomicLongArray(NR_QUERIES*BUCKETS);
+  private final AtomicLongArray smallerSizes = new AtomicLongArray(BUCKETS);
+  private final AtomicLongArray largerSizes = new AtomicLongArray(BUCKETS);
+  private final AtomicLong probes = new AtomicLong();
+  private final AtomicLong probedElements = new AtomicLong();
+  // each thread wraps the query cursors in its own counting cursors
+  private final ThreadLocal<CountingEdgeCursor[]> countingCursors = new ThreadLocal<CountingEdgeCursor[]>() {
+    @Override
+    protected CountingEdgeCursor[] initialValue() {
+      return new CountingEdgeCursor[]{new CountingEdgeCursor(), new CountingEdgeCursor()};
+    }
+  };
+  private ObjectName objectName;
+
+  /**
+   * The histogram bucket for a value.
+   * @param value
+   * @return
+   */
+  public static int bucket(long value) {
+    return value <= 0 ? 0 : Math.min(BUCKETS-1, 64-Long.numberOfLeadingZeros(value));
+  }
+
+  /**
+   * The largest value counted in the bucket.
+   * @param bucket
+   * @return
+   */
+  public static long bucketUpperBound(int bucket) {
+    return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket)-1;
+  }
+
+  // RECORDING, called by GraphStore
+
+  void recordQuery(PairQuery query, long nanos) {
+    int q = query.ordinal();
+    queryCounts.incrementAndGet(q);
+    queryNanos.addAndGet(q, nanos);
+    latencies.incrementAndGet(q*BUCKETS+bucket(nanos));
+  }
+
+  // the same as EdgeIntersection.sumEdgeData, but records the sizes of
+  // the lists and the probes
+  int sumEdgeData(EdgeCursor edges1, EdgeCursor edges2, IntersectionStrategy strategy) {
+    int size1 = edges1.size();
+    int size2 = edges2.size();
+    smallerSizes.incrementAndGet(bucket(Math.min(size1, size2)));
+    largerSizes.incrementAndGet(bucket(Math.max(size1, size2)));
+    CountingEdgeCursor[] cursors = countingCursors.get();
+    cursors[0].wrap(edges1);
+    cursors[1].wrap(edges2);
+    int sum = EdgeIntersection.sumEdgeData(cursors[0], cursors[1], strategy);
+    probes.addAndGet(cursors[0].reads + cursors[1].reads);
+    probedElements.addAndGet(size1 + size2);
+    return sum;
+  }
+
+  // the same as edges.find(nodeId, 0), but records the probes
+  int find(EdgeCursor edges, int nodeId) {
+    CountingEdgeCursor cursor = countingCursors.get()[0];
+    cursor.wrap(edges);
+    int index = cursor.find(nodeId, 0);
+    probes.addAndGet(cursor.reads);
+    probedElements.addAndGet(edges.size());
+    return index;
+  }
+
+  // READING
+
+  public long getQueryCount(PairQuery query) {
+    return queryCounts.get(query.ordinal());
+  }
+
+  public long getTotalLatencyNanos(PairQuery query) {
+    return queryNanos.get(query.ordinal());
+  }
+
+  public double getMeanLatencyNanos(PairQuery query) {
+    long count = getQueryCount(query);
+    return count == 0 ? 0.0 : (double)getTotalLatencyNanos(query) / count;
+  }
+
+  public long[] getLatencyHistogram(PairQuery query) {
+    long[] histogram = new long[BUCKETS];
+    int start = query.ordinal()*BUCKETS;
+    for(int i=0; i<BUCKETS; i++) {
+      histogram[i] = latencies.get(start+i);
+    }
+    return histogram;
+  }
+
+  /**
+   * An upper bound for the given percentile (0 to 100) of the latencies:
+   * the upper bound of the bucket which contains it.
+   * @param query
+   * @param percentile
+   * @return
+   */
+  public long getLatencyPercentileNanos(PairQuery query, double percentile) {
+    if(percentile < 0 || percentile > 100) {
+      throw new RuntimeException("Percentile must be between 0 and 100 but is "+percentile);
+    }
+    long[] histogram = getLatencyHistogram(query);
+    long total = 0;
+    for(long n : histogram) {
+      total += n;
+    }
+    if(total == 0) {
+      return 0;
+    }
+    long rank = (long)Math.ceil(percentile / 100.0 * total);
+    long seen = 0;
+    for(int i=0; i<BUCKETS; i++) {
+      seen += histogram[i];
+      if(seen >= rank && seen > 0) {
+        return bucketUpperBound(i);
+      }
+    }
+    return bucketUpperBound(BUCKETS-1);
+  }
+
+  @Override
+  public long[] getSmallerListSizeHistogram() {
+    return toArray(smallerSizes);
+  }
+
+  @Override
+  public long[] getLargerListSizeHistogram() {
+    return toArray(largerSizes);
+  }
+
+  /**
+   * The number of node ids read while searching or intersecting edge lists.
+   * @return
+   */
+  @Override
+  public long getProbes() {
+    return probes.get();
+  }
+
+  /**
+   * The number of edges in all the edge lists searched or intersected.
+   * @return
+   */
+  @Override
+  public long getProbedElements() {
+    return probedElements.get();
+  }
+
+  @Override
+  public double getProbeRatio() {
+    long elements = getProbedElements();
+    return elements == 0 ? 0.0 : (double)getProbes() / elements;
+  }
+
+  // the JMX versions, with the query given by name
+
+  @Override
+  public long getQueryCount(String query) {
+    return getQueryCount(PairQuery.valueOf(query));
+  }
+
+  @Override
+  public double getMeanLatencyNanos(String query) {
+    return getMeanLatencyNanos(PairQuery.valueOf(query));
+  }
+
+  @Override
+  public long getLatencyPercentileNanos(String query, double percentile) {
+    return getLatencyPercentileNanos(PairQuery.valueOf(query), percentile);
+  }
+
+  /**
+   * Set all metrics back to 0.
+   */
+  @Override
+  public void reset() {
+    for(int i=0; i<NR_QUERIES; i++) {
+      queryCounts.set(i, 0);
+      queryNanos.set(i, 0);
+    }
+    for(int i=0; i<latencies.length(); i++) {
+      latencies.set(i, 0);
+    }
+    for(int i=0; i<BUCKETS; i++) {
+      smallerSizes.set(i, 0);
+      largerSizes.set(i, 0);
+    }
+    probes.set(0);
+    probedElements.set(0);
+  }
+
+  /**
+   * Push all metrics to the sink: for each query "query.NAME.count",
+   * "query.NAME.nanos" and the histogram "query.NAME.latency", then the
+   * histograms "intersection.smaller" and "intersection.larger", and
+   * "search.probes", "search.elements" and "search.probeRatio".
+   * @param sink
+   */
+  public void report(MetricsSink sink) {
+    for(PairQuery query : PairQuery.values()) {
+      String prefix = "query."+query.name();
+      sink.counter(prefix+".count", getQueryCount(query));
+      sink.counter(prefix+".nanos", getTotalLatencyNanos(query));
+      sink.histogram(prefix+".latency", getLatencyHistogram(query));
+    }
+    sink.histogram("intersection.smaller", getSmallerListSizeHistogram());
+    sink.histogram("intersection.larger", getLargerListSizeHistogram());
+    sink.counter("search.probes", getProbes());
+    sink.counter("search.elements", getProbedElements());
+    sink.gauge("search.probeRatio", getProbeRatio());
+  }
+
+  /**
+   * Register the metrics with the platform MBean server under the name
+   * "com.jpetrak.miscfastcompact:type=GraphMetrics,name=NAME" and
+   * return the object name.
+   * @param name
+   * @return
+   */
+  public synchronized ObjectName registerMBean(String name) {
+    if(objectName != null) {
+      throw new RuntimeException("Metrics are already registered as "+objectName);
+    }
+    try {
+      ObjectName on = new ObjectName("com.jpetrak.miscfastcompact:type=GraphMetrics,name="+ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+      objectName = on;
+      return on;
+    } catch(JMException ex) {
+      throw new RuntimeException("Could not register the metrics as "+name, ex);
+    }
+  }
+
+  /**
+   * Remove the registration with the platform MBean server, if there is one.
+   */
+  public synchronized void unregisterMBean() {
+    if(objectName == null) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if(server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      objectName = null;
+    } catch(JMException ex) {
+      throw new RuntimeException("Could not unregister the metrics "+objectName, ex);
+    }
+  }
+
+  private static long[] toArray(AtomicLongArray values) {
+    long[] result = new long[values.length()];
+    for(int i=0; i<result.length; i++) {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+
+  // A cursor that counts how often a node id is read from the wrapped
+  // cursor. It does not override find, so searches go through nodeId.
+  private static class CountingEdgeCursor extends EdgeCursor {
+    private EdgeCursor cursor;
+    long reads;
+
+    void wrap(EdgeCursor cursor) {
+      this.cursor = cursor;
+      reads = 0;
+    }
+
+    @Override
+    public int size() {
+      return cursor.size();
+    }
+
+    @Override
+    public int nodeId(int pos) {
+      reads++;
+      return cursor.nodeId(pos);
+    }
+
+    @Override
+    public int edgeData(int pos) {
+      return cursor.edgeData(pos);
+    }
+
+    @Override
+    public void clear() {
+      cursor.clear();
+    }
+  }
+}
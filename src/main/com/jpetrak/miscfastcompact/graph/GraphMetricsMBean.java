@@ -0,0 +1,28 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * The JMX interface of GraphMetrics. Queries are given by the name of 
+ * the PairQuery, e.g. "SHARED_PARENT".
+ * 
+ * @author Johann Petrak
+ */
+public interface GraphMetricsMBean {
+  
+  public long getQueryCount(String query);
+  
+  public double getMeanLatencyNanos(String query);
+  
+  public long getLatencyPercentileNanos(String query, double percentile);
+  
+  public long[] getSmallerListSizeHistogram();
+  
+  public long[] getLargerListSizeHistogram();
+  
+  public long getProbes();
+  
+  public long getProbedElements();
+  
+  public double getProbeRatio();
+  
+  public void reset();
+}
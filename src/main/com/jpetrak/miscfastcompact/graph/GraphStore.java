@@ -1,12 +1,20 @@
 package com.jpetrak.miscfastcompact.graph;
 
-import com.jpetrak.miscfastcompact.store.StoreOfInts;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.objects.Object2IntAVLTreeMap;
+import com.jpetrak.miscfastcompact.store.BigStoreOfInts;
+import com.jpetrak.miscfastcompact.store.OffHeapStoreOfInts;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -15,29 +23,117 @@ import java.util.List;
  */
 public class GraphStore implements Serializable {
   // The store consists of the following parts:
-  // = a map from URI-String to Uri-id (an int, sequential 0...(n-1)
-  // = an array that maps URI id to the out edge chunk index or -1 if no edge exists (yet)
-  // = an array that maps URI id to the in edge chunk index or -1 if no edge exists (yet)
-  // = out-edge store and in-edge store: two separate stores where we store,
-  //   at position chunk-index, a variable block of edge-data. Edge data
-  //   is a table with two integers per row: first the id or count of the edg
-  //   second the id of the to/from node
-  
-  private StoreOfInts outEdges;
-  private StoreOfInts inEdges;
-  private Object2IntAVLTreeMap<String> uri2idMap;
-  //private HashMap<String,Integer> uri2idMap;
-  private IntArrayList id2OutEdgeChunk;
-  private IntArrayList id2InEdgeChunk;
-  private int nextId = 0;
+  // = a dictionary from URI-String to Uri-id (an int, sequential 0...(n-1)
+  //   and back
+  // = the out edge lists and the in edge lists. While the store can be
+  //   modified, these are ChunkedEdgeLists (or SplitChunkedEdgeLists, which
+  //   keep the ids and edge data in two separate stores, see EdgeLayout, 
+  //   or BigChunkedEdgeLists once there are too many edges for int indexes):
+  //   = an array that maps URI id to the edge chunk index or -1 if no edge exists (yet)
+  //   = a store where we store, at position chunk-index, a variable block 
+  //     of edge-data. Edge data is a table with two integers per row: 
+  //     first the id of the to/from node, second the edge data
+  // = once the store is frozen, the edge lists are replaced by an immutable 
+  //   CSR representation for each direction, or they are read-only edge 
+  //   lists mapped from a file (see GraphStoreFile)
+  // = once insertEdge is used, the modifiable edge lists get wrapped in 
+  //   DeltaEdgeLists, which keep a small sorted buffer of new edges per node
+  
+  private EdgeLists outEdges;
+  private EdgeLists inEdges;
+  private NodeDictionary nodes;
+  private boolean frozen = false;
+  // the segment shift for the BIG and OFF_HEAP layouts and the frozen
+  // edge lists and ranking indices
+  private int segmentShift = CsrEdges.DEFAULT_SEGMENT_SHIFT;
+  // only non-null between startImport and finishImport
+  private transient EdgeImporter importer;
+  // the pool for the batch queries, shared with all the snapshots
+  private BatchPool batchPool = new BatchPool();
+  // the maximum number of edges in the delta buffer of a node for insertEdge
+  private int maxDeltaSize = 64;
+  // the last snapshot published and its epoch, see publishSnapshot
+  private transient volatile GraphStore snapshot;
+  private long epoch = 0;
+  // the optional cache for the pair queries
+  private transient volatile PairQueryCache queryCache;
+  // the optional metrics for the pair queries, see enableMetrics
+  private transient volatile GraphMetrics metrics;
+  // the optional ranking indices for the top k queries
+  private RankingIndex outRanking;
+  private RankingIndex inRanking;
+  // how the sum queries intersect two edge lists
+  private IntersectionStrategy intersectionStrategy = IntersectionStrategy.ADAPTIVE;
+  // base edge lists replaced by a background compaction, which a query 
+  // running at that time may still read: they get closed by the next 
+  // method that modifies the store
+  private transient List<EdgeLists> retiredEdges;
   
   public GraphStore() {
-    uri2idMap = new Object2IntAVLTreeMap<String>();
-    //uri2idMap = new HashMap<String,Integer>();
-    outEdges = new StoreOfInts();
-    inEdges = new StoreOfInts();
-    id2OutEdgeChunk = new IntArrayList();
-    id2InEdgeChunk = new IntArrayList();
+    this(EdgeLayout.INTERLEAVED);
+  }
+  
+  /**
+   * Create a store which uses the given layout for the edge lists until 
+   * it gets frozen.
+   * @param layout 
+   */
+  public GraphStore(EdgeLayout layout) {
+    nodes = new NodeDictionary();
+    createEdgeLists(layout, BigStoreOfInts.DEFAULT_SEGMENT_SHIFT, OffHeapStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create a store which uses the given layout for the edge lists until 
+   * it gets frozen, where the arrays of the BIG and OFF_HEAP layouts, of 
+   * the big edge lists INTERLEAVED and SPLIT switch to when they get full, 
+   * of the frozen edge lists and of the ranking indices are split into 
+   * segments of 2^segmentShift ints. The edges of a single node must fit 
+   * into half a segment. Note that OFF_HEAP allocates a whole segment at 
+   * once and a segment must fit into one direct buffer, so the shift can be
+   * at most 28 for OFF_HEAP and at most 30 for the other layouts.
+   * @param layout 
+   * @param segmentShift
+   */
+  public GraphStore(EdgeLayout layout, int segmentShift) {
+    int maxShift = layout == EdgeLayout.OFF_HEAP ? 28 : 30;
+    if(segmentShift < 4 || segmentShift > maxShift) {
+      throw new RuntimeException("Segment shift for layout "+layout+" must be between 4 and "+
+              maxShift+" but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    nodes = new NodeDictionary();
+    createEdgeLists(layout, segmentShift, segmentShift);
+  }
+  
+  private void createEdgeLists(EdgeLayout layout, int bigSegmentShift, int offHeapSegmentShift) {
+    switch(layout) {
+      case INTERLEAVED: 
+        outEdges = new ChunkedEdgeLists(bigSegmentShift);
+        inEdges = new ChunkedEdgeLists(bigSegmentShift);
+        break;
+      case SPLIT:
+        outEdges = new SplitChunkedEdgeLists(bigSegmentShift);
+        inEdges = new SplitChunkedEdgeLists(bigSegmentShift);
+        break;
+      case BIG:
+        outEdges = new BigChunkedEdgeLists(bigSegmentShift);
+        inEdges = new BigChunkedEdgeLists(bigSegmentShift);
+        break;
+      case OFF_HEAP:
+        outEdges = new OffHeapChunkedEdgeLists(offHeapSegmentShift);
+        inEdges = new OffHeapChunkedEdgeLists(offHeapSegmentShift);
+        break;
+      default: throw new RuntimeException("Unknown edge layout: "+layout);
+    }
+  }
+  
+  // create a frozen store from existing parts
+  GraphStore(NodeDictionary nodes, EdgeLists outEdges, EdgeLists inEdges) {
+    this.nodes = nodes;
+    this.outEdges = outEdges;
+    this.inEdges = inEdges;
+    this.frozen = true;
   }
 
   /**
@@ -46,26 +142,40 @@ public class GraphStore implements Serializable {
    * @param uri
    * @return 
    */
-  public int addNode(String uri) {
-    if(uri2idMap.containsKey(uri)) {
-      return uri2idMap.get(uri);
+  public synchronized int addNode(String uri) {
+    int id = nodes.getId(uri);
+    if(id >= 0) {
+      return id;
     } else {
-      int usedId = nextId;
-      uri2idMap.put(uri, nextId);
-      id2InEdgeChunk.add(-1);
-      id2OutEdgeChunk.add(-1);
-      nextId++;
-      return usedId;
+      checkNotFrozen();
+      closeRetiredEdges();
+      id = nodes.add(uri);
+      ((ModifiableEdgeLists)inEdges).addNode();
+      ((ModifiableEdgeLists)outEdges).addNode();
+      return id;
     }
   }
   
   // return the id or -1 if not found
   public int getNodeId(String uri) {
-    if(uri2idMap.containsKey(uri)) {
-      return uri2idMap.get(uri);
-    } else {
-      return -1;
-    }
+    return nodes.getId(uri);
+  }
+  
+  /**
+   * Return the URI for a node id.
+   * @param nodeId
+   * @return 
+   */
+  public String getNodeName(int nodeId) {
+    return nodes.getName(nodeId);
+  }
+  
+  /**
+   * Return the number of nodes in the store.
+   * @return 
+   */
+  public int getNumberOfNodes() {
+    return nodes.size();
   }
 
   // TO LOAD A GRAPH:
@@ -78,6 +188,275 @@ public class GraphStore implements Serializable {
   // URIs, one sorted by first uri, one sorted by second uri, and the 
   // loading program gathers all the information for blocks of identical 
   // first or second uris
+  // ALTERNATELY, use the bulk import mode, which does all of this internally 
+  // from edges in any order: startImport(maxEdgesInMemory), then 
+  // addEdge(from,to,data) for all edges, then finishImport()
+  
+  /**
+   * Start the bulk import mode. In this mode, edges can be added in any order
+   * with the addEdge methods. At most maxEdgesInMemory edges are kept in 
+   * memory (12 bytes per edge), if there are more, sorted runs of edges are
+   * written to temporary files in the default temporary directory. 
+   * The edges only become visible once finishImport has been called.
+   * Nodes which get edges from the import must not have edges from any other
+   * method, since these would get replaced.
+   * @param maxEdgesInMemory 
+   */
+  public void startImport(int maxEdgesInMemory) {
+    startImport(maxEdgesInMemory, null);
+  }
+  
+  /**
+   * Start the bulk import mode and use the given directory for the temporary
+   * files. If tmpDir is null, the default temporary directory is used.
+   * @param maxEdgesInMemory
+   * @param tmpDir 
+   */
+  public void startImport(int maxEdgesInMemory, File tmpDir) {
+    checkNotFrozen();
+    if(importer != null) {
+      throw new RuntimeException("Import already started");
+    }
+    importer = new EdgeImporter(maxEdgesInMemory, tmpDir);
+  }
+  
+  /**
+   * Add an edge during bulk import. The nodes are added if they do not 
+   * exist yet. Edge data must be != Integer.MIN_VALUE, but this is not 
+   * checked.
+   * @param fromUri
+   * @param toUri
+   * @param edgeData 
+   */
+  public void addEdge(String fromUri, String toUri, int edgeData) {
+    if(importer == null) {
+      throw new RuntimeException("addEdge can only be used after startImport");
+    }
+    int fromId = addNode(fromUri);
+    int toId = addNode(toUri);
+    importer.addEdge(fromId, toId, edgeData);
+  }
+  
+  /**
+   * Add an edge between two nodes which have already been added during 
+   * bulk import. 
+   * @param fromId
+   * @param toId
+   * @param edgeData 
+   */
+  public void addEdge(int fromId, int toId, int edgeData) {
+    if(importer == null) {
+      throw new RuntimeException("addEdge can only be used after startImport");
+    }
+    if(fromId < 0 || fromId >= nodes.size() || toId < 0 || toId >= nodes.size()) {
+      throw new RuntimeException("addEdge with unknown node id: "+fromId+"/"+toId);
+    }
+    importer.addEdge(fromId, toId, edgeData);
+  }
+  
+  /**
+   * Finish the bulk import: sort and merge all the edges added since 
+   * startImport and create the in- and out-edges for all nodes involved.
+   */
+  public synchronized void finishImport() {
+    if(importer == null) {
+      throw new RuntimeException("finishImport called but no import started");
+    }
+    closeRetiredEdges();
+    try {
+      importer.finish(this);
+    } finally {
+      importer = null;
+      edgesChanged();
+    }
+  }
+  
+  // INCREMENTAL UPDATES: edges can be added one by one at any time with 
+  // insertEdge, except during bulk import or once the store is frozen. 
+  // New edges go into a small sorted delta buffer for the node which the 
+  // queries merge in, a full delta buffer gets folded into a new chunk for 
+  // the node. compactEdges rebuilds the edge lists to get rid of the old 
+  // chunks replaced in this way.
+  
+  /**
+   * Add a single edge, adding the nodes if they do not exist yet.
+   * @param fromUri
+   * @param toUri
+   * @param edgeData 
+   */
+  public synchronized void insertEdge(String fromUri, String toUri, int edgeData) {
+    insertEdge(addNode(fromUri), addNode(toUri), edgeData);
+  }
+  
+  /**
+   * Add a single edge between two existing nodes. 
+   * @param fromId
+   * @param toId
+   * @param edgeData 
+   */
+  public synchronized void insertEdge(int fromId, int toId, int edgeData) {
+    checkNotFrozen();
+    if(importer != null) {
+      throw new RuntimeException("insertEdge cannot be used during an import");
+    }
+    if(fromId < 0 || fromId >= nodes.size() || toId < 0 || toId >= nodes.size()) {
+      throw new RuntimeException("insertEdge with unknown node id: "+fromId+"/"+toId);
+    }
+    closeRetiredEdges();
+    if(!(outEdges instanceof DeltaEdgeLists)) {
+      outEdges = new DeltaEdgeLists((ModifiableEdgeLists)outEdges, maxDeltaSize);
+      inEdges = new DeltaEdgeLists((ModifiableEdgeLists)inEdges, maxDeltaSize);
+    }
+    ((DeltaEdgeLists)outEdges).addEdge(fromId, toId, edgeData);
+    ((DeltaEdgeLists)inEdges).addEdge(toId, fromId, edgeData);
+    edgesChanged();
+  }
+  
+  /**
+   * Set the maximum number of edges a node can have in its delta buffer 
+   * before these get folded into the chunk of the node (default: 64). 
+   * Larger values make insertEdge cheaper but the queries slower.
+   * @param maxDeltaSize 
+   */
+  public synchronized void setMaxDeltaSize(int maxDeltaSize) {
+    if(maxDeltaSize < 1) {
+      throw new RuntimeException("Maximum delta size must be > 0 but is "+maxDeltaSize);
+    }
+    this.maxDeltaSize = maxDeltaSize;
+    if(outEdges instanceof DeltaEdgeLists) {
+      ((DeltaEdgeLists)outEdges).setMaxDeltaSize(maxDeltaSize);
+      ((DeltaEdgeLists)inEdges).setMaxDeltaSize(maxDeltaSize);
+    }
+  }
+  
+  /**
+   * Fold all the edges added with insertEdge into fresh edge lists, which
+   * releases the memory of all the edge chunks that have been replaced.
+   * Does nothing if insertEdge has not been used or the store is frozen.
+   */
+  public synchronized void compactEdges() {
+    closeRetiredEdges();
+    if(!frozen && outEdges instanceof DeltaEdgeLists) {
+      ((DeltaEdgeLists)outEdges).compact().close();
+      ((DeltaEdgeLists)inEdges).compact().close();
+    }
+  }
+  
+  /**
+   * Run compactEdges in a new background thread. Queries can run while 
+   * the compaction runs and see the edges either before or after it, 
+   * all the methods which add nodes or edges wait until the compaction is 
+   * finished. The memory of the old edge lists is released by the next 
+   * method which modifies the store.
+   * @return a future that can be used to wait for the compaction to finish
+   */
+  public Future<Void> startBackgroundCompaction() {
+    FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+      @Override
+      public void run() {
+        compactInBackground();
+      }
+    }, null);
+    Thread thread = new Thread(task, "GraphStore compaction");
+    thread.setDaemon(true);
+    thread.start();
+    return task;
+  }
+  
+  private synchronized void compactInBackground() {
+    closeRetiredEdges();
+    if(!frozen && outEdges instanceof DeltaEdgeLists) {
+      List<EdgeLists> retired = new ArrayList<EdgeLists>();
+      retired.add(((DeltaEdgeLists)outEdges).compact());
+      retired.add(((DeltaEdgeLists)inEdges).compact());
+      retiredEdges = retired;
+    }
+  }
+  
+  // only called by methods which modify the store, which the thread using
+  // the store cannot call while it runs a query
+  private void closeRetiredEdges() {
+    if(retiredEdges != null) {
+      for(EdgeLists edges : retiredEdges) {
+        edges.close();
+      }
+      retiredEdges = null;
+    }
+  }
+  
+  // CONCURRENT READERS: the store itself must only be used by one thread 
+  // at a time, but that thread can publish immutable snapshots of the 
+  // store, which any number of threads can query at the same time without 
+  // any locking. A reader gets the latest snapshot with getSnapshot and 
+  // keeps using it for as long as it wants a consistent view, while the 
+  // writer keeps adding nodes and edges and publishing new snapshots.
+  
+  /**
+   * Create an immutable frozen copy of the current state of the store and 
+   * make it the current snapshot. If the store is frozen already, the 
+   * snapshot shares all the data with the store. Otherwise the snapshot 
+   * shares the names and the edge chunks stored so far with the store, 
+   * which never changes them, and only copies the tables with an entry 
+   * per node in pages, of which the store copies a page again when it 
+   * changes an entry of the page for the first time after the snapshot. 
+   * So publishing a snapshot only costs time and memory in proportion to 
+   * the number of nodes changed since the last one, plus the delta 
+   * buffers of insertEdge. Each snapshot gets an epoch number that is one 
+   * more than that of the snapshot before.
+   * This must not be called during an import.
+   * @return the new snapshot
+   */
+  public synchronized GraphStore publishSnapshot() {
+    if(importer != null) {
+      throw new RuntimeException("Cannot publish a snapshot during an import");
+    }
+    GraphStore newSnapshot;
+    if(frozen) {
+      newSnapshot = new GraphStore(nodes, outEdges, inEdges);
+      newSnapshot.outRanking = outRanking;
+      newSnapshot.inRanking = inRanking;
+    } else {
+      newSnapshot = new GraphStore(nodes.snapshot(), 
+              ((ModifiableEdgeLists)outEdges).snapshot(), 
+              ((ModifiableEdgeLists)inEdges).snapshot());
+    }
+    newSnapshot.intersectionStrategy = intersectionStrategy;
+    newSnapshot.segmentShift = segmentShift;
+    newSnapshot.batchPool = batchPool;
+    newSnapshot.epoch = ++epoch;
+    snapshot = newSnapshot;
+    return newSnapshot;
+  }
+  
+  /**
+   * Return the snapshot published last, or null if no snapshot has been 
+   * published yet. This can be called from any thread.
+   * @return 
+   */
+  public GraphStore getSnapshot() {
+    return snapshot;
+  }
+  
+  /**
+   * For a snapshot, the epoch of the snapshot, otherwise the epoch of the 
+   * snapshot published last or 0 if none has been published yet.
+   * @return 
+   */
+  public synchronized long getEpoch() {
+    return epoch;
+  }
+  
+  // used by the importer to set the already sorted edge chunks for a node
+  void setOutEdgesChunk(int nodeId, int[] chunk, int length) {
+    ModifiableEdgeLists edges = ((ModifiableEdgeLists)outEdges).ensureCapacity(length);
+    edges.setEdges(nodeId, chunk, length);
+    outEdges = edges;
+  }
+  void setInEdgesChunk(int nodeId, int[] chunk, int length) {
+    ModifiableEdgeLists edges = ((ModifiableEdgeLists)inEdges).ensureCapacity(length);
+    edges.setEdges(nodeId, chunk, length);
+    inEdges = edges;
+  }
   
   /**
    * Add all the incoming edges for a node. This assumes that all the nodes
@@ -89,19 +468,21 @@ public class GraphStore implements Serializable {
    * @param edgeData
    * @param nodeIds 
    */
-  public void addSortedInEdges(int nodeId, List<Edge> edges) {
+  public synchronized void addSortedInEdges(int nodeId, List<Edge> edges) {
+    checkNotFrozen();
+    edgesChanged();
     int[] chunk = edgesList2Chunk(edges);
-    int chunkIndex = inEdges.addData(chunk);
-    id2InEdgeChunk.set(nodeId, chunkIndex);
+    setInEdgesChunk(nodeId, chunk, chunk.length);
   }
   public void addInEdges(int nodeId, List<Edge> edges) {
     Collections.sort(edges);
     addSortedInEdges(nodeId,edges);
   }
-  public void addSortedOutEdges(int nodeId, List<Edge> edges) {
+  public synchronized void addSortedOutEdges(int nodeId, List<Edge> edges) {
+    checkNotFrozen();
+    edgesChanged();
     int[] chunk = edgesList2Chunk(edges);
-    int chunkIndex = outEdges.addData(chunk);
-    id2OutEdgeChunk.set(nodeId, chunkIndex);
+    setOutEdgesChunk(nodeId, chunk, chunk.length);
   }
   public void addOutEdges(int nodeId, List<Edge> edges) {
     Collections.sort(edges);
@@ -117,184 +498,663 @@ public class GraphStore implements Serializable {
     return chunk;
   }
   
+  /**
+   * Turn the store into an immutable compressed sparse row representation.
+   * After this, all edges of a node are stored in one contiguous range of
+   * flat arrays, so no chunk lookups are needed for the queries anymore, and
+   * the memory for the edge chunk stores is released. 
+   * No nodes or edges can be added after this.
+   * Calling this more than once has no effect.
+   */
+  public void freeze() {
+    freeze(false);
+  }
+  
+  /**
+   * Turn the store into an immutable representation: if compress is false,
+   * this is the same as freeze(), otherwise the edge lists are stored 
+   * as delta and variable length encoded blocks with a skip table (see 
+   * CompressedEdges), which needs much less memory but makes the queries
+   * somewhat slower. 
+   * Calling this more than once has no effect.
+   * @param compress 
+   */
+  public synchronized void freeze(boolean compress) {
+    if(frozen) {
+      return;
+    }
+    if(importer != null) {
+      throw new RuntimeException("Cannot freeze during an import, call finishImport first");
+    }
+    closeRetiredEdges();
+    EdgeLists oldOut = outEdges;
+    EdgeLists oldIn = inEdges;
+    if(compress) {
+      outEdges = new CompressedEdges(oldOut, compressedSegmentShift());
+      inEdges = new CompressedEdges(oldIn, compressedSegmentShift());
+    } else {
+      outEdges = new CsrEdges(oldOut, segmentShift);
+      inEdges = new CsrEdges(oldIn, segmentShift);
+    }
+    oldOut.close();
+    oldIn.close();
+    frozen = true;
+    queryCursors = newQueryCursors();
+  }
+  
+  // segments with the same number of bytes as the int segments, but large 
+  // enough for a block
+  private int compressedSegmentShift() {
+    return Math.max(10, Math.min(30, segmentShift+2));
+  }
+  
+  /**
+   * Give all nodes new ids in the given order, so that nodes which are 
+   * used together have ids close to each other, which makes the queries
+   * and traversals access memory with better locality. The node 
+   * dictionary and all edge lists are rebuilt with the new ids, a frozen
+   * store stays frozen with the same representation. Any node ids kept 
+   * outside the store have to be mapped with the returned array, which 
+   * contains the new id for each old id. This cannot be used during an 
+   * import or for a store mapped from a file.
+   * @param order
+   * @return the new id for each old id
+   */
+  public synchronized int[] reorderNodes(NodeOrder order) {
+    if(importer != null) {
+      throw new RuntimeException("Cannot reorder the nodes during an import");
+    }
+    if(nodes instanceof MappedNodeDictionary) {
+      throw new RuntimeException("Cannot reorder the nodes of a store mapped from a file");
+    }
+    closeRetiredEdges();
+    int[] newIds = NodeReordering.computeNewIds(this, order);
+    int n = newIds.length;
+    String[] names = new String[n];
+    for(int i=0; i<n; i++) {
+      names[newIds[i]] = nodes.getName(i);
+    }
+    NodeDictionary newNodes = new NodeDictionary(n);
+    for(int i=0; i<n; i++) {
+      newNodes.add(names[i]);
+    }
+    EdgeLists newOut, newIn;
+    if(frozen) {
+      ModifiableEdgeLists out = new ChunkedEdgeLists(segmentShift);
+      ModifiableEdgeLists in = new ChunkedEdgeLists(segmentShift);
+      out = NodeReordering.renumber(outEdges, newIds, out);
+      in = NodeReordering.renumber(inEdges, newIds, in);
+      if(outEdges instanceof CompressedEdges) {
+        newOut = new CompressedEdges(out, compressedSegmentShift());
+        newIn = new CompressedEdges(in, compressedSegmentShift());
+      } else {
+        newOut = new CsrEdges(out, segmentShift);
+        newIn = new CsrEdges(in, segmentShift);
+      }
+    } else {
+      ModifiableEdgeLists out = ((ModifiableEdgeLists)outEdges).newEmpty();
+      ModifiableEdgeLists in = ((ModifiableEdgeLists)inEdges).newEmpty();
+      newOut = NodeReordering.renumber(outEdges, newIds, out);
+      newIn = NodeReordering.renumber(inEdges, newIds, in);
+    }
+    nodes = newNodes;
+    outEdges.close();
+    inEdges.close();
+    outEdges = newOut;
+    inEdges = newIn;
+    edgesChanged();
+    return newIds;
+  }
+  
+  /**
+   * Free the memory of the store which is not managed by the garbage 
+   * collector, i.e. the off-heap memory of the edge lists for the 
+   * OFF_HEAP layout. The store must not be used at all after this and no
+   * other thread may use it while it gets closed. The memory shared with 
+   * snapshots is not freed and stays valid for the snapshots. For the 
+   * other layouts, this does nothing.
+   */
+  public synchronized void close() {
+    closeRetiredEdges();
+    outEdges.close();
+    inEdges.close();
+  }
+  
+  public boolean isFrozen() {
+    return frozen;
+  }
+  
+  private void checkNotFrozen() {
+    if(frozen) {
+      throw new RuntimeException("GraphStore is frozen, cannot be modified");
+    }
+  }
+  
+  /**
+   * Create a new cursor that can be positioned on the edges of a node of 
+   * this store with getOutEdges or getInEdges.
+   * @return 
+   */
+  public EdgeCursor newEdgeCursor() {
+    return outEdges.newCursor();
+  }
+  
+  /**
+   * Position the cursor on the outgoing edges of the node. This does not 
+   * copy any data. Returns false and makes the cursor empty if the node 
+   * does not have outgoing edges.
+   * @param nodeId
+   * @param cursor a cursor created with newEdgeCursor
+   * @return 
+   */
+  public boolean getOutEdges(int nodeId, EdgeCursor cursor) {
+    return outEdges.position(nodeId, cursor);
+  }
+  
+  /**
+   * Position the cursor on the incoming edges of the node. This does not 
+   * copy any data. Returns false and makes the cursor empty if the node 
+   * does not have incoming edges.
+   * @param nodeId
+   * @param cursor a cursor created with newEdgeCursor
+   * @return 
+   */
+  public boolean getInEdges(int nodeId, EdgeCursor cursor) {
+    return inEdges.position(nodeId, cursor);
+  }
+  
+  /**
+   * The number of outgoing edges of the node.
+   * @param nodeId
+   * @return 
+   */
+  public int getOutDegree(int nodeId) {
+    return outEdges.getDegree(nodeId);
+  }
+  
+  /**
+   * The number of incoming edges of the node.
+   * @param nodeId
+   * @return 
+   */
+  public int getInDegree(int nodeId) {
+    return inEdges.getDegree(nodeId);
+  }
+  
+  // The cursors used by the query methods: each thread gets its own pair
+  // which is reused for all queries, so queries do not create garbage.
+  // The kind of cursor depends on the edge lists, so a new pair is created
+  // whenever the edge lists change (freeze).
+  private transient ThreadLocal<EdgeCursor[]> queryCursors = newQueryCursors();
+  
+  private ThreadLocal<EdgeCursor[]> newQueryCursors() {
+    return new ThreadLocal<EdgeCursor[]>() {
+      @Override
+      protected EdgeCursor[] initialValue() {
+        return new EdgeCursor[]{newEdgeCursor(), newEdgeCursor()};
+      }
+    };
+  }
+  
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    queryCursors = newQueryCursors();
+  }
+  
   // find the edge data of the first or only edge between two nodes or Integer.MIN_VALUE if
   // no edge was found
   public int getFirstEdgeData(int nodeId1, int nodeId2) {
-    // first check the sizes of the two edge chunks and pick the 
-    // smaller one for finding the edge!
-    int chunkIndex1 = id2OutEdgeChunk.get(nodeId1);
-    if(chunkIndex1<0) { return Integer.MIN_VALUE; }
-    int chunkIndex2 = id2InEdgeChunk.get(nodeId2);
-    if(chunkIndex2<0) { return Integer.MIN_VALUE; }
-    int size1 = outEdges.getSize(chunkIndex1);
-    int size2 = inEdges.getSize(chunkIndex2);
-    //System.out.println("Node1="+nodeId1+", node2="+nodeId2+", size1="+size1+", size2="+size2);
-    int ret = Integer.MIN_VALUE;
-    int chunk[];
+    return pairQuery(PairQuery.FIRST_EDGE_DATA, nodeId1, nodeId2);
+  }
+  
+  private int computeFirstEdgeData(int nodeId1, int nodeId2) {
+    EdgeCursor[] cursors = queryCursors.get();
+    EdgeCursor out = cursors[0];
+    EdgeCursor in = cursors[1];
+    if(!getOutEdges(nodeId1, out)) { return Integer.MIN_VALUE; }
+    if(!getInEdges(nodeId2, in)) { return Integer.MIN_VALUE; }
+    // pick the smaller of the two edge lists for finding the edge
     int index;
-    if(size1 < size2) {
-      // find in the outgoing edges
-      chunk = outEdges.getData(chunkIndex1);
-      index = binarySearchInEntries(chunk, nodeId2, 0);
+    if(out.size() < in.size()) {
+      index = findEdge(out, nodeId2);
+      return (index >= 0) ? out.edgeData(index) : Integer.MIN_VALUE;
     } else {
-      // find in the incoming edges
-      chunk = inEdges.getData(chunkIndex2);
-      index = binarySearchInEntries(chunk, nodeId1, 0);
-    }
-    if(index >= 0) {
-      ret = chunk[index+1];  // we found the index of the nodeId, the data is behind that
+      index = findEdge(in, nodeId1);
+      return (index >= 0) ? in.edgeData(index) : Integer.MIN_VALUE;
     }
-    return ret;
   }
   
   public int getSumEdgeDataSharedParent(int nodeId1, int nodeId2) {
-    // = check which edge list is smaller, use that one
-    // = for each edge in the smaller list, try to find the edge data 
-    //   in the other list. The search routine returns the index if found
-    //   or the smallest index for a node id larger than the wanted (negated)
-    //   if not found. We use that index as the starting point for the search
-    //   in the next iteration.
-    int chunkIndex1 = id2InEdgeChunk.get(nodeId1);
-    if(chunkIndex1<0) { 
-      //System.out.println("DEBUG: no in edges: "+nodeId1);
-      return 0; 
-    }
-    int chunkIndex2 = id2InEdgeChunk.get(nodeId2);
-    if(chunkIndex2<0) { 
-      //System.out.println("DEBUG: no in edges: "+nodeId1);
-      return 0; 
-    }
-    int size1 = inEdges.getSize(chunkIndex1);
-    int size2 = inEdges.getSize(chunkIndex2);
-    int sumData = 0;
-    int[] chunk1, chunk2;
-    int index, startIndex, sizeToSearch;
-    if(size1 < size2) {
-      chunk1 = inEdges.getData(chunkIndex1);
-      chunk2 = inEdges.getData(chunkIndex2);
-      sizeToSearch = size2;
-    } else {
-      chunk1 = inEdges.getData(chunkIndex2);
-      chunk2 = inEdges.getData(chunkIndex1);
-      sizeToSearch = size1;
-    }
-    startIndex = 0;
-    //System.out.println("DEBUG: size1="+size1+", size2="+size2);
-    // go through the edges in chunk1 and get the other node, then 
-    // try to find the other node in the other chunk and adjust the 
-    // starting search position for the next iteration.
-    //System.out.println("DEBUG: dump of chunk1 edges:");
-    //debugDumpEdges(chunk1);
-    //System.out.println("DEBUG: dump of chunk2 edges:");
-    //debugDumpEdges(chunk2);
-    for(int i=0; i<chunk1.length/2; i++) {
-      int otherNodeId = chunk1[2*i];
-      index = binarySearchInEntries(chunk2, otherNodeId, startIndex);
-      //System.out.println("DEBUG: checked otherNode="+otherNodeId+" with start="+startIndex+", index="+index);
-      // if we found something, we should add the edgeData of both edges to the sum
-      // in any case, set the startIndex to point to the node which is greater
-      // than the one we just found (because we go through our own nodes in 
-      // increasing order)
-      if(index >= 0) { // found it
-        //System.out.println("DEBUG: found at index="+index+", this count="+chunk1[2*i+1]+" other="+chunk2[index+1]);
-        sumData += chunk1[2*i+1] + chunk2[index+1];
-        startIndex = index+2;
-      } else { // did not find the other Node        
-        startIndex = (-index)-2;
-        if(startIndex > sizeToSearch) {
-          break;
-        }
-      }
-    }
-    return sumData;
+    return pairQuery(PairQuery.SHARED_PARENT, nodeId1, nodeId2);
+  }
+  
+  private int computeSumEdgeDataSharedParent(int nodeId1, int nodeId2) {
+    EdgeCursor[] cursors = queryCursors.get();
+    if(!getInEdges(nodeId1, cursors[0])) { return 0; }
+    if(!getInEdges(nodeId2, cursors[1])) { return 0; }
+    return sumShared(cursors[0], cursors[1]);
   }
   
   public int getSumEdgeDataSharedChild(int nodeId1, int nodeId2) {
-    // = check which edge list is smaller, use that one
-    // = for each edge in the smaller list, try to find the edge data 
-    //   in the other list. The search routine returns the index if found
-    //   or the smallest index for a node id larger than the wanted (negated)
-    //   if not found. We use that index as the starting point for the search
-    //   in the next iteration.
-    int chunkIndex1 = id2OutEdgeChunk.get(nodeId1);
-    if(chunkIndex1<0) { return 0; }
-    int chunkIndex2 = id2OutEdgeChunk.get(nodeId2);
-    if(chunkIndex2<0) { return 0; }
-    int size1 = outEdges.getSize(chunkIndex1);
-    int size2 = outEdges.getSize(chunkIndex2);
-    int sumData = 0;
-    int[] chunk1, chunk2;
-    int index, startIndex;
-    if(size1 < size2) {
-      chunk1 = outEdges.getData(chunkIndex1);
-      chunk2 = outEdges.getData(chunkIndex2);
+    return pairQuery(PairQuery.SHARED_CHILD, nodeId1, nodeId2);
+  }
+  
+  private int computeSumEdgeDataSharedChild(int nodeId1, int nodeId2) {
+    EdgeCursor[] cursors = queryCursors.get();
+    if(!getOutEdges(nodeId1, cursors[0])) { return 0; }
+    if(!getOutEdges(nodeId2, cursors[1])) { return 0; }
+    return sumShared(cursors[0], cursors[1]);
+  }
+  
+  public int getSumEdgeDataSequence(int nodeId1, int nodeId2) {
+    return pairQuery(PairQuery.SEQUENCE, nodeId1, nodeId2);
+  }
+  
+  private int computeSumEdgeDataSequence(int nodeId1, int nodeId2) {
+    EdgeCursor[] cursors = queryCursors.get();
+    if(!getOutEdges(nodeId1, cursors[0])) { return 0; }
+    if(!getInEdges(nodeId2, cursors[1])) { return 0; }
+    return sumShared(cursors[0], cursors[1]);
+  }
+  
+  // the search and intersection used by the queries, which go through the
+  // metrics if they are enabled
+  private int findEdge(EdgeCursor cursor, int nodeId) {
+    GraphMetrics m = metrics;
+    return m == null ? cursor.find(nodeId, 0) : m.find(cursor, nodeId);
+  }
+  
+  private int sumShared(EdgeCursor edges1, EdgeCursor edges2) {
+    GraphMetrics m = metrics;
+    if(m == null) {
+      return EdgeIntersection.sumEdgeData(edges1, edges2, intersectionStrategy);
+    }
+    return m.sumEdgeData(edges1, edges2, intersectionStrategy);
+  }
+  
+  // all pair queries go through here: time them if the metrics are 
+  // enabled, then use the cache if there is one
+  private int pairQuery(PairQuery query, int nodeId1, int nodeId2) {
+    GraphMetrics m = metrics;
+    if(m == null) {
+      return cachedQuery(query, nodeId1, nodeId2);
+    }
+    long start = System.nanoTime();
+    int result = cachedQuery(query, nodeId1, nodeId2);
+    m.recordQuery(query, System.nanoTime()-start);
+    return result;
+  }
+  
+  private int cachedQuery(PairQuery query, int nodeId1, int nodeId2) {
+    PairQueryCache cache = queryCache;
+    if(cache == null) {
+      return computeQuery(query, nodeId1, nodeId2);
+    }
+    long key = PairQueryCache.key(query, nodeId1, nodeId2);
+    long cached = cache.get(key);
+    if(cached != PairQueryCache.MISSING) {
+      return (int)cached;
+    }
+    int result = computeQuery(query, nodeId1, nodeId2);
+    cache.put(key, result);
+    return result;
+  }
+  
+  private int computeQuery(PairQuery query, int nodeId1, int nodeId2) {
+    switch(query) {
+      case FIRST_EDGE_DATA: return computeFirstEdgeData(nodeId1, nodeId2);
+      case SHARED_PARENT: return computeSumEdgeDataSharedParent(nodeId1, nodeId2);
+      case SHARED_CHILD: return computeSumEdgeDataSharedChild(nodeId1, nodeId2);
+      case SEQUENCE: return computeSumEdgeDataSequence(nodeId1, nodeId2);
+      default: throw new RuntimeException("Unknown query: "+query);
+    }
+  }
+  
+  /**
+   * Enable a cache for the results of the pair queries (also when used 
+   * by the batch queries) for at most maxEntries results, or disable the 
+   * cache if maxEntries is 0. The cache is disabled by default and gets 
+   * cleared whenever edges are added or changed. 
+   * @param maxEntries 
+   */
+  public synchronized void setQueryCacheSize(int maxEntries) {
+    if(maxEntries < 0) {
+      throw new RuntimeException("Cache size must be >= 0 but is "+maxEntries);
+    }
+    queryCache = maxEntries == 0 ? null : new PairQueryCache(maxEntries);
+  }
+  
+  /**
+   * The query cache, which has the counters for hits and misses, or null
+   * if there is no cache.
+   * @return 
+   */
+  public PairQueryCache getQueryCache() {
+    return queryCache;
+  }
+  
+  /**
+   * Start collecting metrics for the pair queries (also when used by the 
+   * batch queries), see GraphMetrics, and return them. If metrics are 
+   * already enabled, the existing ones are returned.
+   * @return 
+   */
+  public synchronized GraphMetrics enableMetrics() {
+    if(metrics == null) {
+      metrics = new GraphMetrics();
+    }
+    return metrics;
+  }
+  
+  /**
+   * Stop collecting metrics. This also removes a JMX registration of the 
+   * metrics.
+   */
+  public synchronized void disableMetrics() {
+    if(metrics != null) {
+      metrics.unregisterMBean();
+      metrics = null;
+    }
+  }
+  
+  /**
+   * The metrics or null if they are not enabled.
+   * @return 
+   */
+  public GraphMetrics getMetrics() {
+    return metrics;
+  }
+  
+  /**
+   * The bytes of heap memory used by the node dictionary, the edge lists
+   * and the ranking indices, see MemoryFootprint.
+   * @return 
+   */
+  public synchronized MemoryFootprint getMemoryFootprint() {
+    MemoryFootprint footprint = new MemoryFootprint();
+    nodes.addFootprint("nodes", footprint);
+    outEdges.addFootprint("outEdges", footprint);
+    inEdges.addFootprint("inEdges", footprint);
+    if(outRanking != null) {
+      outRanking.addFootprint("outRanking", footprint);
+      inRanking.addFootprint("inRanking", footprint);
+    }
+    return footprint;
+  }
+  
+  /**
+   * Push the current metrics (if enabled), the hits and misses of the query
+   * cache (if there is one, as "cache.hits", "cache.misses" and 
+   * "cache.evictions") and the memory footprint to the sink. 
+   * @param sink 
+   */
+  public void reportMetrics(MetricsSink sink) {
+    GraphMetrics m = metrics;
+    if(m != null) {
+      m.report(sink);
+    }
+    PairQueryCache cache = queryCache;
+    if(cache != null) {
+      sink.counter("cache.hits", cache.getHits());
+      sink.counter("cache.misses", cache.getMisses());
+      sink.counter("cache.evictions", cache.getEvictions());
+    }
+    getMemoryFootprint().report(sink);
+  }
+  
+  // TOP K QUERIES: the k edges of a node with the largest edge data. 
+  // These are fast if the ranking index has been built with 
+  // buildRankingIndex, otherwise all the edges of the node get sorted. 
+  // The index gets dropped when edges are added or changed, but not when 
+  // the store is frozen.
+  
+  /**
+   * Build the ranking indices for the out and in edges, which need 4 bytes
+   * per edge. 
+   */
+  public synchronized void buildRankingIndex() {
+    if(importer != null) {
+      throw new RuntimeException("Cannot build the ranking index during an import");
+    }
+    outRanking = new RankingIndex(outEdges, segmentShift);
+    inRanking = new RankingIndex(inEdges, segmentShift);
+  }
+  
+  public synchronized boolean hasRankingIndex() {
+    return outRanking != null;
+  }
+  
+  // drop everything that depends on the edges
+  private synchronized void edgesChanged() {
+    outRanking = null;
+    inRanking = null;
+    PairQueryCache cache = queryCache;
+    if(cache != null) {
+      cache.clear();
+    }
+  }
+  
+  /**
+   * Return the ids of the at most k nodes which have the out edges with the
+   * largest edge data, in decreasing order of the edge data. 
+   * @param nodeId
+   * @param k
+   * @return 
+   */
+  public int[] topKOutNeighbors(int nodeId, int k) {
+    checkK(k);
+    int[] nodeIds = new int[Math.min(k, getOutDegree(nodeId))];
+    topKOutNeighbors(nodeId, k, nodeIds, new int[nodeIds.length]);
+    return nodeIds;
+  }
+  
+  /**
+   * Return the ids of the at most k nodes which have the in edges with the
+   * largest edge data, in decreasing order of the edge data. 
+   * @param nodeId
+   * @param k
+   * @return 
+   */
+  public int[] topKInNeighbors(int nodeId, int k) {
+    checkK(k);
+    int[] nodeIds = new int[Math.min(k, getInDegree(nodeId))];
+    topKInNeighbors(nodeId, k, nodeIds, new int[nodeIds.length]);
+    return nodeIds;
+  }
+  
+  /**
+   * Store the ids and edge data of the at most k out edges with the 
+   * largest edge data in nodeIds and edgeData, which must have at least 
+   * min(k, out degree) elements, and return the number of edges. 
+   * @param nodeId
+   * @param k
+   * @param nodeIds
+   * @param edgeData
+   * @return 
+   */
+  public int topKOutNeighbors(int nodeId, int k, int[] nodeIds, int[] edgeData) {
+    checkK(k);
+    EdgeCursor cursor = queryCursors.get()[0];
+    getOutEdges(nodeId, cursor);
+    RankingIndex ranking = outRanking;
+    if(ranking == null) {
+      return RankingIndex.topKWithoutIndex(cursor, k, nodeIds, edgeData);
     } else {
-      chunk1 = outEdges.getData(chunkIndex2);
-      chunk2 = outEdges.getData(chunkIndex1);
-    }
-    startIndex = 0;
-    // go through the edges in chunk1 and get the other node, then 
-    // try to find the other node in the other chunk and adjust the 
-    // starting search position for the next iteration.
-    for(int i=0; i<chunk1.length/2; i++) {
-      int otherNodeId = chunk1[2*i];
-      index = binarySearchInEntries(chunk2, otherNodeId, startIndex);
-      // if we found something, we should add the edgeData of both edges to the sum
-      // in any case, set the startIndex to point to the node which is greater
-      // than the one we just found (because we go through our own nodes in 
-      // increasing order)
-      if(index >= 0) { // found it
-        sumData += chunk1[2*i+1] + chunk2[index+1];
-        startIndex = index+2;
-      } else { // did not find the other Node
-        startIndex = (-index)-2;
-      }
+      return ranking.topK(nodeId, cursor, k, nodeIds, edgeData);
     }
-    return sumData;
   }
   
-  public int getSumEdgeDataSequence(int nodeId1, int nodeId2) {
-    // = check which edge list is smaller, use that one
-    // = for each edge in the smaller list, try to find the edge data 
-    //   in the other list. The search routine returns the index if found
-    //   or the smallest index for a node id larger than the wanted (negated)
-    //   if not found. We use that index as the starting point for the search
-    //   in the next iteration.
-    int chunkIndex1 = id2OutEdgeChunk.get(nodeId1);
-    if(chunkIndex1<0) { return 0; }
-    int chunkIndex2 = id2InEdgeChunk.get(nodeId2);
-    if(chunkIndex2<0) { return 0; }
-    int size1 = outEdges.getSize(chunkIndex1);
-    int size2 = inEdges.getSize(chunkIndex2);
-    int sumData = 0;
-    int[] chunk1, chunk2;
-    int index, startIndex;
-    if(size1 < size2) {
-      chunk1 = outEdges.getData(chunkIndex1);
-      chunk2 = inEdges.getData(chunkIndex2);
+  /**
+   * The same as topKOutNeighbors for the in edges.
+   * @param nodeId
+   * @param k
+   * @param nodeIds
+   * @param edgeData
+   * @return 
+   */
+  public int topKInNeighbors(int nodeId, int k, int[] nodeIds, int[] edgeData) {
+    checkK(k);
+    EdgeCursor cursor = queryCursors.get()[0];
+    getInEdges(nodeId, cursor);
+    RankingIndex ranking = inRanking;
+    if(ranking == null) {
+      return RankingIndex.topKWithoutIndex(cursor, k, nodeIds, edgeData);
     } else {
-      chunk1 = inEdges.getData(chunkIndex2);
-      chunk2 = outEdges.getData(chunkIndex1);
-    }
-    startIndex = 0;
-    // go through the edges in chunk1 and get the other node, then 
-    // try to find the other node in the other chunk and adjust the 
-    // starting search position for the next iteration.
-    for(int i=0; i<chunk1.length/2; i++) {
-      int otherNodeId = chunk1[2*i];
-      index = binarySearchInEntries(chunk2, otherNodeId, startIndex);
-      // if we found something, we should add the edgeData of both edges to the sum
-      // in any case, set the startIndex to point to the node which is greater
-      // than the one we just found (because we go through our own nodes in 
-      // increasing order)
-      if(index >= 0) { // found it
-        sumData += chunk1[2*i+1] + chunk2[index+1];
-        startIndex = index+2;
-      } else { // did not find the other Node
-        startIndex = (-index)-2;
+      return ranking.topK(nodeId, cursor, k, nodeIds, edgeData);
+    }
+  }
+  
+  private static void checkK(int k) {
+    if(k < 0) {
+      throw new RuntimeException("k must be >= 0 but is "+k);
+    }
+  }
+  
+  /**
+   * Run the given kind of query for a pair of nodes.
+   * @param query
+   * @param nodeId1
+   * @param nodeId2
+   * @return 
+   */
+  public int query(PairQuery query, int nodeId1, int nodeId2) {
+    switch(query) {
+      case FIRST_EDGE_DATA: return getFirstEdgeData(nodeId1, nodeId2);
+      case SHARED_PARENT: return getSumEdgeDataSharedParent(nodeId1, nodeId2);
+      case SHARED_CHILD: return getSumEdgeDataSharedChild(nodeId1, nodeId2);
+      case SEQUENCE: return getSumEdgeDataSequence(nodeId1, nodeId2);
+      default: throw new RuntimeException("Unknown query: "+query);
+    }
+  }
+  
+  // BATCH QUERIES: each of these runs the query for all pairs 
+  // (nodeIds1[i], nodeIds2[i]) and stores the result in result[i]. Large 
+  // batches are reordered by node id for locality and run in parallel,
+  // see setBatchParallelism.
+  
+  public void getFirstEdgeData(int[] nodeIds1, int[] nodeIds2, int[] result) {
+    BatchQueries.run(this, PairQuery.FIRST_EDGE_DATA, nodeIds1, nodeIds2, result, getBatchPool());
+  }
+  public void getSumEdgeDataSharedParent(int[] nodeIds1, int[] nodeIds2, int[] result) {
+    BatchQueries.run(this, PairQuery.SHARED_PARENT, nodeIds1, nodeIds2, result, getBatchPool());
+  }
+  public void getSumEdgeDataSharedChild(int[] nodeIds1, int[] nodeIds2, int[] result) {
+    BatchQueries.run(this, PairQuery.SHARED_CHILD, nodeIds1, nodeIds2, result, getBatchPool());
+  }
+  public void getSumEdgeDataSequence(int[] nodeIds1, int[] nodeIds2, int[] result) {
+    BatchQueries.run(this, PairQuery.SEQUENCE, nodeIds1, nodeIds2, result, getBatchPool());
+  }
+  
+  /**
+   * For every node, find the k other nodes with the largest shared parent
+   * sum (query SHARED_PARENT) or shared child sum (query SHARED_CHILD) and
+   * write them to the file, see SharedNeighborsJob for the format. This 
+   * runs in parallel like the batch queries, see setBatchParallelism, and 
+   * each thread needs about 9 bytes per node for its scores.
+   * @param query
+   * @param k
+   * @param file
+   * @throws IOException 
+   */
+  public void computeTopKSharedNeighbors(PairQuery query, int k, File file) throws IOException {
+    // check before the file gets created or truncated
+    SharedNeighborsJob.checkArguments(query, k);
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      computeTopKSharedNeighbors(query, k, out);
+    } finally {
+      out.close();
+    }
+  }
+  
+  /**
+   * The same as computeTopKSharedNeighbors for a file, but writes to the
+   * writer, which is flushed but not closed. 
+   * @param query
+   * @param k
+   * @param out
+   * @throws IOException 
+   */
+  public void computeTopKSharedNeighbors(PairQuery query, int k, Writer out) throws IOException {
+    SharedNeighborsJob.run(this, query, k, out, getBatchPool());
+  }
+  
+  /**
+   * Set the number of threads used for the batch queries: 0 (the default) 
+   * uses one thread per available processor, 1 runs the batch queries 
+   * in the calling thread only.
+   * Batch queries only read the store, so they must not run while the 
+   * store is modified.
+   * <p>
+   * A store and all the snapshots it publishes use the same pool, so this 
+   * sets the parallelism for all of them and must not be called while 
+   * any of them runs a batch query.
+   * @param parallelism 
+   */
+  public void setBatchParallelism(int parallelism) {
+    batchPool.setParallelism(parallelism);
+  }
+  
+  // package-private for the tests
+  ForkJoinPool getBatchPool() {
+    return batchPool.get();
+  }
+  
+  // The pool is created when first needed and has its own lock, so the 
+  // batch queries of a snapshot do not wait for the store which published
+  // it, e.g. while that compacts its edges.
+  private static class BatchPool implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private int parallelism = 0;
+    private transient ForkJoinPool pool;
+    
+    synchronized void setParallelism(int parallelism) {
+      if(parallelism < 0) {
+        throw new RuntimeException("Parallelism must be >= 0 but is "+parallelism);
+      }
+      this.parallelism = parallelism;
+      if(pool != null) {
+        pool.shutdown();
+        pool = null;
       }
     }
-    return sumData;
+    
+    synchronized ForkJoinPool get() {
+      if(parallelism == 1) {
+        return null;
+      }
+      if(pool == null) {
+        pool = parallelism == 0 ? new ForkJoinPool() : new ForkJoinPool(parallelism);
+      }
+      return pool;
+    }
+  }
+  
+  /**
+   * Sum the edge data of both edges for all the node ids which occur in 
+   * both edge lists, using the ADAPTIVE intersection strategy. 
+   * @param edges1
+   * @param edges2
+   * @return 
+   */
+  public static int sumEdgeDataShared(EdgeCursor edges1, EdgeCursor edges2) {
+    return EdgeIntersection.sumEdgeData(edges1, edges2, IntersectionStrategy.ADAPTIVE);
+  }
+  
+  /**
+   * Set how the shared nodes of two edge lists are found for the sum queries,
+   * the default is ADAPTIVE. 
+   * @param strategy 
+   */
+  public void setIntersectionStrategy(IntersectionStrategy strategy) {
+    if(strategy == null) {
+      throw new RuntimeException("Intersection strategy must not be null");
+    }
+    intersectionStrategy = strategy;
+  }
+  
+  public IntersectionStrategy getIntersectionStrategy() {
+    return intersectionStrategy;
   }
   
   
@@ -359,24 +1219,41 @@ public class GraphStore implements Serializable {
   }
   public void debugDumpOutEdges(String node) {
     int nodeId = getNodeId(node);
-    int chunkIndex = id2OutEdgeChunk.getInt(nodeId);
-    if(chunkIndex < 0) {
+    int[] chunk = debugGetOutChunk(nodeId);
+    if(chunk == null) {
       System.out.println("No out Edges for "+node);
     } else {
-      int[] chunk = outEdges.getData(chunkIndex);
       debugDumpEdges(chunk);
     }
   }
   public void debugDumpInEdges(String node) {
     int nodeId = getNodeId(node);
-    int chunkIndex = id2InEdgeChunk.getInt(nodeId);
-    if(chunkIndex < 0) {
+    int[] chunk = debugGetInChunk(nodeId);
+    if(chunk == null) {
       System.out.println("No in edges for "+node);
     } else {
-      int[] chunk = inEdges.getData(chunkIndex);
       debugDumpEdges(chunk);
     }
   }
+  // get the chunk of edges for the node or null if there are no edges
+  private int[] debugGetOutChunk(int nodeId) {
+    return debugGetChunk(outEdges, nodeId);
+  }
+  private int[] debugGetInChunk(int nodeId) {
+    return debugGetChunk(inEdges, nodeId);
+  }
+  private int[] debugGetChunk(EdgeLists edges, int nodeId) {
+    EdgeCursor cursor = edges.newCursor();
+    if(!edges.position(nodeId, cursor)) {
+      return null;
+    }
+    int[] chunk = new int[cursor.size()*2];
+    for(int i=0; i<cursor.size(); i++) {
+      chunk[2*i] = cursor.nodeId(i);
+      chunk[2*i+1] = cursor.edgeData(i);
+    }
+    return chunk;
+  }
   
   // for debugging mainly
   public void debugPrintEdges(String uri) {
@@ -387,12 +1264,10 @@ public class GraphStore implements Serializable {
       System.out.println("Finding edges for node "+id);
     }
     // get the chunk for the in edges for uri
-    int inChunk = id2InEdgeChunk.get(id);
-    if(inChunk == -1) {
+    int[] chunk = debugGetInChunk(id);
+    if(chunk == null) {
       System.out.println("No in edges for "+uri);
     } else {
-      System.out.println("Chunk index for in edges "+inChunk);
-      int[] chunk = inEdges.getData(inChunk);
       int size = chunk.length/2;
       System.out.println("Got in edges "+size);
       for(int i=0; i<size; i++) {
@@ -401,12 +1276,10 @@ public class GraphStore implements Serializable {
         System.out.println("In Edge "+i+": nodeid="+nodeId+", data="+relData);
       }
     }
-    int outChunk = id2OutEdgeChunk.get(id);
-    if(outChunk == -1) {
+    chunk = debugGetOutChunk(id);
+    if(chunk == null) {
       System.out.println("No out edges for "+uri);
     } else {
-      System.out.println("Chunk index for out edges "+outChunk);
-      int[] chunk = outEdges.getData(outChunk);
       int size = chunk.length/2;
       System.out.println("Got out edges "+size);
       for(int i=0; i<size; i++) {
@@ -418,35 +1291,46 @@ public class GraphStore implements Serializable {
   }
   
   public int debugGetInEdgesSize() {
-    return inEdges.size();
+    return debugGetEdgesSize(inEdges);
   }
   public int debugGetOutEdgesSize() {
-    return outEdges.size();
+    return debugGetEdgesSize(outEdges);
+  }
+  // the number of ints used for the edges
+  private int debugGetEdgesSize(EdgeLists edges) {
+    if(edges instanceof ChunkedEdgeLists) {
+      return ((ChunkedEdgeLists)edges).getStore().size();
+    }
+    return (int)edges.getNumberOfEdges()*2;
   }
   public int debugGetInId2ChunkSize() {
-    return id2InEdgeChunk.size();
+    return inEdges.getNumberOfNodes();
   }
   public int debugGetOutId2ChunkSize() {
-    return id2OutEdgeChunk.size();
+    return outEdges.getNumberOfNodes();
+  }
+  
+  // package-private access to the parts of the store
+  NodeDictionary getNodeDictionary() {
+    return nodes;
+  }
+  EdgeLists getOutEdgeLists() {
+    return outEdges;
+  }
+  EdgeLists getInEdgeLists() {
+    return inEdges;
   }
   
   
   public static void main(String[] args) {
     System.out.println("Running main ...");
     GraphStore gstore = new GraphStore();
-    NodeNameStore nstore = new NodeNameStore();
     gstore.addNode("uri1");
-    nstore.addNode("uri1");
     gstore.addNode("uri2");
-    nstore.addNode("uri2");
     gstore.addNode("uri3");
-    nstore.addNode("uri3");
     gstore.addNode("uri4");
-    nstore.addNode("uri4");
     gstore.addNode("uri5");
-    nstore.addNode("uri5");
     gstore.addNode("uri6");
-    nstore.addNode("uri6");
     
     ArrayList<Edge> edges = new ArrayList<Edge>();
     
@@ -478,8 +1362,8 @@ public class GraphStore implements Serializable {
     gstore.debugPrintEdges("uri4");
     System.out.println("InEdgesSize="+gstore.debugGetInEdgesSize());
     System.out.println("OutEdgesSize="+gstore.debugGetOutEdgesSize());
-    System.out.println("Name for id 1: "+nstore.getNodeName(1));
-    System.out.println("Name for id 2: "+nstore.getNodeName(2));
+    System.out.println("Name for id 1: "+gstore.getNodeName(1));
+    System.out.println("Name for id 2: "+gstore.getNodeName(2));
     System.out.println("Edge between uri1 and uri2: "+gstore.getFirstEdgeData(gstore.getNodeId("uri1"), gstore.getNodeId("uri2")));
     System.out.println("Edge between uri1 and uri3: "+gstore.getFirstEdgeData(gstore.getNodeId("uri1"), gstore.getNodeId("uri3")));
     System.out.println("Edge between uri1 and uri4: "+gstore.getFirstEdgeData(gstore.getNodeId("uri1"), gstore.getNodeId("uri4")));
@@ -0,0 +1,264 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.MappedArray;
+import com.jpetrak.miscfastcompact.store.BigStoreOfBytes;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary file format for a GraphStore which can be memory mapped, so that
+ * opening even a very large graph takes only milliseconds and several
+ * processes on the same machine can share the memory for the graph.
+ * <p>
+ * All numbers are little endian. The file starts with a header of 64 bytes:
+ * <ul>
+ * <li>int: magic number 0x46545347 ("GSTF" when read as bytes)
+ * <li>int: format version, currently 2
+ * <li>int: number of nodes n
+ * <li>int: number of slots in the node dictionary hash table
+ * <li>long: number of bytes of all node names
+ * <li>long: number of out edges
+ * <li>long: number of in edges
+ * <li>24 bytes reserved, all 0
+ * </ul>
+ * This is followed by these sections, each one padded with zeros to a
+ * multiple of 8 bytes:
+ * <ul>
+ * <li>the UTF-8 bytes of all node names, one after the other in id order
+ * <li>long[n]: index of the first name byte for each node id
+ * <li>int[n]: hash code of the name for each node id
+ * <li>int[slots]: dictionary hash table, node id+1 or 0 for an empty slot
+ * <li>long[n+1], int[out edges], int[out edges]: offsets, node ids and
+ * edge data of the out edge lists in CSR layout (see CsrEdges)
+ * <li>long[n+1], int[in edges], int[in edges]: the same for the in edge lists
+ * </ul>
+ *
+ * @author Johann Petrak
+ */
+public class GraphStoreFile {
+
+  public static final int MAGIC = 0x46545347;
+  public static final int VERSION = 2;
+  private static final int HEADER_SIZE = 64;
+
+  private GraphStoreFile() {}
+
+  /**
+   * Write the graph store to the file. The store can be in any state except
+   * during an import.
+   * @param gstore
+   * @param file
+   * @throws IOException
+   */
+  public static void write(GraphStore gstore, File file) throws IOException {
+    NodeDictionary nodes = gstore.getNodeDictionary();
+    if(nodes instanceof MappedNodeDictionary) {
+      throw new RuntimeException("Cannot write a store which is mapped from a file");
+    }
+    BigStoreOfBytes names = nodes.getNamesStore();
+    LongArrayList offsets = nodes.getOffsets();
+    IntArrayList hashes = nodes.getHashes();
+    int[] table = nodes.getTable();
+    EdgeLists outEdges = gstore.getOutEdgeLists();
+    EdgeLists inEdges = gstore.getInEdgeLists();
+    int n = nodes.size();
+    // the names are written without the lengths and the gaps at the ends 
+    // of the segments of the store
+    long namesLength = 0;
+    for(int i=0; i<n; i++) {
+      namesLength += names.getSize(offsets.getLong(i));
+    }
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      Writer out = new Writer(fos.getChannel());
+      out.putInt(MAGIC);
+      out.putInt(VERSION);
+      out.putInt(n);
+      out.putInt(table.length);
+      out.putLong(namesLength);
+      out.putLong(outEdges.getNumberOfEdges());
+      out.putLong(inEdges.getNumberOfEdges());
+      out.pad(HEADER_SIZE);
+      for(int i=0; i<n; i++) {
+        long index = offsets.getLong(i);
+        byte[] segment = names.getSegment(index);
+        int offset = names.getDataOffset(index);
+        int length = names.getSize(index);
+        for(int j=0; j<length; j++) {
+          out.putByte(segment[offset+j]);
+        }
+      }
+      out.pad(8);
+      long offset = 0;
+      for(int i=0; i<n; i++) {
+        out.putLong(offset);
+        offset += names.getSize(offsets.getLong(i));
+      }
+      out.pad(8);
+      for(int i=0; i<n; i++) {
+        out.putInt(hashes.getInt(i));
+      }
+      out.pad(8);
+      for(int i=0; i<table.length; i++) {
+        out.putInt(table[i]);
+      }
+      out.pad(8);
+      writeEdgeLists(out, outEdges, n);
+      writeEdgeLists(out, inEdges, n);
+      out.flush();
+    } finally {
+      fos.close();
+    }
+  }
+
+  private static void writeEdgeLists(Writer out, EdgeLists edges, int n) throws IOException {
+    long offset = 0;
+    for(int i=0; i<n; i++) {
+      out.putLong(offset);
+      offset += edges.getDegree(i);
+    }
+    out.putLong(offset);
+    EdgeCursor cursor = edges.newCursor();
+    for(int i=0; i<n; i++) {
+      edges.position(i, cursor);
+      for(int j=0; j<cursor.size(); j++) {
+        out.putInt(cursor.nodeId(j));
+      }
+    }
+    out.pad(8);
+    for(int i=0; i<n; i++) {
+      edges.position(i, cursor);
+      for(int j=0; j<cursor.size(); j++) {
+        out.putInt(cursor.edgeData(j));
+      }
+    }
+    out.pad(8);
+  }
+
+  /**
+   * Open a graph store file by mapping it into memory. The returned store
+   * is frozen and gets all the node names and edges directly from the
+   * mapped file.
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  public static GraphStore open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if(channel.size() < HEADER_SIZE) {
+        throw new IOException("Not a graph store file, too short: "+file);
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+      header.order(ByteOrder.LITTLE_ENDIAN);
+      if(header.getInt(0) != MAGIC) {
+        throw new IOException("Not a graph store file: "+file);
+      }
+      int version = header.getInt(4);
+      if(version != VERSION) {
+        throw new IOException("Graph store file version "+version+" not supported: "+file);
+      }
+      int n = header.getInt(8);
+      int tableSize = header.getInt(12);
+      long namesLength = header.getLong(16);
+      long nrOutEdges = header.getLong(24);
+      long nrInEdges = header.getLong(32);
+      if(n < 0 || tableSize <= n || Integer.bitCount(tableSize) != 1) {
+        throw new IOException("Graph store file has an invalid number of nodes "+n+
+                " or hash table size "+tableSize+": "+file);
+      }
+      if(namesLength < 0 || nrOutEdges < 0 || nrInEdges < 0) {
+        throw new IOException("Graph store file has invalid section lengths: "+file);
+      }
+      // check that the file contains all sections before mapping any of 
+      // them, the first check also prevents overflows when computing the end
+      long fileSize = channel.size();
+      if(namesLength > fileSize || nrOutEdges > fileSize || nrInEdges > fileSize ||
+              HEADER_SIZE + padded(namesLength) + 8L*n + padded(4L*n) + padded(4L*tableSize) +
+              16L*(n+1) + 2*padded(4L*nrOutEdges) + 2*padded(4L*nrInEdges) > fileSize) {
+        throw new IOException("Graph store file is truncated: "+file);
+      }
+      long pos = HEADER_SIZE;
+      MappedArray names = new MappedArray(channel, pos, namesLength);
+      pos += padded(namesLength);
+      MappedArray offsets = new MappedArray(channel, pos, 8L*n);
+      pos += 8L*n;
+      MappedArray hashes = new MappedArray(channel, pos, 4L*n);
+      pos += padded(4L*n);
+      MappedArray table = new MappedArray(channel, pos, 4L*tableSize);
+      pos += padded(4L*tableSize);
+      MappedArray outOffsets = new MappedArray(channel, pos, 8L*(n+1));
+      pos += 8L*(n+1);
+      MappedArray outIds = new MappedArray(channel, pos, 4L*nrOutEdges);
+      pos += padded(4L*nrOutEdges);
+      MappedArray outData = new MappedArray(channel, pos, 4L*nrOutEdges);
+      pos += padded(4L*nrOutEdges);
+      MappedArray inOffsets = new MappedArray(channel, pos, 8L*(n+1));
+      pos += 8L*(n+1);
+      MappedArray inIds = new MappedArray(channel, pos, 4L*nrInEdges);
+      pos += padded(4L*nrInEdges);
+      MappedArray inData = new MappedArray(channel, pos, 4L*nrInEdges);
+      pos += padded(4L*nrInEdges);
+      NodeDictionary nodes = new MappedNodeDictionary(n, names, offsets, hashes, table, tableSize);
+      EdgeLists outEdges = new MappedCsrEdges(n, outOffsets, outIds, outData);
+      EdgeLists inEdges = new MappedCsrEdges(n, inOffsets, inIds, inData);
+      return new GraphStore(nodes, outEdges, inEdges);
+    } finally {
+      // the mappings stay valid after closing the file
+      raf.close();
+    }
+  }
+
+  private static long padded(long length) {
+    return (length + 7) & ~7L;
+  }
+
+  // Buffered little endian writing to a channel, which keeps track of the
+  // position for padding.
+  private static class Writer {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private long position = 0;
+    Writer(FileChannel channel) {
+      this.channel = channel;
+      buffer = ByteBuffer.allocate(1<<20);
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    void putByte(byte b) throws IOException {
+      if(buffer.remaining() < 1) { flush(); }
+      buffer.put(b);
+      position++;
+    }
+    void putInt(int i) throws IOException {
+      if(buffer.remaining() < 4) { flush(); }
+      buffer.putInt(i);
+      position += 4;
+    }
+    void putLong(long l) throws IOException {
+      if(buffer.remaining() < 8) { flush(); }
+      buffer.putLong(l);
+      position += 8;
+    }
+    // write zero bytes until the position is a multiple of alignment
+    void pad(int alignment) throws IOException {
+      while(position % alignment != 0) {
+        putByte((byte)0);
+      }
+    }
+    void flush() throws IOException {
+      buffer.flip();
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,244 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.util.Arrays;
+
+/**
+ * Breadth first traversals over the edges of a GraphStore: distances 
+ * from a node, the k-hop neighbourhood of a node and shortest distance or
+ * reachability between two nodes.
+ * <p>
+ * All work is done on primitive arrays of one element per node, which are 
+ * allocated once per GraphTraversal object and reused for all traversals:
+ * distances and queues for the forward and the backward direction plus 
+ * a bitset, about 16 bytes per node. Only the entries of the nodes visited by a 
+ * traversal get reset afterwards, so small traversals on a huge graph are 
+ * cheap. A GraphTraversal is not thread-safe, each thread needs its own.
+ * The store must not be modified while it is used.
+ * <p>
+ * The BFS is direction optimizing: as long as the frontier is small, the 
+ * edges of the frontier nodes are followed (push), but once the frontier 
+ * has more edges than a fraction of the edges not explored yet, each 
+ * unvisited node instead checks whether one of its edges in the other 
+ * direction leads to the frontier (pull), which is stored as a bitset. 
+ * This uses the fact that the store has both the out and the in edges.
+ * 
+ * @author Johann Petrak
+ */
+public class GraphTraversal {
+  
+  // switch to pull if frontier edges > unexplored edges / ALPHA,
+  // switch back to push if frontier nodes < nodes / BETA
+  static final int ALPHA = 14;
+  static final int BETA = 24;
+  
+  private final GraphStore gstore;
+  private final int nrNodes;
+  private final EdgeCursor cursor;
+  // distances from the source (forward) and to the target (backward), -1 
+  // for nodes not visited
+  private final int[] dist;
+  private final int[] distBack;
+  // the visited nodes in the order visited, each level is a range
+  private final int[] queue;
+  private final int[] queueBack;
+  // bitsets of the frontier for pulling
+  private final long[] frontier;
+  
+  public GraphTraversal(GraphStore gstore) {
+    this.gstore = gstore;
+    nrNodes = gstore.getNumberOfNodes();
+    cursor = gstore.newEdgeCursor();
+    dist = new int[nrNodes];
+    distBack = new int[nrNodes];
+    Arrays.fill(dist, -1);
+    Arrays.fill(distBack, -1);
+    queue = new int[nrNodes];
+    queueBack = new int[nrNodes];
+    frontier = new long[(nrNodes+63) >>> 6];
+  }
+  
+  /**
+   * Return the distance of every node from the source following edges 
+   * in the given direction, -1 for nodes which cannot be reached.
+   * @param source
+   * @param direction
+   * @return a new array with one element per node
+   */
+  public int[] bfsDistances(int source, Direction direction) {
+    int n = bfs(source, direction, Integer.MAX_VALUE);
+    int[] result = dist.clone();
+    reset(dist, queue, n);
+    return result;
+  }
+  
+  /**
+   * Return all the nodes which can be reached from the source with 1 to k
+   * edges in the given direction, ordered by increasing distance and 
+   * nodes with the same distance by increasing node id. The source itself 
+   * is not included.
+   * @param source
+   * @param k
+   * @param direction
+   * @return 
+   */
+  public int[] kHopNeighborhood(int source, int k, Direction direction) {
+    int n = bfs(source, direction, k);
+    int[] result = new int[n-1];
+    // the source is always the first node in the queue
+    System.arraycopy(queue, 1, result, 0, n-1);
+    // the queue has the levels in order of distance, but within a level 
+    // the order depends on whether the level was pushed or pulled, so sort 
+    // each level by node id to get an order which does not depend on that
+    int from = 0;
+    while(from < result.length) {
+      int to = from;
+      int d = dist[result[from]];
+      while(to < result.length && dist[result[to]] == d) {
+        to++;
+      }
+      Arrays.sort(result, from, to);
+      from = to;
+    }
+    reset(dist, queue, n);
+    return result;
+  }
+  
+  /**
+   * The length of the shortest path of out edges from source to target, 
+   * or -1 if there is none. This searches from both ends at the same time,
+   * along out edges from the source and along in edges from the target, 
+   * always expanding the side with the smaller frontier.
+   * @param source
+   * @param target
+   * @return 
+   */
+  public int distance(int source, int target) {
+    if(source == target) {
+      return 0;
+    }
+    dist[source] = 0;
+    queue[0] = source;
+    distBack[target] = 0;
+    queueBack[0] = target;
+    int fStart = 0, fEnd = 1, bStart = 0, bEnd = 1;
+    int best = -1;
+    while(best < 0 && fStart < fEnd && bStart < bEnd) {
+      boolean forward = (fEnd-fStart) <= (bEnd-bStart);
+      int[] d = forward ? dist : distBack;
+      int[] other = forward ? distBack : dist;
+      int[] q = forward ? queue : queueBack;
+      int start = forward ? fStart : bStart;
+      int end = forward ? fEnd : bEnd;
+      int next = end;
+      for(int i=start; i<end; i++) {
+        int u = q[i];
+        if(forward) {
+          gstore.getOutEdges(u, cursor);
+        } else {
+          gstore.getInEdges(u, cursor);
+        }
+        for(int j=0; j<cursor.size(); j++) {
+          int v = cursor.nodeId(j);
+          if(d[v] < 0) {
+            d[v] = d[u]+1;
+            q[next++] = v;
+          }
+          if(other[v] >= 0) {
+            int length = d[v] + other[v];
+            if(best < 0 || length < best) {
+              best = length;
+            }
+          }
+        }
+      }
+      if(forward) {
+        fStart = end; fEnd = next;
+      } else {
+        bStart = end; bEnd = next;
+      }
+    }
+    reset(dist, queue, fEnd);
+    reset(distBack, queueBack, bEnd);
+    return best;
+  }
+  
+  /**
+   * True if the target can be reached from the source following out edges.
+   * @param source
+   * @param target
+   * @return 
+   */
+  public boolean isReachable(int source, int target) {
+    return distance(source, target) >= 0;
+  }
+  
+  // direction optimizing BFS up to maxDepth, fills dist and queue and 
+  // returns the number of nodes visited
+  private int bfs(int source, Direction direction, int maxDepth) {
+    EdgeLists edges = direction == Direction.OUT ? gstore.getOutEdgeLists() : gstore.getInEdgeLists();
+    EdgeLists reverse = direction == Direction.OUT ? gstore.getInEdgeLists() : gstore.getOutEdgeLists();
+    long unexplored = edges.getNumberOfEdges();
+    dist[source] = 0;
+    queue[0] = source;
+    int start = 0;
+    int end = 1;
+    int depth = 0;
+    boolean pull = false;
+    while(start < end && depth < maxDepth) {
+      long frontierEdges = 0;
+      for(int i=start; i<end; i++) {
+        frontierEdges += edges.getDegree(queue[i]);
+      }
+      unexplored -= frontierEdges;
+      if(!pull && frontierEdges > unexplored/ALPHA) {
+        pull = true;
+      } else if(pull && (end-start) < nrNodes/BETA) {
+        pull = false;
+      }
+      int next = end;
+      if(pull) {
+        for(int i=start; i<end; i++) {
+          frontier[queue[i] >>> 6] |= 1L << queue[i];
+        }
+        for(int v=0; v<nrNodes; v++) {
+          if(dist[v] >= 0) {
+            continue;
+          }
+          reverse.position(v, cursor);
+          for(int j=0; j<cursor.size(); j++) {
+            int u = cursor.nodeId(j);
+            if((frontier[u >>> 6] & (1L << u)) != 0) {
+              dist[v] = depth+1;
+              queue[next++] = v;
+              break;
+            }
+          }
+        }
+        for(int i=start; i<end; i++) {
+          frontier[queue[i] >>> 6] = 0;
+        }
+      } else {
+        for(int i=start; i<end; i++) {
+          edges.position(queue[i], cursor);
+          for(int j=0; j<cursor.size(); j++) {
+            int v = cursor.nodeId(j);
+            if(dist[v] < 0) {
+              dist[v] = depth+1;
+              queue[next++] = v;
+            }
+          }
+        }
+      }
+      start = end;
+      end = next;
+      depth++;
+    }
+    return end;
+  }
+  
+  private static void reset(int[] d, int[] q, int n) {
+    for(int i=0; i<n; i++) {
+      d[q[i]] = -1;
+    }
+  }
+}
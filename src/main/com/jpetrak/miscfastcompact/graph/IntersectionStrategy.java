@@ -0,0 +1,20 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * How the node ids common to two sorted edge lists are found, see
+ * EdgeIntersection.
+ * 
+ * @author Johann Petrak
+ */
+public enum IntersectionStrategy {
+  /** walk through both lists in parallel: best for lists of similar size */
+  MERGE,
+  /** for each id of the smaller list, do an exponential search followed
+   * by a binary search in the rest of the larger list */
+  GALLOP,
+  /** for each id of the smaller list, do a binary search in the rest of 
+   * the larger list */
+  BINARY,
+  /** choose one of the above, based on the ratio of the list sizes */
+  ADAPTIVE
+}
@@ -0,0 +1,56 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.MappedArray;
+
+/**
+ * Read-only compressed sparse row edge lists which are served directly from
+ * the sections of a memory mapped graph file (see GraphStoreFile): the
+ * layout is the same as for CsrEdges, but the arrays are mapped regions 
+ * of the file and can be larger than MAXINT.
+ * Mapped edge lists cannot be serialized, use GraphStoreFile.write instead.
+ * 
+ * @author Johann Petrak
+ */
+public class MappedCsrEdges extends EdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  private final int nrNodes;
+  private final MappedArray offsets;
+  private final MappedArray nodeIds;
+  private final MappedArray edgeData;
+  
+  MappedCsrEdges(int nrNodes, MappedArray offsets, MappedArray nodeIds, MappedArray edgeData) {
+    this.nrNodes = nrNodes;
+    this.offsets = offsets;
+    this.nodeIds = nodeIds;
+    this.edgeData = edgeData;
+  }
+
+  @Override
+  public EdgeCursor newCursor() {
+    return new MappedEdgeCursor();
+  }
+
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    long from = offsets.getLong(nodeId);
+    int size = (int)(offsets.getLong(nodeId+1)-from);
+    ((MappedEdgeCursor)cursor).set(nodeIds, edgeData, from, size);
+    return size > 0;
+  }
+
+  @Override
+  public int getDegree(int nodeId) {
+    return (int)(offsets.getLong(nodeId+1)-offsets.getLong(nodeId));
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return nrNodes;
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return offsets.getLong(nrNodes);
+  }
+}
@@ -0,0 +1,45 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.MappedArray;
+
+/**
+ * An edge cursor that views a range of the node id and edge data sections
+ * of a memory mapped graph file.
+ * 
+ * @author Johann Petrak
+ */
+public final class MappedEdgeCursor extends EdgeCursor {
+  private MappedArray nodeIds;
+  private MappedArray edgeData;
+  private long base;
+  private int size = 0;
+  
+  void set(MappedArray nodeIds, MappedArray edgeData, long base, int size) {
+    this.nodeIds = nodeIds;
+    this.edgeData = edgeData;
+    this.base = base;
+    this.size = size;
+  }
+  
+  @Override
+  public void clear() {
+    nodeIds = null;
+    edgeData = null;
+    size = 0;
+  }
+  
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int nodeId(int pos) {
+    return nodeIds.getInt(base+pos);
+  }
+
+  @Override
+  public int edgeData(int pos) {
+    return edgeData.getInt(base+pos);
+  }
+}
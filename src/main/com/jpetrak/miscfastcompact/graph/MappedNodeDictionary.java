@@ -0,0 +1,107 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.MappedArray;
+
+/**
+ * Read-only node dictionary which is served directly from the sections of 
+ * a memory mapped graph file (see GraphStoreFile). The sections contain
+ * the same hashes and hash table as a NodeDictionary and the name bytes 
+ * with their offsets, so lookups work exactly the same way.
+ * 
+ * @author Johann Petrak
+ */
+public class MappedNodeDictionary extends NodeDictionary {
+  private static final long serialVersionUID = 1L;
+  
+  private final int size;
+  private final MappedArray names;
+  private final MappedArray offsets;
+  private final MappedArray hashes;
+  private final MappedArray table;
+  private final int mask;
+  
+  MappedNodeDictionary(int size, MappedArray names, MappedArray offsets, 
+          MappedArray hashes, MappedArray table, int tableSize) {
+    super(0);
+    this.size = size;
+    this.names = names;
+    this.offsets = offsets;
+    this.hashes = hashes;
+    this.table = table;
+    this.mask = tableSize-1;
+  }
+  
+  @Override
+  public int size() {
+    return size;
+  }
+  
+  @Override
+  public int add(String name) {
+    int id = getId(name);
+    if(id < 0) {
+      throw new RuntimeException("Cannot add to a mapped dictionary");
+    }
+    return id;
+  }
+  
+  @Override
+  public int getId(String name) {
+    byte[] bytes = isAscii(name) ? null : name.getBytes(UTF8);
+    int hash = (bytes == null) ? hash(name) : hash(bytes);
+    int slot = hash & mask;
+    int entry;
+    while((entry = table.getInt(slot)) != 0) {
+      if(isEqual(entry-1, hash, name, bytes)) {
+        return entry-1;
+      }
+      slot = (slot+1) & mask;
+    }
+    return -1;
+  }
+  
+  @Override
+  public String getName(int id) {
+    byte[] bytes = new byte[getLength(id)];
+    names.getBytes(offsets.getLong(id), bytes, 0, bytes.length);
+    return new String(bytes, UTF8);
+  }
+  
+  // all the data is in the mapped file
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+  }
+  
+  private int getLength(int id) {
+    long end = (id+1 < size) ? offsets.getLong(id+1) : names.size();
+    return (int)(end - offsets.getLong(id));
+  }
+  
+  private boolean isEqual(int id, int hash, String name, byte[] bytes) {
+    if(hashes.getInt(id) != hash) {
+      return false;
+    }
+    int length = getLength(id);
+    long offset = offsets.getLong(id);
+    if(bytes == null) {
+      if(length != name.length()) {
+        return false;
+      }
+      for(int i=0; i<length; i++) {
+        if(names.getByte(offset+i) != (byte)name.charAt(i)) {
+          return false;
+        }
+      }
+    } else {
+      if(length != bytes.length) {
+        return false;
+      }
+      for(int i=0; i<length; i++) {
+        if(names.getByte(offset+i) != bytes[i]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
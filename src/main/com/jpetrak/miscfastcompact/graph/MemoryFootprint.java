@@ -0,0 +1,78 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The number of bytes of heap memory used by the parts of a GraphStore, 
+ * see GraphStore.getMemoryFootprint. The parts have dot separated names
+ * like "outEdges.store" or "nodes.table". The numbers are for the arrays
+ * which hold the data, including capacity not used yet, and do not 
+ * include the few small objects around them. Data mapped from a file 
+ * is not counted.
+ * 
+ * @author Johann Petrak
+ */
+public class MemoryFootprint {
+  
+  private final Map<String, Long> parts = new LinkedHashMap<String, Long>();
+  
+  /**
+   * Add bytes to the part with the given name.
+   * @param name
+   * @param bytes 
+   */
+  public void add(String name, long bytes) {
+    Long old = parts.get(name);
+    parts.put(name, old == null ? bytes : old + bytes);
+  }
+  
+  /**
+   * The bytes of the part or 0 if there is no such part.
+   * @param name
+   * @return 
+   */
+  public long getBytes(String name) {
+    Long bytes = parts.get(name);
+    return bytes == null ? 0 : bytes;
+  }
+  
+  public long getTotalBytes() {
+    long total = 0;
+    for(long bytes : parts.values()) {
+      total += bytes;
+    }
+    return total;
+  }
+  
+  /**
+   * All parts and their bytes, in the order they were added.
+   * @return 
+   */
+  public Map<String, Long> getParts() {
+    return Collections.unmodifiableMap(parts);
+  }
+  
+  /**
+   * Report each part as a gauge "footprint.name" and the total as 
+   * "footprint.total".
+   * @param sink 
+   */
+  public void report(MetricsSink sink) {
+    for(Map.Entry<String, Long> part : parts.entrySet()) {
+      sink.gauge("footprint."+part.getKey(), part.getValue());
+    }
+    sink.gauge("footprint.total", getTotalBytes());
+  }
+  
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for(Map.Entry<String, Long> part : parts.entrySet()) {
+      sb.append(part.getKey()).append('\t').append(part.getValue()).append('\n');
+    }
+    sb.append("total\t").append(getTotalBytes()).append('\n');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,34 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * Receives the values of the metrics of a GraphStore (see 
+ * GraphStore.reportMetrics), so they can be passed on to whatever metrics
+ * library or monitoring system is used. Names are dot separated, e.g. 
+ * "query.SHARED_PARENT.count".
+ * 
+ * @author Johann Petrak
+ */
+public interface MetricsSink {
+  
+  /**
+   * A value that only ever increases, until the metrics are reset.
+   * @param name
+   * @param value 
+   */
+  public void counter(String name, long value);
+  
+  /**
+   * A value that can go up and down.
+   * @param name
+   * @param value 
+   */
+  public void gauge(String name, double value);
+  
+  /**
+   * A histogram with power of two buckets: bucket 0 counts the value 0, 
+   * bucket i &gt; 0 counts the values from 2^(i-1) to 2^i-1. 
+   * @param name
+   * @param buckets 
+   */
+  public void histogram(String name, long[] buckets);
+}
@@ -0,0 +1,58 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * Edge lists which can still be changed: nodes can be added and the 
+ * edge list of a node can be set.
+ * 
+ * @author Johann Petrak
+ */
+public abstract class ModifiableEdgeLists extends EdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  /**
+   * Add a new node without edges: the id of the new node is the number
+   * of nodes before adding.
+   */
+  public abstract void addNode();
+  
+  /**
+   * Set the edges of a node from the first length ints of a chunk, which
+   * contains two ints per edge, first the id of the other node, then the 
+   * edge data, sorted by increasing node id. 
+   * For each node, this should only be called once, since the old edges
+   * of the node may just be left in the store as garbage!
+   * @param nodeId
+   * @param chunk
+   * @param length 
+   */
+  public abstract void setEdges(int nodeId, int[] chunk, int length);
+  
+  /**
+   * Create new empty edge lists which store the edges in the same way.
+   * @return 
+   */
+  public abstract ModifiableEdgeLists newEmpty();
+  
+  /**
+   * Create read-only edge lists with the current edges, which do not change
+   * when these edge lists get modified later and can be used by other 
+   * threads while that happens. The snapshot shares everything with these 
+   * edge lists that does not get changed any more, like the chunks already
+   * stored, so this is much cheaper than a copy. Modifying the snapshot 
+   * throws an exception.
+   * @return 
+   */
+  public abstract ModifiableEdgeLists snapshot();
+  
+  /**
+   * Return edge lists to which a chunk of the given length can be added 
+   * with setEdges: these, or if the store would get too large for int
+   * indexes, BigChunkedEdgeLists with a copy of all the edges. The caller
+   * has to use the returned edge lists from then on.
+   * @param length
+   * @return 
+   */
+  public ModifiableEdgeLists ensureCapacity(int length) {
+    return this;
+  }
+}
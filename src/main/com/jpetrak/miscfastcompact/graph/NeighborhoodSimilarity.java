@@ -0,0 +1,168 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * Similarity of the out- or in-neighbourhoods of pairs of nodes of a 
+ * GraphStore, see SimilarityMeasure. All measures are computed from a
+ * single intersection of the two edge lists plus values per node which
+ * are computed once when this object is created, so the store must not 
+ * be modified while this object is used.
+ * <p>
+ * If weighted is true, the edge data is used as the weight of each 
+ * neighbour, which should then be >= 0: the size of a neighbourhood is the
+ * sum of its weights, the size of the intersection is the sum of the 
+ * smaller weight for each common neighbour, and the cosine uses the 
+ * weight vectors. For Adamic-Adar, each common neighbour contributes its 
+ * smaller weight divided by the log of its degree.
+ * <p>
+ * This can be used from several threads at the same time.
+ * 
+ * @author Johann Petrak
+ */
+public class NeighborhoodSimilarity {
+  
+  private final GraphStore gstore;
+  private final Direction direction;
+  private final boolean weighted;
+  // for weighted similarities: for each node, the sum of the weights and 
+  // the euclidean norm of the weight vector
+  private final double[] sums;
+  private final double[] norms;
+  
+  private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+    @Override
+    protected Buffers initialValue() {
+      return new Buffers();
+    }
+  };
+  
+  public NeighborhoodSimilarity(GraphStore gstore, Direction direction, boolean weighted) {
+    this.gstore = gstore;
+    this.direction = direction;
+    this.weighted = weighted;
+    if(weighted) {
+      int n = gstore.getNumberOfNodes();
+      sums = new double[n];
+      norms = new double[n];
+      EdgeCursor cursor = gstore.newEdgeCursor();
+      for(int i=0; i<n; i++) {
+        position(i, cursor);
+        double sum = 0;
+        double squares = 0;
+        for(int j=0; j<cursor.size(); j++) {
+          double w = cursor.edgeData(j);
+          sum += w;
+          squares += w*w;
+        }
+        sums[i] = sum;
+        norms[i] = Math.sqrt(squares);
+      }
+    } else {
+      sums = null;
+      norms = null;
+    }
+  }
+  
+  public double jaccard(int nodeId1, int nodeId2) {
+    return similarity(SimilarityMeasure.JACCARD, nodeId1, nodeId2);
+  }
+  
+  public double cosine(int nodeId1, int nodeId2) {
+    return similarity(SimilarityMeasure.COSINE, nodeId1, nodeId2);
+  }
+  
+  public double overlap(int nodeId1, int nodeId2) {
+    return similarity(SimilarityMeasure.OVERLAP, nodeId1, nodeId2);
+  }
+  
+  public double adamicAdar(int nodeId1, int nodeId2) {
+    return similarity(SimilarityMeasure.ADAMIC_ADAR, nodeId1, nodeId2);
+  }
+  
+  /**
+   * Compute one similarity measure for two nodes. 
+   * @param measure
+   * @param nodeId1
+   * @param nodeId2
+   * @return 
+   */
+  public double similarity(SimilarityMeasure measure, int nodeId1, int nodeId2) {
+    double[] result = buffers.get().result;
+    similarities(nodeId1, nodeId2, result);
+    return result[measure.ordinal()];
+  }
+  
+  /**
+   * Compute all similarity measures for two nodes from one intersection:
+   * the value for each measure is stored in result[measure.ordinal()].
+   * All measures are 0 if one of the nodes does not have any neighbours.
+   * @param nodeId1
+   * @param nodeId2
+   * @param result 
+   */
+  public void similarities(int nodeId1, int nodeId2, double[] result) {
+    Buffers b = buffers.get();
+    EdgeCursor c1 = b.cursor1;
+    EdgeCursor c2 = b.cursor2;
+    position(nodeId1, c1);
+    position(nodeId2, c2);
+    int size1 = c1.size();
+    int size2 = c2.size();
+    int min = Math.min(size1, size2);
+    if(b.positions1.length < min) {
+      b.positions1 = new int[Math.max(min, 2*b.positions1.length)];
+      b.positions2 = new int[b.positions1.length];
+    }
+    int n = EdgeIntersection.intersect(c1, c2, gstore.getIntersectionStrategy(), b.positions1, b.positions2);
+    double common = 0;
+    double dot = 0;
+    double aa = 0;
+    for(int i=0; i<n; i++) {
+      double w;
+      if(weighted) {
+        double w1 = c1.edgeData(b.positions1[i]);
+        double w2 = c2.edgeData(b.positions2[i]);
+        w = Math.min(w1, w2);
+        dot += w1*w2;
+      } else {
+        w = 1;
+        dot += 1;
+      }
+      common += w;
+      int degree = oppositeDegree(c1.nodeId(b.positions1[i]));
+      if(degree > 1) {
+        aa += w/Math.log(degree);
+      }
+    }
+    double s1 = weighted ? sums[nodeId1] : size1;
+    double s2 = weighted ? sums[nodeId2] : size2;
+    double norm1 = weighted ? norms[nodeId1] : Math.sqrt(size1);
+    double norm2 = weighted ? norms[nodeId2] : Math.sqrt(size2);
+    double union = s1 + s2 - common;
+    result[SimilarityMeasure.JACCARD.ordinal()] = union > 0 ? common/union : 0;
+    result[SimilarityMeasure.COSINE.ordinal()] = (norm1 > 0 && norm2 > 0) ? dot/(norm1*norm2) : 0;
+    result[SimilarityMeasure.OVERLAP.ordinal()] = Math.min(s1, s2) > 0 ? common/Math.min(s1, s2) : 0;
+    result[SimilarityMeasure.ADAMIC_ADAR.ordinal()] = aa;
+  }
+  
+  private void position(int nodeId, EdgeCursor cursor) {
+    if(direction == Direction.OUT) {
+      gstore.getOutEdges(nodeId, cursor);
+    } else {
+      gstore.getInEdges(nodeId, cursor);
+    }
+  }
+  
+  // the degree of a neighbour in the other direction, i.e. the number of 
+  // nodes which have it as a neighbour
+  private int oppositeDegree(int nodeId) {
+    return direction == Direction.OUT ? gstore.getInDegree(nodeId) : gstore.getOutDegree(nodeId);
+  }
+  
+  private class Buffers {
+    final EdgeCursor cursor1 = gstore.newEdgeCursor();
+    final EdgeCursor cursor2 = gstore.newEdgeCursor();
+    int[] positions1 = new int[16];
+    int[] positions2 = new int[16];
+    final double[] result = new double[SimilarityMeasure.values().length];
+  }
+}
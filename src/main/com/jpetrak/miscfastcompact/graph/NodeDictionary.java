@@ -0,0 +1,309 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.BigStoreOfBytes;
+import com.jpetrak.miscfastcompact.utils.Utils;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+/**
+ * Compact bidirectional mapping between node names (URIs) and node ids
+ * 0...(n-1), assigned in the order the names are added.
+ * <p>
+ * The UTF-8 bytes of each name are stored exactly once, one after the
+ * other, in a segmented BigStoreOfBytes, so the names can take more than
+ * 2GB. The id to name direction uses an array of long start offsets into 
+ * that store, the name to id direction is an open addressing hash table 
+ * (linear probing) of ids over a primitive int array. The hash code of 
+ * each name is kept as well, so the table can be grown without reading 
+ * the names again and most probes that do not match get rejected without 
+ * comparing any bytes. Apart from the bytes of the names this needs about 
+ * 13 bytes per name (offset, hash and the length of the name, which is
+ * a single byte for names shorter than 128 bytes) plus 4 bytes per hash 
+ * table slot, and no objects per name at all.
+ * <p>
+ * A snapshot is a read-only view of the names added so far, which shares
+ * all the arrays with this dictionary: since linear probing never moves an
+ * entry and growing the hash table creates a new one, the view only has to
+ * skip the entries for ids added after it was created.
+ *
+ * @author Johann Petrak
+ */
+public class NodeDictionary implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  static final Charset UTF8 = Charset.forName("UTF-8");
+  private static final float MAX_LOAD = 0.75f;
+
+  private BigStoreOfBytes names;
+  // for each id, the index of the name in the names store
+  private LongArrayList offsets;
+  // for each id, the hash of the name
+  private IntArrayList hashes;
+  // the hash table: id+1 or 0 for an empty slot
+  private int[] table;
+  private int mask;
+  // true for a view created by snapshot
+  private boolean readOnly = false;
+
+  public NodeDictionary() {
+    this(16);
+  }
+
+  /**
+   * Create a dictionary for about the expected number of names.
+   * @param expectedSize
+   */
+  public NodeDictionary(int expectedSize) {
+    this(expectedSize, BigStoreOfBytes.DEFAULT_SEGMENT_SHIFT);
+  }
+
+  // with segments of 2^segmentShift bytes for the names
+  NodeDictionary(int expectedSize, int segmentShift) {
+    names = new BigStoreOfBytes(segmentShift);
+    offsets = new LongArrayList(expectedSize);
+    hashes = new IntArrayList(expectedSize);
+    int capacity = 16;
+    while(capacity * MAX_LOAD < expectedSize) {
+      capacity *= 2;
+    }
+    table = new int[capacity];
+    mask = capacity-1;
+  }
+
+  /**
+   * Create a copy of another dictionary, which is independent of the 
+   * other one.
+   * @param other
+   */
+  public NodeDictionary(NodeDictionary other) {
+    int n = other.size();
+    names = new BigStoreOfBytes(other.names);
+    offsets = new LongArrayList(n);
+    offsets.addElements(0, other.offsets.elements(), 0, n);
+    hashes = new IntArrayList(n);
+    hashes.addElements(0, other.hashes.elements(), 0, n);
+    table = other.table.clone();
+    mask = other.mask;
+  }
+
+  private NodeDictionary(NodeDictionary other, boolean readOnly) {
+    int n = other.size();
+    names = other.names.snapshot();
+    offsets = LongArrayList.wrap(other.offsets.elements(), n);
+    hashes = IntArrayList.wrap(other.hashes.elements(), n);
+    table = other.table;
+    mask = other.mask;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * A read-only view of the names added so far, which shares the memory
+   * with this dictionary. Names added to this dictionary later are not
+   * visible in the view.
+   * @return
+   */
+  public NodeDictionary snapshot() {
+    return new NodeDictionary(this, true);
+  }
+
+  /**
+   * Number of names in the dictionary.
+   * @return
+   */
+  public int size() {
+    return offsets.size();
+  }
+
+  /**
+   * Add the name, if it is not already in the dictionary, and return its id.
+   * @param name
+   * @return
+   */
+  public int add(String name) {
+    byte[] bytes = isAscii(name) ? null : name.getBytes(UTF8);
+    int hash = (bytes == null) ? hash(name) : hash(bytes);
+    int slot = hash & mask;
+    int entry;
+    while((entry = table[slot]) != 0) {
+      if(entry <= offsets.size() && isEqual(entry-1, hash, name, bytes)) {
+        return entry-1;
+      }
+      slot = (slot+1) & mask;
+    }
+    if(readOnly) {
+      throw new RuntimeException("Cannot add to a snapshot of a dictionary");
+    }
+    int id = offsets.size();
+    if(id == Integer.MAX_VALUE-1) {
+      throw new RuntimeException("Capacity of dictionary exhausted");
+    }
+    long offset;
+    if(bytes == null) {
+      offset = names.addData(asciiBytes(name));
+    } else {
+      offset = names.addData(bytes);
+    }
+    offsets.add(offset);
+    hashes.add(hash);
+    table[slot] = id+1;
+    if(offsets.size() > table.length * MAX_LOAD) {
+      rehash(table.length*2);
+    }
+    return id;
+  }
+
+  /**
+   * Return the id of the name or -1 if the name is not in the dictionary.
+   * @param name
+   * @return
+   */
+  public int getId(String name) {
+    byte[] bytes = isAscii(name) ? null : name.getBytes(UTF8);
+    int hash = (bytes == null) ? hash(name) : hash(bytes);
+    int slot = hash & mask;
+    int entry;
+    while((entry = table[slot]) != 0) {
+      // a snapshot shares the table, but not the entries added after it
+      if(entry <= offsets.size() && isEqual(entry-1, hash, name, bytes)) {
+        return entry-1;
+      }
+      slot = (slot+1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Return the name for the id.
+   * @param id
+   * @return
+   */
+  public String getName(int id) {
+    long index = offsets.getLong(id);
+    return new String(names.getSegment(index), names.getDataOffset(index), names.getSize(index), UTF8);
+  }
+
+  // compare the stored name with the given name: if bytes is null, the name
+  // is pure ASCII and we can compare chars and bytes directly, otherwise
+  // compare the UTF-8 bytes.
+  private boolean isEqual(int id, int hash, String name, byte[] bytes) {
+    if(hashes.getInt(id) != hash) {
+      return false;
+    }
+    long index = offsets.getLong(id);
+    int length = names.getSize(index);
+    byte[] stored = names.getSegment(index);
+    int offset = names.getDataOffset(index);
+    if(bytes == null) {
+      if(length != name.length()) {
+        return false;
+      }
+      for(int i=0; i<length; i++) {
+        if(stored[offset+i] != (byte)name.charAt(i)) {
+          return false;
+        }
+      }
+    } else {
+      if(length != bytes.length) {
+        return false;
+      }
+      for(int i=0; i<length; i++) {
+        if(stored[offset+i] != bytes[i]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void rehash(int newCapacity) {
+    int[] newTable = new int[newCapacity];
+    int newMask = newCapacity-1;
+    int n = offsets.size();
+    for(int id=0; id<n; id++) {
+      int slot = hashes.getInt(id) & newMask;
+      while(newTable[slot] != 0) {
+        slot = (slot+1) & newMask;
+      }
+      newTable[slot] = id+1;
+    }
+    table = newTable;
+    mask = newMask;
+  }
+
+  /**
+   * Add the bytes of heap memory used by the dictionary to the footprint,
+   * as parts whose names start with prefix.
+   * @param prefix
+   * @param footprint 
+   */
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".names", names.getMemoryFootprint());
+    footprint.add(prefix+".offsets", Utils.arrayBytes(offsets.elements().length, 8));
+    footprint.add(prefix+".hashes", Utils.arrayBytes(hashes.elements().length, 4));
+    footprint.add(prefix+".table", Utils.arrayBytes(table.length, 4));
+  }
+
+  // package-private access to the parts of the dictionary for writing it
+  // to a file
+  BigStoreOfBytes getNamesStore() {
+    return names;
+  }
+  LongArrayList getOffsets() {
+    return offsets;
+  }
+  IntArrayList getHashes() {
+    return hashes;
+  }
+  int[] getTable() {
+    if(!readOnly) {
+      return table;
+    }
+    // the entries added after the snapshot come after all the entries of
+    // the snapshot in any probe sequence, so they can simply be removed
+    int[] copy = table.clone();
+    int n = size();
+    for(int i=0; i<copy.length; i++) {
+      if(copy[i] > n) {
+        copy[i] = 0;
+      }
+    }
+    return copy;
+  }
+
+  static boolean isAscii(String name) {
+    for(int i=0; i<name.length(); i++) {
+      if(name.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static byte[] asciiBytes(String name) {
+    byte[] bytes = new byte[name.length()];
+    for(int i=0; i<bytes.length; i++) {
+      bytes[i] = (byte)name.charAt(i);
+    }
+    return bytes;
+  }
+
+  // The hash codes for an ASCII string and its bytes must be identical,
+  // so both versions hash the same sequence of byte values.
+  static int hash(String name) {
+    int h = 0;
+    for(int i=0; i<name.length(); i++) {
+      h = 31*h + (byte)name.charAt(i);
+    }
+    return Utils.mixHash(h);
+  }
+
+  static int hash(byte[] bytes) {
+    int h = 0;
+    for(int i=0; i<bytes.length; i++) {
+      h = 31*h + bytes[i];
+    }
+    return Utils.mixHash(h);
+  }
+}
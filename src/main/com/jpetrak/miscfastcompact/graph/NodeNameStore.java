@@ -14,6 +14,9 @@ import java.util.List;
  * This encapsulates how we store the names for node ids. At the moment we
  * use a List of String but this may change to something more space 
  * efficient later.
+ * Note that a GraphStore already keeps the names of all its nodes in its
+ * NodeDictionary, so this is only needed when the names should be kept 
+ * separately.
  * 
  * @author Johann Petrak
  */
@@ -0,0 +1,17 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * Orders for renumbering the nodes of a GraphStore, see 
+ * GraphStore.reorderNodes.
+ * 
+ * @author Johann Petrak
+ */
+public enum NodeOrder {
+  /** by decreasing number of in plus out edges, so the hubs, which are 
+   * in most edge lists, get the smallest ids and are close together */
+  DEGREE,
+  /** in the order a breadth first search ignoring the edge direction 
+   * reaches the nodes, starting each connected component at its node with
+   * the highest degree, so nodes which are connected get close ids */
+  BFS
+}
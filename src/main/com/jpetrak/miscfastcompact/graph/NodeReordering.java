@@ -0,0 +1,114 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.util.Arrays;
+
+/**
+ * Computes a new numbering of the nodes of a GraphStore and renumbers 
+ * edge lists.
+ * 
+ * @author Johann Petrak
+ */
+class NodeReordering {
+  
+  private NodeReordering() {}
+  
+  /**
+   * Compute the new id for each old id.
+   * @param gstore
+   * @param order
+   * @return 
+   */
+  static int[] computeNewIds(GraphStore gstore, NodeOrder order) {
+    int n = gstore.getNumberOfNodes();
+    // nodes by decreasing degree and increasing id: -degree in the upper
+    // bits of a key, the id in the lower 32 bits
+    long[] keys = new long[n];
+    for(int i=0; i<n; i++) {
+      long degree = (long)gstore.getOutDegree(i) + gstore.getInDegree(i);
+      keys[i] = (-degree << 32) | i;
+    }
+    Arrays.sort(keys);
+    int[] newIds = new int[n];
+    if(order == NodeOrder.DEGREE) {
+      for(int i=0; i<n; i++) {
+        newIds[(int)keys[i]] = i;
+      }
+      return newIds;
+    } else if(order != NodeOrder.BFS) {
+      throw new RuntimeException("Unknown node order: "+order);
+    }
+    Arrays.fill(newIds, -1);
+    int[] queue = new int[n];
+    int end = 0;
+    EdgeCursor cursor = gstore.newEdgeCursor();
+    for(int r=0; r<n; r++) {
+      int root = (int)keys[r];
+      if(newIds[root] >= 0) {
+        continue;
+      }
+      int start = end;
+      newIds[root] = end;
+      queue[end++] = root;
+      for(int i=start; i<end; i++) {
+        int u = queue[i];
+        for(int dir=0; dir<2; dir++) {
+          if(dir == 0) {
+            gstore.getOutEdges(u, cursor);
+          } else {
+            gstore.getInEdges(u, cursor);
+          }
+          for(int j=0; j<cursor.size(); j++) {
+            int v = cursor.nodeId(j);
+            if(newIds[v] < 0) {
+              newIds[v] = end;
+              queue[end++] = v;
+            }
+          }
+        }
+      }
+    }
+    return newIds;
+  }
+  
+  /**
+   * Add the edges of edges with all the node ids renumbered to the empty 
+   * target edge lists and return the edge lists to use from then on (see
+   * ModifiableEdgeLists.ensureCapacity). 
+   * @param edges
+   * @param newIds
+   * @param target
+   * @return 
+   */
+  static ModifiableEdgeLists renumber(EdgeLists edges, int[] newIds, ModifiableEdgeLists target) {
+    int n = newIds.length;
+    int[] oldIds = new int[n];
+    for(int i=0; i<n; i++) {
+      oldIds[newIds[i]] = i;
+      target.addNode();
+    }
+    EdgeCursor cursor = edges.newCursor();
+    long[] keys = new long[16];
+    int[] chunk = new int[32];
+    for(int v=0; v<n; v++) {
+      if(!edges.position(oldIds[v], cursor)) {
+        continue;
+      }
+      int size = cursor.size();
+      if(keys.length < size) {
+        keys = new long[Math.max(size, 2*keys.length)];
+        chunk = new int[2*keys.length];
+      }
+      for(int j=0; j<size; j++) {
+        keys[j] = ((long)newIds[cursor.nodeId(j)] << 32) | (cursor.edgeData(j) & 0xFFFFFFFFL);
+      }
+      Arrays.sort(keys, 0, size);
+      for(int j=0; j<size; j++) {
+        chunk[2*j] = (int)(keys[j] >>> 32);
+        chunk[2*j+1] = (int)keys[j];
+      }
+      target = target.ensureCapacity(2*size);
+      target.setEdges(v, chunk, 2*size);
+    }
+    return target;
+  }
+}
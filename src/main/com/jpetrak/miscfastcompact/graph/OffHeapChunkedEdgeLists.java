@@ -0,0 +1,122 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.OffHeapStoreOfInts;
+
+/**
+ * Modifiable edge lists like ChunkedEdgeLists, but the chunks are kept 
+ * off the Java heap in an OffHeapStoreOfInts. Only the list which maps
+ * each node id to its chunk index (8 bytes per node) is on the heap. 
+ * The off-heap memory is freed by close or, if the edge lists are not 
+ * closed, once the garbage collector finds them to be unreachable.
+ * 
+ * @author Johann Petrak
+ */
+public class OffHeapChunkedEdgeLists extends ModifiableEdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  private OffHeapStoreOfInts store;
+  private PagedLongList id2chunk;
+  private long nrEdges = 0;
+  
+  public OffHeapChunkedEdgeLists() {
+    this(OffHeapStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create empty edge lists with a store that allocates segments of 
+   * 2^segmentShift ints.
+   * @param segmentShift 
+   */
+  public OffHeapChunkedEdgeLists(int segmentShift) {
+    this(new OffHeapStoreOfInts(segmentShift), new PagedLongList(), 0);
+  }
+  
+  private OffHeapChunkedEdgeLists(OffHeapStoreOfInts store, PagedLongList id2chunk, long nrEdges) {
+    this.store = store;
+    this.id2chunk = id2chunk;
+    this.nrEdges = nrEdges;
+  }
+  
+  @Override
+  public void addNode() {
+    id2chunk.add(-1);
+  }
+  
+  @Override
+  public void setEdges(int nodeId, int[] chunk, int length) {
+    long old = id2chunk.getLong(nodeId);
+    if(old >= 0) {
+      nrEdges -= store.getSize(old)/2;
+    }
+    id2chunk.set(nodeId, store.addData(chunk, length));
+    nrEdges += length/2;
+  }
+  
+  /**
+   * The store which contains all the chunks.
+   * @return 
+   */
+  public OffHeapStoreOfInts getStore() {
+    return store;
+  }
+  
+  @Override
+  public ModifiableEdgeLists newEmpty() {
+    return new OffHeapChunkedEdgeLists(store.getSegmentShift());
+  }
+  
+  /**
+   * The snapshot shares the off-heap memory with these edge lists, see
+   * OffHeapStoreOfInts.snapshot: closing these edge lists then leaves
+   * the memory shared with the snapshot to the garbage collector.
+   * @return 
+   */
+  @Override
+  public ModifiableEdgeLists snapshot() {
+    return new OffHeapChunkedEdgeLists(store.snapshot(), id2chunk.snapshot(), nrEdges);
+  }
+  
+  @Override
+  public EdgeCursor newCursor() {
+    return new OffHeapEdgeCursor();
+  }
+
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    OffHeapEdgeCursor c = (OffHeapEdgeCursor)cursor;
+    long chunkIndex = id2chunk.getLong(nodeId);
+    if(chunkIndex < 0) {
+      c.clear();
+      return false;
+    }
+    c.set(store, chunkIndex+1, store.getInt(chunkIndex)/2);
+    return true;
+  }
+  
+  @Override
+  public int getDegree(int nodeId) {
+    long chunkIndex = id2chunk.getLong(nodeId);
+    return chunkIndex < 0 ? 0 : store.getSize(chunkIndex)/2;
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return id2chunk.size();
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return nrEdges;
+  }
+  
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".store", store.getMemoryFootprint());
+    footprint.add(prefix+".id2chunk", id2chunk.getMemoryFootprint());
+  }
+  
+  @Override
+  public void close() {
+    store.close();
+  }
+}
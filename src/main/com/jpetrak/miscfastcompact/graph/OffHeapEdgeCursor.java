@@ -0,0 +1,60 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.OffHeapStoreOfInts;
+
+/**
+ * An edge cursor that views an interleaved (nodeId, edgeData) chunk of an
+ * OffHeapStoreOfInts, or the buffer of the cursor for edge lists which 
+ * have to assemble the edges of a node first (see DeltaEdgeLists).
+ * 
+ * @author Johann Petrak
+ */
+public final class OffHeapEdgeCursor extends EdgeCursor {
+  private OffHeapStoreOfInts store;
+  // the index of the node id of the first edge in the store
+  private long base;
+  private int size = 0;
+  // only used if the cursor views its buffer, then store is null
+  private int[] buffer;
+  
+  void set(OffHeapStoreOfInts store, long base, int size) {
+    this.store = store;
+    this.base = base;
+    this.size = size;
+  }
+  
+  @Override
+  int[] getBuffer(int length) {
+    if(buffer == null || buffer.length < length) {
+      buffer = new int[Math.max(length, 2*(buffer == null ? 16 : buffer.length))];
+    }
+    return buffer;
+  }
+  
+  @Override
+  void viewBuffer(int size) {
+    store = null;
+    this.size = size;
+  }
+  
+  @Override
+  public void clear() {
+    store = null;
+    size = 0;
+  }
+  
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int nodeId(int pos) {
+    return store == null ? buffer[2*pos] : store.getInt(base+2*pos);
+  }
+
+  @Override
+  public int edgeData(int pos) {
+    return store == null ? buffer[2*pos+1] : store.getInt(base+2*pos+1);
+  }
+}
@@ -0,0 +1,95 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A list of longs kept in pages of 4096 entries, which can share its pages
+ * with snapshots: snapshot creates a read-only copy which only copies the
+ * array of pages. After that, a page of this list gets copied the first
+ * time one of its entries is changed, so a new snapshot only costs memory
+ * for the pages changed since the last one. Adding entries never copies a
+ * page, since a snapshot does not read beyond its own size.
+ *
+ * @author Johann Petrak
+ */
+class PagedLongList implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private static final int PAGE_SHIFT = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE-1;
+
+  private long[][] pages = new long[4][];
+  private int size = 0;
+  // the pages which are shared with a snapshot, null if there are none
+  private transient boolean[] shared;
+  // true for a snapshot
+  private boolean readOnly = false;
+
+  int size() {
+    return size;
+  }
+
+  long getLong(int index) {
+    return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+  }
+
+  void add(long value) {
+    checkNotReadOnly();
+    int page = size >>> PAGE_SHIFT;
+    if(page == pages.length) {
+      pages = Arrays.copyOf(pages, 2*pages.length);
+    }
+    if(pages[page] == null) {
+      pages[page] = new long[PAGE_SIZE];
+    }
+    pages[page][size & PAGE_MASK] = value;
+    size++;
+  }
+
+  void set(int index, long value) {
+    checkNotReadOnly();
+    if(index >= size) {
+      throw new IndexOutOfBoundsException("Index "+index+" but size is "+size);
+    }
+    int page = index >>> PAGE_SHIFT;
+    if(shared != null && page < shared.length && shared[page]) {
+      pages[page] = pages[page].clone();
+      shared[page] = false;
+    }
+    pages[page][index & PAGE_MASK] = value;
+  }
+
+  /**
+   * A read-only copy of the list which shares all the pages with this one.
+   * @return
+   */
+  PagedLongList snapshot() {
+    int nrPages = (size + PAGE_MASK) >>> PAGE_SHIFT;
+    PagedLongList copy = new PagedLongList();
+    copy.pages = Arrays.copyOf(pages, Math.max(nrPages, 1));
+    copy.size = size;
+    copy.readOnly = true;
+    shared = new boolean[nrPages];
+    Arrays.fill(shared, true);
+    return copy;
+  }
+
+  long getMemoryFootprint() {
+    long bytes = Utils.arrayBytes(pages.length, 4);
+    for(long[] page : pages) {
+      if(page != null) {
+        bytes += Utils.arrayBytes(PAGE_SIZE, 8);
+      }
+    }
+    return bytes;
+  }
+
+  private void checkNotReadOnly() {
+    if(readOnly) {
+      throw new RuntimeException("Cannot modify a snapshot of a list");
+    }
+  }
+}
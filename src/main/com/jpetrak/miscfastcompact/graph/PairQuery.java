@@ -0,0 +1,17 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * The kinds of queries about a pair of nodes which a GraphStore supports.
+ * 
+ * @author Johann Petrak
+ */
+public enum PairQuery {
+  /** getFirstEdgeData: the data of the edge from node1 to node2 */
+  FIRST_EDGE_DATA,
+  /** getSumEdgeDataSharedParent: the nodes with edges to both node1 and node2 */
+  SHARED_PARENT,
+  /** getSumEdgeDataSharedChild: the nodes with edges from both node1 and node2 */
+  SHARED_CHILD,
+  /** getSumEdgeDataSequence: the nodes with an edge from node1 and an edge to node2 */
+  SEQUENCE
+}
@@ -0,0 +1,253 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.util.Arrays;
+
+/**
+ * A bounded cache for the results of pair queries. 
+ * <p>
+ * The key of an entry is packed into a long: the query kind in the top 2
+ * bits, then the two node ids with 31 bits each. For the symmetric 
+ * queries SHARED_PARENT and SHARED_CHILD the smaller node id always comes
+ * first, so both orders of a pair share one entry. The entries are kept in
+ * open addressing hash tables (linear probing) of primitive arrays, split 
+ * into segments with their own lock so that several threads can use the 
+ * cache at the same time. When a segment is full, an entry is evicted 
+ * with the CLOCK algorithm: each entry has a reference bit which gets set
+ * on every hit, a hand goes round the table and evicts the first entry 
+ * whose bit is not set, clearing the bits it passes. 
+ * 
+ * @author Johann Petrak
+ */
+public class PairQueryCache {
+  
+  private static final long EMPTY = -1L;
+  private static final int MAX_SEGMENTS = 16;
+  // returned by get if there is no entry, outside the range of int
+  static final long MISSING = Long.MIN_VALUE;
+  
+  private final Segment[] segments;
+  private final int segmentShift;
+  private final int maxEntries;
+  
+  /**
+   * Create a cache for at most maxEntries results, which needs about 
+   * 26 bytes per entry.
+   * @param maxEntries 
+   */
+  public PairQueryCache(int maxEntries) {
+    if(maxEntries < 1) {
+      throw new RuntimeException("Maximum number of entries must be > 0 but is "+maxEntries);
+    }
+    this.maxEntries = maxEntries;
+    int nrSegments = 1;
+    while(nrSegments < MAX_SEGMENTS && nrSegments*64 < maxEntries) {
+      nrSegments *= 2;
+    }
+    segments = new Segment[nrSegments];
+    // split the budget exactly, the first segments get one more entry
+    for(int i=0; i<nrSegments; i++) {
+      segments[i] = new Segment(maxEntries / nrSegments + (i < maxEntries % nrSegments ? 1 : 0));
+    }
+    segmentShift = 64 - Integer.numberOfTrailingZeros(nrSegments);
+  }
+  
+  /**
+   * The packed key for a query. The ids are masked to 31 bits, so that 
+   * a negative id cannot overwrite the other parts of the key.
+   * @param query
+   * @param nodeId1
+   * @param nodeId2
+   * @return 
+   */
+  static long key(PairQuery query, int nodeId1, int nodeId2) {
+    if((query == PairQuery.SHARED_PARENT || query == PairQuery.SHARED_CHILD) && nodeId1 > nodeId2) {
+      int tmp = nodeId1; nodeId1 = nodeId2; nodeId2 = tmp;
+    }
+    return ((long)query.ordinal() << 62) | ((nodeId1 & 0x7FFFFFFFL) << 31) | (nodeId2 & 0x7FFFFFFFL);
+  }
+  
+  // returns the cached result or MISSING if there is no entry
+  long get(long key) {
+    long hash = mix(key);
+    return segmentFor(hash).get(key, (int)hash);
+  }
+  
+  void put(long key, int value) {
+    long hash = mix(key);
+    segmentFor(hash).put(key, (int)hash, value);
+  }
+  
+  /**
+   * Remove all entries, but keep the counters.
+   */
+  public void clear() {
+    for(Segment s : segments) {
+      s.clear();
+    }
+  }
+  
+  public long getHits() {
+    long n = 0;
+    for(Segment s : segments) {
+      synchronized(s) { n += s.hits; }
+    }
+    return n;
+  }
+  
+  public long getMisses() {
+    long n = 0;
+    for(Segment s : segments) {
+      synchronized(s) { n += s.misses; }
+    }
+    return n;
+  }
+  
+  public long getEvictions() {
+    long n = 0;
+    for(Segment s : segments) {
+      synchronized(s) { n += s.evictions; }
+    }
+    return n;
+  }
+  
+  /**
+   * The number of entries currently in the cache.
+   * @return 
+   */
+  public int size() {
+    int n = 0;
+    for(Segment s : segments) {
+      synchronized(s) { n += s.size; }
+    }
+    return n;
+  }
+  
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+  
+  private Segment segmentFor(long hash) {
+    return segments.length == 1 ? segments[0] : segments[(int)(hash >>> segmentShift)];
+  }
+  
+  // the murmur3 64 bit finalizer
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+  
+  private static class Segment {
+    final int maxSize;
+    final long[] keys;
+    final int[] values;
+    final boolean[] referenced;
+    final int mask;
+    int size = 0;
+    int hand = 0;
+    long hits = 0;
+    long misses = 0;
+    long evictions = 0;
+    
+    Segment(int maxSize) {
+      this.maxSize = maxSize;
+      // keep the load at most 0.5
+      int capacity = Integer.highestOneBit(Math.max(2, maxSize)) * 4;
+      keys = new long[capacity];
+      values = new int[capacity];
+      referenced = new boolean[capacity];
+      mask = capacity-1;
+      Arrays.fill(keys, EMPTY);
+    }
+    
+    synchronized long get(long key, int hash) {
+      int slot = hash & mask;
+      long k;
+      while((k = keys[slot]) != EMPTY) {
+        if(k == key) {
+          hits++;
+          referenced[slot] = true;
+          return values[slot];
+        }
+        slot = (slot+1) & mask;
+      }
+      misses++;
+      return MISSING;
+    }
+    
+    synchronized void put(long key, int hash, int value) {
+      int slot = hash & mask;
+      long k;
+      while((k = keys[slot]) != EMPTY) {
+        if(k == key) {
+          values[slot] = value;
+          return;
+        }
+        slot = (slot+1) & mask;
+      }
+      if(size >= maxSize) {
+        evict();
+        // the removal may have moved entries, so find the slot again
+        slot = hash & mask;
+        while(keys[slot] != EMPTY) {
+          slot = (slot+1) & mask;
+        }
+      }
+      keys[slot] = key;
+      values[slot] = value;
+      referenced[slot] = false;
+      size++;
+    }
+    
+    private void evict() {
+      while(true) {
+        int slot = hand;
+        hand = (hand+1) & mask;
+        if(keys[slot] == EMPTY) {
+          continue;
+        }
+        if(referenced[slot]) {
+          referenced[slot] = false;
+        } else {
+          remove(slot);
+          evictions++;
+          return;
+        }
+      }
+    }
+    
+    // remove the entry in slot i and move back the entries after it which 
+    // would otherwise not be found anymore
+    private void remove(int i) {
+      int j = i;
+      while(true) {
+        j = (j+1) & mask;
+        if(keys[j] == EMPTY) {
+          break;
+        }
+        int ideal = (int)mix(keys[j]) & mask;
+        // the entry at j can move to i if its ideal slot is not in (i, j]
+        boolean stays = (i <= j) ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+        if(!stays) {
+          keys[i] = keys[j];
+          values[i] = values[j];
+          referenced[i] = referenced[j];
+          i = j;
+        }
+      }
+      keys[i] = EMPTY;
+      referenced[i] = false;
+      size--;
+    }
+    
+    synchronized void clear() {
+      Arrays.fill(keys, EMPTY);
+      Arrays.fill(referenced, false);
+      size = 0;
+      hand = 0;
+    }
+  }
+}
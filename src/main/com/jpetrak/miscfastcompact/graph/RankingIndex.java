@@ -0,0 +1,145 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Secondary index for the edge lists in one direction which stores, for 
+ * each node, the positions of its edges ordered by decreasing edge data 
+ * (and by increasing position for equal edge data). With this, the k edges
+ * with the largest edge data of a node can be found in O(k) without 
+ * sorting anything at query time. 
+ * The index only needs one int per edge plus the offsets per node, but it 
+ * is only valid for the edge lists it was built for as long as these do 
+ * not change. The ints are kept in segments of 2^segmentShift ints (2^27 
+ * by default), so there can be more than 2^31 edges.
+ * 
+ * @author Johann Petrak
+ */
+public class RankingIndex implements Serializable {
+  private static final long serialVersionUID = 1L;
+  
+  public static final int DEFAULT_SEGMENT_SHIFT = 27;
+  
+  // the ranked positions of node i are at offsets[i] to offsets[i+1], 
+  // position p is in segment p >>> segmentShift
+  private final long[] offsets;
+  private final int[][] positions;
+  private final int segmentShift;
+  private final int segmentMask;
+  
+  /**
+   * Build the index for the given edge lists.
+   * @param edges 
+   */
+  public RankingIndex(EdgeLists edges) {
+    this(edges, DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Build the index for the given edge lists with segments of 
+   * 2^segmentShift ints.
+   * @param edges 
+   * @param segmentShift
+   */
+  public RankingIndex(EdgeLists edges, int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 30) {
+      throw new RuntimeException("Segment shift must be between 4 and 30 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    segmentMask = (1 << segmentShift)-1;
+    int nrNodes = edges.getNumberOfNodes();
+    offsets = new long[nrNodes+1];
+    long total = 0;
+    int maxDegree = 0;
+    for(int i=0; i<nrNodes; i++) {
+      offsets[i] = total;
+      int degree = edges.getDegree(i);
+      total += degree;
+      maxDegree = Math.max(maxDegree, degree);
+    }
+    offsets[nrNodes] = total;
+    int nrSegments = (int)((total + segmentMask) >>> segmentShift);
+    positions = new int[nrSegments][];
+    for(int s=0; s<nrSegments; s++) {
+      positions[s] = new int[(int)Math.min(segmentMask+1, total - ((long)s << segmentShift))];
+    }
+    long[] keys = new long[maxDegree];
+    EdgeCursor cursor = edges.newCursor();
+    for(int i=0; i<nrNodes; i++) {
+      if(edges.position(i, cursor)) {
+        int size = rankEdges(cursor, keys);
+        long base = offsets[i];
+        for(int j=0; j<size; j++) {
+          long p = base+j;
+          positions[(int)(p >>> segmentShift)][(int)(p & segmentMask)] = (int)(keys[j] & 0x7FFFFFFFL);
+        }
+      }
+    }
+  }
+  
+  /**
+   * Get the k edges with the largest edge data of a node: the node ids
+   * and edge data are stored in decreasing order of the edge data in 
+   * nodeIds and edgeData, which must have at least k elements. The cursor
+   * must be positioned on the edge list of the node. 
+   * Returns the number of edges found, min(k, degree).
+   * @param nodeId
+   * @param cursor
+   * @param k
+   * @param nodeIds
+   * @param edgeData
+   * @return 
+   */
+  public int topK(int nodeId, EdgeCursor cursor, int k, int[] nodeIds, int[] edgeData) {
+    long base = offsets[nodeId];
+    int n = (int)Math.min(k, offsets[nodeId+1]-base);
+    for(int i=0; i<n; i++) {
+      long p = base+i;
+      int pos = positions[(int)(p >>> segmentShift)][(int)(p & segmentMask)];
+      nodeIds[i] = cursor.nodeId(pos);
+      edgeData[i] = cursor.edgeData(pos);
+    }
+    return n;
+  }
+  
+  /**
+   * The same as topK, but without an index: this sorts all the edges of the 
+   * node.
+   * @param cursor
+   * @param k
+   * @param nodeIds
+   * @param edgeData
+   * @return 
+   */
+  public static int topKWithoutIndex(EdgeCursor cursor, int k, int[] nodeIds, int[] edgeData) {
+    long[] keys = new long[cursor.size()];
+    int n = Math.min(k, rankEdges(cursor, keys));
+    for(int i=0; i<n; i++) {
+      int pos = (int)(keys[i] & 0x7FFFFFFFL);
+      nodeIds[i] = cursor.nodeId(pos);
+      edgeData[i] = cursor.edgeData(pos);
+    }
+    return n;
+  }
+  
+  // sort the positions of the edges by decreasing edge data: the keys 
+  // are -edgeData in the upper bits and the position in the lowest 31 bits
+  private static int rankEdges(EdgeCursor cursor, long[] keys) {
+    int size = cursor.size();
+    for(int j=0; j<size; j++) {
+      keys[j] = (-(long)cursor.edgeData(j) << 31) + j;
+    }
+    Arrays.sort(keys, 0, size);
+    return size;
+  }
+  
+  void addFootprint(String prefix, MemoryFootprint footprint) {
+    long bytes = Utils.arrayBytes(offsets.length, 8) + Utils.arrayBytes(positions.length, 4);
+    for(int[] segment : positions) {
+      bytes += Utils.arrayBytes(segment.length, 4);
+    }
+    footprint.add(prefix, bytes);
+  }
+}
@@ -0,0 +1,304 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Index for fast ancestor queries on a GraphStore which contains a DAG, 
+ * where an edge goes from a parent to a child: a is an ancestor of b if 
+ * there is a path of out edges from a to b.
+ * <p>
+ * The index consists of the position of each node in a topological order
+ * and d interval labels per node (the GRAIL method): each labelling is a 
+ * post-order depth first traversal of the DAG from the roots, taken in a 
+ * random order and visiting the children of each node starting at a 
+ * random one. The label of a node is [lowest post-order rank of any 
+ * descendant, its own rank]. If a is an ancestor of b, the label of b is 
+ * contained in the label of a for all labellings, and a comes before b in
+ * the topological order, so most queries where a is not an ancestor of b 
+ * can be answered without looking at any edges. Otherwise, a depth first 
+ * search from a is done, which only follows children whose labels still 
+ * contain the label of b. On a tree, the first labelling alone is already
+ * exact. 
+ * <p>
+ * Memory: 4 bytes per node for the topological order plus 8 bytes per node
+ * and labelling, so with the default of 3 labellings 28 bytes per node. 
+ * Each thread which uses the index also needs 8 bytes per node for the 
+ * searches. The index is only valid as long as the store is not modified.
+ * 
+ * @author Johann Petrak
+ */
+public class ReachabilityIndex {
+  
+  private final GraphStore gstore;
+  private final int nrNodes;
+  private final int d;
+  // the position of each node in a topological order
+  private final int[] topo;
+  // lows[v*d+i], highs[v*d+i]: the interval of node v for labelling i
+  private final int[] lows;
+  private final int[] highs;
+  
+  private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+    @Override
+    protected Search initialValue() {
+      return new Search();
+    }
+  };
+  
+  /**
+   * Build the index with 3 labellings.
+   * @param gstore 
+   */
+  public ReachabilityIndex(GraphStore gstore) {
+    this(gstore, 3, 1L);
+  }
+  
+  /**
+   * Build the index with the given number of labellings: more labellings 
+   * need more memory but reject more queries without a search. 
+   * Throws an exception if the graph contains a cycle.
+   * @param gstore
+   * @param nrLabellings
+   * @param seed for the random order of the traversals
+   */
+  public ReachabilityIndex(GraphStore gstore, int nrLabellings, long seed) {
+    if(nrLabellings < 1) {
+      throw new RuntimeException("Number of labellings must be > 0 but is "+nrLabellings);
+    }
+    this.gstore = gstore;
+    nrNodes = gstore.getNumberOfNodes();
+    if((long)nrNodes*nrLabellings > Integer.MAX_VALUE-8) {
+      throw new RuntimeException("Too many nodes for "+nrLabellings+" labellings: "+nrNodes);
+    }
+    d = nrLabellings;
+    topo = new int[nrNodes];
+    lows = new int[nrNodes*d];
+    highs = new int[nrNodes*d];
+    int[] roots = topologicalOrder();
+    Random rnd = new Random(seed);
+    for(int i=0; i<d; i++) {
+      label(i, roots, rnd);
+    }
+  }
+  
+  // Kahn's algorithm: sets topo and returns the nodes without parents
+  private int[] topologicalOrder() {
+    int[] remaining = new int[nrNodes];
+    int[] queue = new int[nrNodes];
+    int end = 0;
+    for(int v=0; v<nrNodes; v++) {
+      remaining[v] = gstore.getInDegree(v);
+      if(remaining[v] == 0) {
+        queue[end++] = v;
+      }
+    }
+    int[] roots = new int[end];
+    System.arraycopy(queue, 0, roots, 0, end);
+    EdgeCursor cursor = gstore.newEdgeCursor();
+    for(int i=0; i<end; i++) {
+      int u = queue[i];
+      topo[u] = i;
+      gstore.getOutEdges(u, cursor);
+      for(int j=0; j<cursor.size(); j++) {
+        int v = cursor.nodeId(j);
+        if(--remaining[v] == 0) {
+          queue[end++] = v;
+        }
+      }
+    }
+    if(end < nrNodes) {
+      throw new RuntimeException("The graph contains a cycle, "+(nrNodes-end)+" nodes are not in a topological order");
+    }
+    return roots;
+  }
+  
+  // one randomized post-order traversal for labelling i, with an explicit 
+  // stack: the node, the first child visited and the number of children
+  // visited so far
+  private void label(int i, int[] roots, Random rnd) {
+    for(int j=roots.length-1; j>0; j--) {
+      int k = rnd.nextInt(j+1);
+      int tmp = roots[j]; roots[j] = roots[k]; roots[k] = tmp;
+    }
+    boolean[] visited = new boolean[nrNodes];
+    int[] stackNode = new int[nrNodes];
+    int[] stackFirst = new int[nrNodes];
+    int[] stackDone = new int[nrNodes];
+    EdgeCursor cursor = gstore.newEdgeCursor();
+    int rank = 0;
+    for(int root : roots) {
+      int top = 0;
+      stackNode[0] = root;
+      stackDone[0] = 0;
+      stackFirst[0] = rnd.nextInt(Math.max(1, gstore.getOutDegree(root)));
+      visited[root] = true;
+      lows[root*d+i] = Integer.MAX_VALUE;
+      while(top >= 0) {
+        int u = stackNode[top];
+        gstore.getOutEdges(u, cursor);
+        int size = cursor.size();
+        if(stackDone[top] < size) {
+          int v = cursor.nodeId((stackFirst[top] + stackDone[top]) % size);
+          stackDone[top]++;
+          if(!visited[v]) {
+            visited[v] = true;
+            lows[v*d+i] = Integer.MAX_VALUE;
+            top++;
+            stackNode[top] = v;
+            stackDone[top] = 0;
+            stackFirst[top] = rnd.nextInt(Math.max(1, gstore.getOutDegree(v)));
+          } else if(lows[v*d+i] < lows[u*d+i]) {
+            lows[u*d+i] = lows[v*d+i];
+          }
+        } else {
+          // all children done: assign the rank and pass the low to the parent
+          highs[u*d+i] = rank;
+          if(rank < lows[u*d+i]) {
+            lows[u*d+i] = rank;
+          }
+          rank++;
+          top--;
+          if(top >= 0) {
+            int p = stackNode[top];
+            if(lows[u*d+i] < lows[p*d+i]) {
+              lows[p*d+i] = lows[u*d+i];
+            }
+          }
+        }
+      }
+    }
+  }
+  
+  // true if all labels of b are contained in the labels of a
+  private boolean contains(int a, int b) {
+    for(int i=0; i<d; i++) {
+      if(lows[b*d+i] < lows[a*d+i] || highs[b*d+i] > highs[a*d+i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * True if there is a path of out edges from a to b, i.e. if a is a 
+   * parent, grandparent etc. of b. A node is not its own ancestor.
+   * @param a
+   * @param b
+   * @return 
+   */
+  public boolean isAncestor(int a, int b) {
+    if(a == b || topo[a] >= topo[b] || !contains(a, b)) {
+      return false;
+    }
+    Search s = searches.get();
+    int stamp = s.nextStamp();
+    int top = 0;
+    s.stack[0] = a;
+    s.stamps[a] = stamp;
+    while(top >= 0) {
+      int u = s.stack[top--];
+      gstore.getOutEdges(u, s.cursor);
+      for(int j=0; j<s.cursor.size(); j++) {
+        int v = s.cursor.nodeId(j);
+        if(v == b) {
+          return true;
+        }
+        if(s.stamps[v] != stamp && topo[v] < topo[b] && contains(v, b)) {
+          s.stamps[v] = stamp;
+          s.stack[++top] = v;
+        }
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * True if b is an ancestor of a.
+   * @param a
+   * @param b
+   * @return 
+   */
+  public boolean isDescendant(int a, int b) {
+    return isAncestor(b, a);
+  }
+  
+  /**
+   * All ancestors of the node, in topological order.
+   * @param nodeId
+   * @return 
+   */
+  public int[] getAncestors(int nodeId) {
+    return collect(nodeId, Direction.IN);
+  }
+  
+  /**
+   * All descendants of the node, in topological order.
+   * @param nodeId
+   * @return 
+   */
+  public int[] getDescendants(int nodeId) {
+    return collect(nodeId, Direction.OUT);
+  }
+  
+  /**
+   * The position of the node in the topological order used by the index.
+   * @param nodeId
+   * @return 
+   */
+  public int getTopologicalPosition(int nodeId) {
+    return topo[nodeId];
+  }
+  
+  private int[] collect(int nodeId, Direction direction) {
+    Search s = searches.get();
+    int stamp = s.nextStamp();
+    s.stamps[nodeId] = stamp;
+    s.stack[0] = nodeId;
+    int n = 1;
+    // the stack array is used as a queue here: all nodes found stay in it
+    for(int i=0; i<n; i++) {
+      if(direction == Direction.OUT) {
+        gstore.getOutEdges(s.stack[i], s.cursor);
+      } else {
+        gstore.getInEdges(s.stack[i], s.cursor);
+      }
+      for(int j=0; j<s.cursor.size(); j++) {
+        int v = s.cursor.nodeId(j);
+        if(s.stamps[v] != stamp) {
+          s.stamps[v] = stamp;
+          s.stack[n++] = v;
+        }
+      }
+    }
+    // sort by topological position: topo[v]*nrNodes+v fits a long
+    long[] keys = new long[n-1];
+    for(int i=1; i<n; i++) {
+      keys[i-1] = ((long)topo[s.stack[i]] << 32) | s.stack[i];
+    }
+    Arrays.sort(keys);
+    int[] result = new int[n-1];
+    for(int i=0; i<result.length; i++) {
+      result[i] = (int)keys[i];
+    }
+    return result;
+  }
+  
+  // per thread data for the searches: the nodes are marked as visited by 
+  // setting their stamp to the stamp of the search, so nothing needs to be
+  // reset between searches
+  private class Search {
+    final int[] stamps = new int[nrNodes];
+    final int[] stack = new int[nrNodes];
+    final EdgeCursor cursor = gstore.newEdgeCursor();
+    int stamp = 0;
+    int nextStamp() {
+      stamp++;
+      if(stamp == Integer.MAX_VALUE) {
+        Arrays.fill(stamps, 0);
+        stamp = 1;
+      }
+      return stamp;
+    }
+  }
+}
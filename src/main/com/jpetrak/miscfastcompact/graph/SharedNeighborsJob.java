@@ -0,0 +1,246 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes, for every node, the k other nodes with the largest shared 
+ * parent (or shared child) sum, i.e. the largest result of 
+ * getSumEdgeDataSharedParent (or getSumEdgeDataSharedChild) for the pair. 
+ * <p>
+ * Instead of running the pair query for all pairs, this walks two hops 
+ * from each node x: for shared parents, from x to each parent p and from 
+ * p to each child y of p, adding the edge data of p-&gt;x and p-&gt;y to the 
+ * score of y. Only nodes which actually share a neighbour with x are 
+ * touched. The scores are accumulated in a dense int array per thread, 
+ * the best k are selected with a bounded heap. The nodes are split into 
+ * ranges which are processed in parallel in a ForkJoinPool, and each 
+ * range writes its results to the writer as soon as it is finished.
+ * <p>
+ * The output has one line for each pair, nodeId, otherNodeId and score 
+ * separated by tabs, the lines of one node are together and ordered by 
+ * decreasing score (and increasing other node id for equal scores), but 
+ * the nodes are not in any particular order.
+ * 
+ * @author Johann Petrak
+ */
+class SharedNeighborsJob {
+  
+  // node ranges smaller than this are processed by a single task
+  static final int RANGE_SIZE = 64;
+  // the output of a range gets written once it is larger than this
+  static final int FLUSH_SIZE = 1 << 16;
+  
+  private final GraphStore gstore;
+  private final boolean sharedParent;
+  private final int k;
+  private final Writer out;
+  private final int nrNodes;
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    @Override
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+  
+  private SharedNeighborsJob(GraphStore gstore, boolean sharedParent, int k, Writer out) {
+    this.gstore = gstore;
+    this.sharedParent = sharedParent;
+    this.k = k;
+    this.out = out;
+    this.nrNodes = gstore.getNumberOfNodes();
+  }
+  
+  // throw an exception if the job cannot be run for these arguments
+  static void checkArguments(PairQuery query, int k) {
+    if(query != PairQuery.SHARED_PARENT && query != PairQuery.SHARED_CHILD) {
+      throw new RuntimeException("Only SHARED_PARENT or SHARED_CHILD can be used, not "+query);
+    }
+    if(k < 1) {
+      throw new RuntimeException("k must be > 0 but is "+k);
+    }
+  }
+  
+  static void run(GraphStore gstore, PairQuery query, int k, Writer out, ForkJoinPool pool) throws IOException {
+    checkArguments(query, k);
+    SharedNeighborsJob job = new SharedNeighborsJob(gstore, query == PairQuery.SHARED_PARENT, k, out);
+    try {
+      if(pool == null) {
+        job.processRange(0, job.nrNodes);
+      } else {
+        pool.invoke(job.new Range(0, job.nrNodes));
+      }
+    } catch(UncheckedIOException ex) {
+      throw ex.cause;
+    }
+    out.flush();
+  }
+  
+  private void processRange(int from, int to) throws IOException {
+    Scratch s = scratch.get();
+    StringBuilder sb = s.output;
+    sb.setLength(0);
+    for(int x=from; x<to; x++) {
+      int n = topK(x, s);
+      for(int i=0; i<n; i++) {
+        sb.append(x).append('\t').append(s.heapIds[i]).append('\t').append(s.heapScores[i]).append('\n');
+      }
+      if(sb.length() > FLUSH_SIZE) {
+        write(sb);
+      }
+    }
+    write(sb);
+  }
+  
+  private void write(StringBuilder sb) throws IOException {
+    if(sb.length() > 0) {
+      synchronized(out) {
+        out.append(sb);
+      }
+      sb.setLength(0);
+    }
+  }
+  
+  // compute the scores of all nodes sharing a neighbour with x and leave
+  // the best k in heapIds/heapScores, ordered best first. Returns the number.
+  private int topK(int x, Scratch s) {
+    EdgeCursor first = s.cursor1;
+    EdgeCursor second = s.cursor2;
+    if(sharedParent) {
+      gstore.getInEdges(x, first);
+    } else {
+      gstore.getOutEdges(x, first);
+    }
+    int nrTouched = 0;
+    int[] scores = s.scores;
+    boolean[] touched = s.isTouched;
+    for(int i=0; i<first.size(); i++) {
+      int p = first.nodeId(i);
+      int data1 = first.edgeData(i);
+      if(sharedParent) {
+        gstore.getOutEdges(p, second);
+      } else {
+        gstore.getInEdges(p, second);
+      }
+      for(int j=0; j<second.size(); j++) {
+        int y = second.nodeId(j);
+        if(y == x) {
+          continue;
+        }
+        if(!touched[y]) {
+          touched[y] = true;
+          scores[y] = 0;
+          s.touched[nrTouched++] = y;
+        }
+        scores[y] += data1 + second.edgeData(j);
+      }
+    }
+    // select the best k with a heap which has the worst one at the top
+    int size = 0;
+    int[] ids = s.heapIds;
+    int[] hs = s.heapScores;
+    for(int i=0; i<nrTouched; i++) {
+      int y = s.touched[i];
+      touched[y] = false;
+      int score = scores[y];
+      if(size < k) {
+        // sift up
+        int pos = size++;
+        while(pos > 0) {
+          int parent = (pos-1) >>> 1;
+          if(!isWorse(score, y, hs[parent], ids[parent])) {
+            break;
+          }
+          ids[pos] = ids[parent];
+          hs[pos] = hs[parent];
+          pos = parent;
+        }
+        ids[pos] = y;
+        hs[pos] = score;
+      } else if(isWorse(hs[0], ids[0], score, y)) {
+        siftDown(ids, hs, size, y, score);
+      }
+    }
+    // take out the worst until the heap is empty, filling from the back
+    for(int n=size; n>1; n--) {
+      int worstId = ids[0];
+      int worstScore = hs[0];
+      siftDown(ids, hs, n-1, ids[n-1], hs[n-1]);
+      ids[n-1] = worstId;
+      hs[n-1] = worstScore;
+    }
+    return size;
+  }
+  
+  // put the element at the top of the heap of the given size and sift it down
+  private static void siftDown(int[] ids, int[] hs, int size, int id, int score) {
+    int pos = 0;
+    while(true) {
+      int child = 2*pos+1;
+      if(child >= size) {
+        break;
+      }
+      if(child+1 < size && isWorse(hs[child+1], ids[child+1], hs[child], ids[child])) {
+        child++;
+      }
+      if(!isWorse(hs[child], ids[child], score, id)) {
+        break;
+      }
+      ids[pos] = ids[child];
+      hs[pos] = hs[child];
+      pos = child;
+    }
+    ids[pos] = id;
+    hs[pos] = score;
+  }
+  
+  // a lower score is worse, for the same score the larger id is worse
+  private static boolean isWorse(int score1, int id1, int score2, int id2) {
+    return score1 < score2 || (score1 == score2 && id1 > id2);
+  }
+  
+  private class Scratch {
+    final int[] scores = new int[nrNodes];
+    final boolean[] isTouched = new boolean[nrNodes];
+    final int[] touched = new int[nrNodes];
+    final int[] heapIds = new int[k];
+    final int[] heapScores = new int[k];
+    final EdgeCursor cursor1 = gstore.newEdgeCursor();
+    final EdgeCursor cursor2 = gstore.newEdgeCursor();
+    final StringBuilder output = new StringBuilder();
+  }
+  
+  private class Range extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int from, to;
+    Range(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+    @Override
+    protected void compute() {
+      if(to - from <= RANGE_SIZE) {
+        try {
+          processRange(from, to);
+        } catch(IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new Range(from, mid), new Range(mid, to));
+      }
+    }
+  }
+  
+  // to get an IOException out of a task
+  private static class UncheckedIOException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    final IOException cause;
+    UncheckedIOException(IOException cause) {
+      super(cause);
+      this.cause = cause;
+    }
+  }
+}
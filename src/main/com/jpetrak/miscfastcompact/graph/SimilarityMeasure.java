@@ -0,0 +1,21 @@
+package com.jpetrak.miscfastcompact.graph;
+
+/**
+ * The similarity measures for the neighbourhoods of two nodes computed by
+ * NeighborhoodSimilarity. In the unweighted case, A and B are the sets of 
+ * neighbours of the two nodes, in the weighted case each neighbour has 
+ * the edge data as its weight and the intersection uses the smaller weight.
+ * 
+ * @author Johann Petrak
+ */
+public enum SimilarityMeasure {
+  /** |A and B| / |A or B| */
+  JACCARD,
+  /** |A and B| / sqrt(|A|*|B|), or the cosine of the weight vectors */
+  COSINE,
+  /** |A and B| / min(|A|,|B|) */
+  OVERLAP,
+  /** sum over the common neighbours z of 1/log(degree(z)), where 
+   * the degree of z is in the other direction */
+  ADAMIC_ADAR
+}
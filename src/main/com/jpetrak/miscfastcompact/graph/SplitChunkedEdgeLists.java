@@ -0,0 +1,173 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import com.jpetrak.miscfastcompact.store.BigStoreOfInts;
+import com.jpetrak.miscfastcompact.store.StoreOfInts;
+
+/**
+ * Modifiable edge lists like ChunkedEdgeLists, but the ids of the other 
+ * nodes and the edge data are kept in two separate stores: the edge list
+ * of a node is one chunk of node ids in the first store and a chunk of 
+ * edge data of the same length at the same index in the second store.
+ * Searching and intersecting edge lists only needs to read the node ids, 
+ * which are now contiguous, so each cache line fetched contains twice as 
+ * many of them.
+ * 
+ * @author Johann Petrak
+ */
+public class SplitChunkedEdgeLists extends ModifiableEdgeLists {
+  private static final long serialVersionUID = 1L;
+  
+  private StoreOfInts idStore;
+  private StoreOfInts dataStore;
+  private PagedIntList id2chunk;
+  private long nrEdges = 0;
+  // the segment shift for the big edge lists, see ensureCapacity
+  private int segmentShift;
+  // buffers for splitting the interleaved chunks passed to setEdges
+  private transient int[] idBuffer;
+  private transient int[] dataBuffer;
+  
+  public SplitChunkedEdgeLists() {
+    this(BigStoreOfInts.DEFAULT_SEGMENT_SHIFT);
+  }
+  
+  /**
+   * Create empty edge lists which switch to big split edge lists with 
+   * segments of 2^segmentShift ints when the stores get full.
+   * @param segmentShift 
+   */
+  public SplitChunkedEdgeLists(int segmentShift) {
+    this(new StoreOfInts(), new StoreOfInts(), new PagedIntList(), 0, segmentShift);
+  }
+  
+  private SplitChunkedEdgeLists(StoreOfInts idStore, StoreOfInts dataStore, 
+          PagedIntList id2chunk, long nrEdges, int segmentShift) {
+    this.idStore = idStore;
+    this.dataStore = dataStore;
+    this.id2chunk = id2chunk;
+    this.nrEdges = nrEdges;
+    this.segmentShift = segmentShift;
+  }
+  
+  @Override
+  public void addNode() {
+    id2chunk.add(-1);
+  }
+  
+  @Override
+  public void setEdges(int nodeId, int[] chunk, int length) {
+    int n = length/2;
+    if(idBuffer == null || idBuffer.length < n) {
+      idBuffer = new int[Math.max(n, 16)];
+      dataBuffer = new int[idBuffer.length];
+    }
+    for(int i=0; i<n; i++) {
+      idBuffer[i] = chunk[2*i];
+      dataBuffer[i] = chunk[2*i+1];
+    }
+    int old = id2chunk.getInt(nodeId);
+    if(old >= 0) {
+      nrEdges -= idStore.getSize(old);
+    }
+    // both stores always get chunks of the same length, so the indices 
+    // are the same
+    int index = idStore.addData(idBuffer, n);
+    dataStore.addData(dataBuffer, n);
+    id2chunk.set(nodeId, index);
+    nrEdges += n;
+  }
+  
+  /**
+   * The index of the chunks for the node or -1.
+   * @param nodeId
+   * @return 
+   */
+  public int getChunkIndex(int nodeId) {
+    return id2chunk.getInt(nodeId);
+  }
+  
+  /**
+   * The store which contains all the chunks of node ids.
+   * @return 
+   */
+  public StoreOfInts getIdStore() {
+    return idStore;
+  }
+  
+  /**
+   * The store which contains all the chunks of edge data.
+   * @return 
+   */
+  public StoreOfInts getDataStore() {
+    return dataStore;
+  }
+  
+  @Override
+  public ModifiableEdgeLists ensureCapacity(int length) {
+    if(idStore.size() + (long)length/2 + 1 <= ChunkedEdgeLists.MAX_STORE_SIZE) {
+      return this;
+    }
+    return toBig();
+  }
+  
+  // the big split edge lists take over the arrays of the stores without 
+  // copying any edges, these edge lists must not be used any more after that
+  BigSplitChunkedEdgeLists toBig() {
+    return new BigSplitChunkedEdgeLists(
+            new BigStoreOfInts(segmentShift, idStore.getBackingArray(), idStore.size()),
+            new BigStoreOfInts(segmentShift, dataStore.getBackingArray(), dataStore.size()),
+            id2chunk, nrEdges);
+  }
+  
+  @Override
+  public ModifiableEdgeLists newEmpty() {
+    return new SplitChunkedEdgeLists(segmentShift);
+  }
+  
+  @Override
+  public ModifiableEdgeLists snapshot() {
+    return new SplitChunkedEdgeLists(idStore.snapshot(), dataStore.snapshot(), id2chunk.snapshot(), 
+            nrEdges, segmentShift);
+  }
+  
+  @Override
+  public EdgeCursor newCursor() {
+    return new ArrayEdgeCursor();
+  }
+
+  @Override
+  public boolean position(int nodeId, EdgeCursor cursor) {
+    ArrayEdgeCursor c = (ArrayEdgeCursor)cursor;
+    int chunkIndex = id2chunk.getInt(nodeId);
+    if(chunkIndex < 0) {
+      c.clear();
+      return false;
+    }
+    int[] ids = idStore.getBackingArray();
+    c.set(ids, chunkIndex+1, dataStore.getBackingArray(), chunkIndex+1, 1, ids[chunkIndex]);
+    return true;
+  }
+  
+  @Override
+  public int getDegree(int nodeId) {
+    int chunkIndex = id2chunk.getInt(nodeId);
+    return chunkIndex < 0 ? 0 : idStore.getSize(chunkIndex);
+  }
+
+  @Override
+  public int getNumberOfNodes() {
+    return id2chunk.size();
+  }
+
+  @Override
+  public long getNumberOfEdges() {
+    return nrEdges;
+  }
+  
+  @Override
+  public void addFootprint(String prefix, MemoryFootprint footprint) {
+    footprint.add(prefix+".idStore", idStore.getMemoryFootprint());
+    footprint.add(prefix+".dataStore", dataStore.getMemoryFootprint());
+    footprint.add(prefix+".id2chunk", id2chunk.getMemoryFootprint());
+  }
+}
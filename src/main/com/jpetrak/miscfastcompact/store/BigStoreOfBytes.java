@@ -0,0 +1,286 @@
+package com.jpetrak.miscfastcompact.store;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A store like StoreOfBytes, but with long indexes, so it can hold more than
+ * 2^31 bytes. The bytes are kept in segments of 2^segmentShift bytes each
+ * (2^27 by default, i.e. 128MB) in the same way as for BigStoreOfChars:
+ * only the last segment grows by copying and a chunk of data never spans
+ * two segments, so it can be accessed directly in the array of its segment,
+ * see getSegment and getOffset.
+ * <p>
+ * Unlike StoreOfBytes, the length of variable length data is stored in
+ * 1 to 5 bytes, 7 bits per byte with the lowest bits first, so short data
+ * like names needs only a single byte for the length. Use getDataOffset
+ * to find the first byte of the data in the segment array.
+ *
+ * @author Johann Petrak
+ */
+public class BigStoreOfBytes implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_SEGMENT_SHIFT = 27;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int segmentShift;
+  private final int segmentSize;
+  private final int segmentMask;
+  private byte[][] segments = new byte[4][];
+  private int nrSegments = 0;
+  // the used size of the last segment
+  private int lastSize = 0;
+  // true for a view created by snapshot
+  private boolean readOnly = false;
+
+  public BigStoreOfBytes() {
+    this(DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create a store with segments of 2^segmentShift bytes.
+   * @param segmentShift
+   */
+  public BigStoreOfBytes(int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 30) {
+      throw new RuntimeException("Segment shift must be between 4 and 30 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    segmentSize = 1 << segmentShift;
+    segmentMask = segmentSize-1;
+  }
+
+  /**
+   * Create a copy of another store, which is independent of the other one.
+   * @param other
+   */
+  public BigStoreOfBytes(BigStoreOfBytes other) {
+    this(other.segmentShift);
+    segments = new byte[Math.max(4, other.nrSegments)][];
+    for(int i=0; i<other.nrSegments; i++) {
+      segments[i] = other.segments[i].clone();
+    }
+    nrSegments = other.nrSegments;
+    lastSize = other.lastSize;
+  }
+
+  /**
+   * The index where the next data will be stored, which is the number of
+   * bytes stored including the unused ends of full segments.
+   * @return
+   */
+  public long size() {
+    return nrSegments == 0 ? 0 : ((long)(nrSegments-1) << segmentShift) + lastSize;
+  }
+
+  public int getSegmentShift() {
+    return segmentShift;
+  }
+
+  /**
+   * Create a read-only view of the data stored so far, which shares the 
+   * segments with this store, so this only copies the array of segments. 
+   * Data added to this store later is not visible in the view, but data 
+   * changed with replaceFixedLengthData is. Data cannot be added to the view.
+   * @return
+   */
+  public BigStoreOfBytes snapshot() {
+    BigStoreOfBytes view = new BigStoreOfBytes(segmentShift);
+    view.segments = Arrays.copyOf(segments, Math.max(nrSegments, 1));
+    view.nrSegments = nrSegments;
+    view.lastSize = lastSize;
+    view.readOnly = true;
+    return view;
+  }
+
+  /**
+   * The number of bytes of heap memory allocated for the segments.
+   * @return
+   */
+  public long getMemoryFootprint() {
+    long bytes = Utils.arrayBytes(segments.length, 4);
+    for(int i=0; i<nrSegments; i++) {
+      bytes += Utils.arrayBytes(segments[i].length, 1);
+    }
+    return bytes;
+  }
+
+  // ********** VARIABLE LENGTH DATA METHODS **********
+
+  /**
+   * Add variable length data and get back the index under which we can get it back.
+   * @param data
+   * @return
+   */
+  public long addData(byte[] data) {
+    return addData(data, data.length);
+  }
+
+  /**
+   * Add the first length elements of the array as variable length data and
+   * get back the index under which we can get it back.
+   * @param data
+   * @param length
+   * @return
+   */
+  public long addData(byte[] data, int length) {
+    int header = 1;
+    while(header < 5 && (length >>> (7*header)) != 0) {
+      header++;
+    }
+    long index = reserve(header+length);
+    byte[] segment = segments[nrSegments-1];
+    int offset = (int)(index & segmentMask);
+    int l = length;
+    for(int i=0; i<header-1; i++) {
+      segment[offset++] = (byte)((l & 0x7f) | 0x80);
+      l >>>= 7;
+    }
+    segment[offset++] = (byte)l;
+    System.arraycopy(data, 0, segment, offset, length);
+    return index;
+  }
+
+  /**
+   * Get variable length data from the given index.
+   * @param index
+   * @return
+   */
+  public byte[] getData(long index) {
+    int offset = getDataOffset(index);
+    return Arrays.copyOfRange(getSegment(index), offset, offset+getSize(index));
+  }
+
+  /**
+   * Get the size of the variable data stored at the given index.
+   * @param index
+   * @return
+   */
+  public int getSize(long index) {
+    byte[] segment = getSegment(index);
+    int offset = getOffset(index);
+    int size = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = segment[offset++];
+      size |= (b & 0x7f) << shift;
+      shift += 7;
+    } while(b < 0);
+    return size;
+  }
+
+  /**
+   * The position of the first byte of the variable length data stored at
+   * index in the array of its segment, i.e. after the length.
+   * @param index
+   * @return
+   */
+  public int getDataOffset(long index) {
+    byte[] segment = getSegment(index);
+    int offset = getOffset(index);
+    while(segment[offset++] < 0) {
+      // skip the bytes of the length
+    }
+    return offset;
+  }
+
+  /**
+   * The array of the segment which contains the chunk stored at index. The
+   * array must not be modified and is only valid until the next time data
+   * gets added to the store.
+   * @param index
+   * @return
+   */
+  public byte[] getSegment(long index) {
+    return segments[(int)(index >>> segmentShift)];
+  }
+
+  /**
+   * The position of the chunk stored at index in the array of its segment.
+   * @param index
+   * @return
+   */
+  public int getOffset(long index) {
+    return (int)(index & segmentMask);
+  }
+
+  // ********** FIXED LENGTH DATA METHODS **********
+
+  /**
+   * Add fixed length data, without storing the length, and get back the
+   * index under which we can get it back with getFixedLengthData.
+   * @param data
+   * @return
+   */
+  public long addFixedLengthData(byte[] data) {
+    return addFixedLengthData(data, data.length);
+  }
+
+  /**
+   * Add the first length bytes of data as fixed length data.
+   * @param data
+   * @param length
+   * @return
+   */
+  public long addFixedLengthData(byte[] data, int length) {
+    long index = reserve(length);
+    System.arraycopy(data, 0, segments[nrSegments-1], (int)(index & segmentMask), length);
+    return index;
+  }
+
+  /**
+   * Replace a block of fixed length data with new data of exactly the same
+   * length.
+   * @param index
+   * @param data
+   * @return
+   */
+  public long replaceFixedLengthData(long index, byte[] data) {
+    checkNotReadOnly();
+    System.arraycopy(data, 0, getSegment(index), getOffset(index), data.length);
+    return index;
+  }
+
+  /**
+   * Get fixed length data of the given length from the given index.
+   * @param index
+   * @param length
+   * @return
+   */
+  public byte[] getFixedLengthData(long index, int length) {
+    int offset = getOffset(index);
+    return Arrays.copyOfRange(getSegment(index), offset, offset+length);
+  }
+
+  private void checkNotReadOnly() {
+    if(readOnly) {
+      throw new RuntimeException("Cannot modify a snapshot of a store");
+    }
+  }
+
+  // make room for n bytes in one segment and return the index of the first
+  private long reserve(int n) {
+    checkNotReadOnly();
+    if(n > segmentSize) {
+      throw new RuntimeException("Chunk of "+n+" bytes is larger than the segment size "+segmentSize);
+    }
+    if(nrSegments == 0 || lastSize + n > segmentSize) {
+      if(nrSegments == segments.length) {
+        segments = Arrays.copyOf(segments, 2*segments.length);
+      }
+      segments[nrSegments++] = new byte[Math.max(Math.min(INITIAL_CAPACITY, segmentSize), n)];
+      lastSize = 0;
+    }
+    byte[] last = segments[nrSegments-1];
+    if(lastSize + n > last.length) {
+      int capacity = (int)Math.min(segmentSize, Math.max(2L*last.length, lastSize+n));
+      segments[nrSegments-1] = Arrays.copyOf(last, capacity);
+    }
+    long index = ((long)(nrSegments-1) << segmentShift) + lastSize;
+    lastSize += n;
+    return index;
+  }
+}
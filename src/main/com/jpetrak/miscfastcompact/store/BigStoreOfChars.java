@@ -0,0 +1,206 @@
+package com.jpetrak.miscfastcompact.store;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A store like StoreOfChars, but with long indexes, so it can hold more than
+ * 2^31 chars. Only the variable and fixed length data methods are supported,
+ * not the list methods. The chars are kept in segments of 2^segmentShift chars each
+ * (2^27 by default, i.e. 256MB). Only the last segment grows by copying,
+ * all the others stay where they are, so adding data never copies more
+ * than one segment and the memory needed while growing is at most one
+ * segment more than the data.
+ * <p>
+ * A chunk of data (including the length for variable length data) never
+ * spans two segments: if it does not fit into the rest of the last segment,
+ * it is stored at the start of a new segment and the rest of the old one
+ * stays unused. A chunk can therefore be accessed directly in the array of
+ * its segment, see getSegment and getOffset, and is limited to the size
+ * of a segment.
+ *
+ * @author Johann Petrak
+ */
+public class BigStoreOfChars implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_SEGMENT_SHIFT = 27;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int segmentShift;
+  private final int segmentSize;
+  private final int segmentMask;
+  private char[][] segments = new char[4][];
+  private int nrSegments = 0;
+  // the used size of the last segment
+  private int lastSize = 0;
+
+  public BigStoreOfChars() {
+    this(DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create a store with segments of 2^segmentShift chars.
+   * @param segmentShift
+   */
+  public BigStoreOfChars(int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 30) {
+      throw new RuntimeException("Segment shift must be between 4 and 30 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    segmentSize = 1 << segmentShift;
+    segmentMask = segmentSize-1;
+  }
+
+  /**
+   * The index where the next data will be stored, which is the number of
+   * chars stored including the unused ends of full segments.
+   * @return
+   */
+  public long size() {
+    return nrSegments == 0 ? 0 : ((long)(nrSegments-1) << segmentShift) + lastSize;
+  }
+
+  /**
+   * The number of bytes of heap memory allocated for the segments.
+   * @return
+   */
+  public long getMemoryFootprint() {
+    long bytes = Utils.arrayBytes(segments.length, 4);
+    for(int i=0; i<nrSegments; i++) {
+      bytes += Utils.arrayBytes(segments[i].length, 2);
+    }
+    return bytes;
+  }
+
+  // ********** VARIABLE LENGTH DATA METHODS **********
+
+  /**
+   * Add variable length data and get back the index under which we can get it back.
+   * @param data
+   * @return
+   */
+  public long addData(char[] data) {
+    return addData(data, data.length);
+  }
+
+  /**
+   * Add the first length elements of the array as variable length data and
+   * get back the index under which we can get it back.
+   * @param data
+   * @param length
+   * @return
+   */
+  public long addData(char[] data, int length) {
+    long index = reserve(length+2);
+    char[] segment = segments[nrSegments-1];
+    int offset = (int)(index & segmentMask);
+    // the length is split into two chars
+    segment[offset] = (char)(length >>> 16);
+    segment[offset+1] = (char)length;
+    System.arraycopy(data, 0, segment, offset+2, length);
+    return index;
+  }
+
+  /**
+   * Get variable length data from the given index.
+   * @param index
+   * @return
+   */
+  public char[] getData(long index) {
+    char[] segment = getSegment(index);
+    int offset = getOffset(index);
+    return Arrays.copyOfRange(segment, offset+2, offset+2+Utils.twoChars2Int(segment[offset], segment[offset+1]));
+  }
+
+  /**
+   * Get the size of the variable data stored at the given index.
+   * @param index
+   * @return
+   */
+  public int getSize(long index) {
+    char[] segment = getSegment(index);
+    int offset = getOffset(index);
+    return Utils.twoChars2Int(segment[offset], segment[offset+1]);
+  }
+
+  /**
+   * The array of the segment which contains the chunk stored at index. The
+   * array must not be modified and is only valid until the next time data
+   * gets added to the store.
+   * @param index
+   * @return
+   */
+  public char[] getSegment(long index) {
+    return segments[(int)(index >>> segmentShift)];
+  }
+
+  /**
+   * The position of the chunk stored at index in the array of its segment.
+   * @param index
+   * @return
+   */
+  public int getOffset(long index) {
+    return (int)(index & segmentMask);
+  }
+
+  // ********** FIXED LENGTH DATA METHODS **********
+
+  /**
+   * Add fixed length data, without storing the length, and get back the
+   * index under which we can get it back with getFixedLengthData.
+   * @param data
+   * @return
+   */
+  public long addFixedLengthData(char[] data) {
+    long index = reserve(data.length);
+    System.arraycopy(data, 0, segments[nrSegments-1], (int)(index & segmentMask), data.length);
+    return index;
+  }
+
+  /**
+   * Replace a block of fixed length data with new data of exactly the same
+   * length.
+   * @param index
+   * @param data
+   * @return
+   */
+  public long replaceFixedLengthData(long index, char[] data) {
+    System.arraycopy(data, 0, getSegment(index), getOffset(index), data.length);
+    return index;
+  }
+
+  /**
+   * Get fixed length data of the given length from the given index.
+   * @param index
+   * @param length
+   * @return
+   */
+  public char[] getFixedLengthData(long index, int length) {
+    int offset = getOffset(index);
+    return Arrays.copyOfRange(getSegment(index), offset, offset+length);
+  }
+
+  // make room for n chars in one segment and return the index of the first
+  private long reserve(int n) {
+    if(n > segmentSize) {
+      throw new RuntimeException("Chunk of "+n+" chars is larger than the segment size "+segmentSize);
+    }
+    if(nrSegments == 0 || lastSize + n > segmentSize) {
+      if(nrSegments == segments.length) {
+        segments = Arrays.copyOf(segments, 2*segments.length);
+      }
+      segments[nrSegments++] = new char[Math.max(Math.min(INITIAL_CAPACITY, segmentSize), n)];
+      lastSize = 0;
+    }
+    char[] last = segments[nrSegments-1];
+    if(lastSize + n > last.length) {
+      int capacity = (int)Math.min(segmentSize, Math.max(2L*last.length, lastSize+n));
+      segments[nrSegments-1] = Arrays.copyOf(last, capacity);
+    }
+    long index = ((long)(nrSegments-1) << segmentShift) + lastSize;
+    lastSize += n;
+    return index;
+  }
+}
@@ -0,0 +1,265 @@
+package com.jpetrak.miscfastcompact.store;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A store like StoreOfInts, but with long indexes, so it can hold more than
+ * 2^31 ints. The ints are kept in segments of 2^segmentShift ints each
+ * (2^27 by default, i.e. 512MB). Only the last segment grows by copying,
+ * all the others stay where they are, so adding data never copies more
+ * than one segment and the memory needed while growing is at most one
+ * segment more than the data.
+ * <p>
+ * A chunk of data (including the length for variable length data) never
+ * spans two segments: if it does not fit into the rest of the last segment,
+ * it is stored at the start of a new segment and the rest of the old one
+ * stays unused. A chunk can therefore be accessed directly in the array of
+ * its segment, see getSegment and getOffset, and is limited to the size
+ * of a segment.
+ * <p>
+ * A store can also start with the array of a full StoreOfInts, which it 
+ * takes over without copying: that array serves all the indexes up to its
+ * size rounded up to whole segments and new data goes into new segments 
+ * after it.
+ *
+ * @author Johann Petrak
+ */
+public class BigStoreOfInts implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_SEGMENT_SHIFT = 27;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final int segmentShift;
+  private final int segmentSize;
+  private final int segmentMask;
+  private int[][] segments = new int[4][];
+  private int nrSegments = 0;
+  // the used size of the last segment
+  private int lastSize = 0;
+  // the indexes below this are positions in the array taken over from a 
+  // StoreOfInts, which is in all the segments up to there
+  private long headSize = 0;
+  // true for a view created by snapshot
+  private boolean readOnly = false;
+
+  public BigStoreOfInts() {
+    this(DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create a store with segments of 2^segmentShift ints.
+   * @param segmentShift
+   */
+  public BigStoreOfInts(int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 30) {
+      throw new RuntimeException("Segment shift must be between 4 and 30 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    segmentSize = 1 << segmentShift;
+    segmentMask = segmentSize-1;
+  }
+
+  /**
+   * Create a store with segments of 2^segmentShift ints whose first chunks
+   * are the ones in the first size elements of data, usually the backing 
+   * array of a StoreOfInts, under the same indexes. The array is used 
+   * directly and must not be modified any more.
+   * @param segmentShift
+   * @param data
+   * @param size 
+   */
+  public BigStoreOfInts(int segmentShift, int[] data, int size) {
+    this(segmentShift);
+    int n = (int)(((long)size + segmentMask) >>> segmentShift);
+    if(n > 0) {
+      segments = new int[Math.max(4, 2*n)][];
+      Arrays.fill(segments, 0, n, data);
+      nrSegments = n;
+      // the last segment of the array counts as full
+      lastSize = segmentSize;
+      headSize = (long)n << segmentShift;
+    }
+  }
+
+  /**
+   * The index where the next data will be stored, which is the number of
+   * ints stored including the unused ends of full segments.
+   * @return
+   */
+  public long size() {
+    return nrSegments == 0 ? 0 : ((long)(nrSegments-1) << segmentShift) + lastSize;
+  }
+
+  public int getSegmentShift() {
+    return segmentShift;
+  }
+
+  /**
+   * Create a read-only view of the data stored so far, which shares the 
+   * segments with this store, so this only copies the array of segments. 
+   * Data added to this store later is not visible in the view, but data 
+   * changed with replaceFixedLengthData is. Data cannot be added to the view.
+   * @return
+   */
+  public BigStoreOfInts snapshot() {
+    BigStoreOfInts view = new BigStoreOfInts(segmentShift);
+    view.segments = Arrays.copyOf(segments, Math.max(nrSegments, 1));
+    view.nrSegments = nrSegments;
+    view.lastSize = lastSize;
+    view.headSize = headSize;
+    view.readOnly = true;
+    return view;
+  }
+
+  /**
+   * The number of bytes of heap memory allocated for the segments.
+   * @return
+   */
+  public long getMemoryFootprint() {
+    long bytes = Utils.arrayBytes(segments.length, 4);
+    for(int i=0; i<nrSegments; i++) {
+      // the segments of the array taken over are the same array
+      if(i == 0 || segments[i] != segments[i-1]) {
+        bytes += Utils.arrayBytes(segments[i].length, 4);
+      }
+    }
+    return bytes;
+  }
+
+  // ********** VARIABLE LENGTH DATA METHODS **********
+
+  /**
+   * Add variable length data and get back the index under which we can get it back.
+   * @param data
+   * @return
+   */
+  public long addData(int[] data) {
+    return addData(data, data.length);
+  }
+
+  /**
+   * Add the first length elements of the array as variable length data and
+   * get back the index under which we can get it back.
+   * @param data
+   * @param length
+   * @return
+   */
+  public long addData(int[] data, int length) {
+    long index = reserve(length+1);
+    int[] segment = segments[nrSegments-1];
+    int offset = (int)(index & segmentMask);
+    segment[offset] = length;
+    System.arraycopy(data, 0, segment, offset+1, length);
+    return index;
+  }
+
+  /**
+   * Get variable length data from the given index.
+   * @param index
+   * @return
+   */
+  public int[] getData(long index) {
+    int[] segment = getSegment(index);
+    int offset = getOffset(index);
+    return Arrays.copyOfRange(segment, offset+1, offset+1+segment[offset]);
+  }
+
+  /**
+   * Get the size of the variable data stored at the given index.
+   * @param index
+   * @return
+   */
+  public int getSize(long index) {
+    return getSegment(index)[getOffset(index)];
+  }
+
+  /**
+   * The array of the segment which contains the chunk stored at index. The
+   * array must not be modified and is only valid until the next time data
+   * gets added to the store.
+   * @param index
+   * @return
+   */
+  public int[] getSegment(long index) {
+    return segments[(int)(index >>> segmentShift)];
+  }
+
+  /**
+   * The position of the chunk stored at index in the array of its segment.
+   * @param index
+   * @return
+   */
+  public int getOffset(long index) {
+    return index < headSize ? (int)index : (int)(index & segmentMask);
+  }
+
+  // ********** FIXED LENGTH DATA METHODS **********
+
+  /**
+   * Add fixed length data, without storing the length, and get back the
+   * index under which we can get it back with getFixedLengthData.
+   * @param data
+   * @return
+   */
+  public long addFixedLengthData(int[] data) {
+    long index = reserve(data.length);
+    System.arraycopy(data, 0, segments[nrSegments-1], (int)(index & segmentMask), data.length);
+    return index;
+  }
+
+  /**
+   * Replace a block of fixed length data with new data of exactly the same
+   * length.
+   * @param index
+   * @param data
+   * @return
+   */
+  public long replaceFixedLengthData(long index, int[] data) {
+    checkNotReadOnly();
+    System.arraycopy(data, 0, getSegment(index), getOffset(index), data.length);
+    return index;
+  }
+
+  /**
+   * Get fixed length data of the given length from the given index.
+   * @param index
+   * @param length
+   * @return
+   */
+  public int[] getFixedLengthData(long index, int length) {
+    int offset = getOffset(index);
+    return Arrays.copyOfRange(getSegment(index), offset, offset+length);
+  }
+
+  private void checkNotReadOnly() {
+    if(readOnly) {
+      throw new RuntimeException("Cannot modify a snapshot of a store");
+    }
+  }
+
+  // make room for n ints in one segment and return the index of the first
+  private long reserve(int n) {
+    checkNotReadOnly();
+    if(n > segmentSize) {
+      throw new RuntimeException("Chunk of "+n+" ints is larger than the segment size "+segmentSize);
+    }
+    if(nrSegments == 0 || lastSize + n > segmentSize) {
+      if(nrSegments == segments.length) {
+        segments = Arrays.copyOf(segments, 2*segments.length);
+      }
+      segments[nrSegments++] = new int[Math.max(Math.min(INITIAL_CAPACITY, segmentSize), n)];
+      lastSize = 0;
+    }
+    int[] last = segments[nrSegments-1];
+    if(lastSize + n > last.length) {
+      int capacity = (int)Math.min(segmentSize, Math.max(2L*last.length, lastSize+n));
+      segments[nrSegments-1] = Arrays.copyOf(last, capacity);
+    }
+    long index = ((long)(nrSegments-1) << segmentShift) + lastSize;
+    lastSize += n;
+    return index;
+  }
+}
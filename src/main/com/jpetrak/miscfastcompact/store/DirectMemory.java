@@ -0,0 +1,80 @@
+package com.jpetrak.miscfastcompact.store;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Allocating and freeing the direct buffers of the off-heap stores. 
+ * Normally the memory of a direct buffer only gets freed after the garbage
+ * collector has found the buffer to be unreachable, which may take a long
+ * time since the buffer object itself is tiny. The free method tries to 
+ * free the memory right away, using sun.misc.Unsafe.invokeCleaner (Java 9
+ * and later) or the cleaner of the buffer (Java 7 and 8). If neither is
+ * available, the memory is left to the garbage collector.
+ * 
+ * @author Johann Petrak
+ */
+class DirectMemory {
+  
+  // Unsafe.invokeCleaner and the Unsafe instance for Java 9 and later, 
+  // looked up once, both null if not available
+  private static final Method INVOKE_CLEANER;
+  private static final Object UNSAFE;
+  
+  static {
+    Method invokeCleaner = null;
+    Object unsafe = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+    } catch(Exception ex) {
+      // not Java 9 or later, free will try the cleaner of the buffer
+      invokeCleaner = null;
+      unsafe = null;
+    }
+    INVOKE_CLEANER = invokeCleaner;
+    UNSAFE = unsafe;
+  }
+  
+  private DirectMemory() {}
+  
+  static ByteBuffer allocate(long bytes) {
+    if(bytes > Integer.MAX_VALUE) {
+      throw new RuntimeException("Segment too large for a direct buffer: "+bytes);
+    }
+    return ByteBuffer.allocateDirect((int)bytes).order(ByteOrder.nativeOrder());
+  }
+  
+  /**
+   * Free the memory of the buffer, which must not be used at all after this!
+   * @param buffer 
+   */
+  static void free(ByteBuffer buffer) {
+    if(buffer == null || !buffer.isDirect()) {
+      return;
+    }
+    if(INVOKE_CLEANER != null) {
+      try {
+        INVOKE_CLEANER.invoke(UNSAFE, buffer);
+      } catch(Exception ex) {
+        // leave it to the garbage collector
+      }
+      return;
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if(cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch(Exception ex) {
+      // leave it to the garbage collector
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package com.jpetrak.miscfastcompact.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only view of a region of a file as an array of bytes, ints or 
+ * longs, using memory mapping. Since a single mapped buffer is limited to 
+ * 2GB, the region is mapped in pages of 1GB, so the region and the indexes
+ * can be larger than MAXINT. The data in the file must be little endian and
+ * ints and longs can only be accessed by their element index, i.e. they 
+ * must be aligned relative to the start of the region.
+ * <p>
+ * Nothing of the data is read into the heap: the operating system loads 
+ * the pages of the file when they are accessed and several processes which 
+ * map the same file share the same pages of memory.
+ * 
+ * @author Johann Petrak
+ */
+public class MappedArray {
+  private static final int PAGE_SHIFT = 30;
+  private static final long PAGE_SIZE = 1L << PAGE_SHIFT;
+  private static final long PAGE_MASK = PAGE_SIZE - 1;
+  
+  private final ByteBuffer[] pages;
+  private final long length;
+  
+  /**
+   * Map length bytes of the file, starting at position.
+   * @param channel
+   * @param position
+   * @param length
+   * @throws IOException 
+   */
+  public MappedArray(FileChannel channel, long position, long length) throws IOException {
+    this.length = length;
+    int nrPages = (int)((length + PAGE_SIZE - 1) >>> PAGE_SHIFT);
+    pages = new ByteBuffer[nrPages];
+    for(int i=0; i<nrPages; i++) {
+      long start = ((long)i) << PAGE_SHIFT;
+      long size = Math.min(PAGE_SIZE, length - start);
+      pages[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, size);
+      pages[i].order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+  
+  /**
+   * Size of the region in bytes.
+   * @return 
+   */
+  public long size() {
+    return length;
+  }
+  
+  public byte getByte(long index) {
+    return pages[(int)(index >>> PAGE_SHIFT)].get((int)(index & PAGE_MASK));
+  }
+  
+  /**
+   * Get the int at the given int index, i.e. at byte position 4*index.
+   * @param index
+   * @return 
+   */
+  public int getInt(long index) {
+    long pos = index << 2;
+    return pages[(int)(pos >>> PAGE_SHIFT)].getInt((int)(pos & PAGE_MASK));
+  }
+  
+  /**
+   * Get the long at the given long index, i.e. at byte position 8*index.
+   * @param index
+   * @return 
+   */
+  public long getLong(long index) {
+    long pos = index << 3;
+    return pages[(int)(pos >>> PAGE_SHIFT)].getLong((int)(pos & PAGE_MASK));
+  }
+  
+  /**
+   * Copy length bytes starting at byte index into the array.
+   * @param index
+   * @param data
+   * @param offset
+   * @param length 
+   */
+  public void getBytes(long index, byte[] data, int offset, int length) {
+    for(int i=0; i<length; i++) {
+      data[offset+i] = getByte(index+i);
+    }
+  }
+}
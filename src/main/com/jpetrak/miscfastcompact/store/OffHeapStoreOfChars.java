@@ -0,0 +1,353 @@
+package com.jpetrak.miscfastcompact.store;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A store like StoreOfChars with long indexes, which keeps the data outside
+ * of the Java heap in direct buffers, in the same way as OffHeapStoreOfInts:
+ * segments of 2^segmentShift chars are added as needed, nothing is ever
+ * copied, close frees all the memory and the store is not thread-safe.
+ * <p>
+ * Variable length data is stored with the length as two chars before the
+ * data, just like in StoreOfChars. Lists are stored like in StoreOfChars,
+ * with a first block of the length, the number of elements, the index of
+ * the directory and the data of the first element, and a directory of the
+ * indices of the other elements, which are stored as variable length data.
+ * Since indices are longs, they take four chars here.
+ *
+ * @author Johann Petrak
+ */
+public class OffHeapStoreOfChars implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_SEGMENT_SHIFT = 22;
+
+  private final int segmentShift;
+  private final int segmentMask;
+  private transient ByteBuffer[] segments;
+  private transient int nrSegments;
+  private transient long size;
+
+  public OffHeapStoreOfChars() {
+    this(DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create a store which allocates segments of 2^segmentShift chars.
+   * @param segmentShift
+   */
+  public OffHeapStoreOfChars(int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 29) {
+      throw new RuntimeException("Segment shift must be between 4 and 29 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    segmentMask = (1 << segmentShift)-1;
+    segments = new ByteBuffer[4];
+  }
+
+  /**
+   * The number of chars stored, which is also the index of the next data.
+   * @return
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * The number of bytes of off-heap memory allocated.
+   * @return
+   */
+  public long getOffHeapBytes() {
+    return ((long)nrSegments << segmentShift) * 2;
+  }
+
+  /**
+   * The number of bytes of heap memory used, which is only the array of
+   * segments.
+   * @return
+   */
+  public long getMemoryFootprint() {
+    return segments == null ? 0 : Utils.arrayBytes(segments.length, 4);
+  }
+
+  /**
+   * Free all the off-heap memory. The store cannot be used after this.
+   */
+  public void close() {
+    ByteBuffer[] old = segments;
+    if(old == null) {
+      return;
+    }
+    // make sure that any further access fails before freeing the memory
+    segments = null;
+    for(int i=0; i<nrSegments; i++) {
+      DirectMemory.free(old[i]);
+      old[i] = null;
+    }
+    nrSegments = 0;
+    size = 0;
+  }
+
+  public boolean isClosed() {
+    return segments == null;
+  }
+
+  /**
+   * The char at the given index.
+   * @param index
+   * @return
+   */
+  public char getChar(long index) {
+    return segments[(int)(index >>> segmentShift)].getChar(((int)index & segmentMask) << 1);
+  }
+
+  private void setChar(long index, char value) {
+    segments[(int)(index >>> segmentShift)].putChar(((int)index & segmentMask) << 1, value);
+  }
+
+  private int getTwoCharInt(long index) {
+    return Utils.twoChars2Int(getChar(index), getChar(index+1));
+  }
+
+  private void setTwoCharInt(long index, int value) {
+    setChar(index, (char)(value >>> 16));
+    setChar(index+1, (char)value);
+  }
+
+  private long getFourCharLong(long index) {
+    return ((long)getTwoCharInt(index) << 32) | (getTwoCharInt(index+2) & 0xFFFFFFFFL);
+  }
+
+  private void setFourCharLong(long index, long value) {
+    setTwoCharInt(index, (int)(value >>> 32));
+    setTwoCharInt(index+2, (int)value);
+  }
+
+  private void setChars(long index, char[] data) {
+    for(int i=0; i<data.length; i++) {
+      setChar(index+i, data[i]);
+    }
+  }
+
+  // ********** VARIABLE LENGTH DATA METHODS **********
+
+  /**
+   * Add variable length data and get back the index under which we can get it back.
+   * @param data
+   * @return
+   */
+  public long addData(char[] data) {
+    long index = reserve(data.length+2);
+    setTwoCharInt(index, data.length);
+    setChars(index+2, data);
+    return index;
+  }
+
+  public char[] getData(long index) {
+    return getFixedLengthData(index+2, getTwoCharInt(index));
+  }
+
+  public int getSize(long index) {
+    return getTwoCharInt(index);
+  }
+
+  // ********** FIXED LENGTH DATA METHODS **********
+
+  public long addFixedLengthData(char[] data) {
+    long index = reserve(data.length);
+    setChars(index, data);
+    return index;
+  }
+
+  /**
+   * Replace a block of fixed length data with new data of exactly the same
+   * length.
+   * @param index
+   * @param data
+   * @return
+   */
+  public long replaceFixedLengthData(long index, char[] data) {
+    setChars(index, data);
+    return index;
+  }
+
+  public char[] getFixedLengthData(long index, int length) {
+    char[] data = new char[length];
+    for(int i=0; i<length; i++) {
+      data[i] = getChar(index+i);
+    }
+    return data;
+  }
+
+  // ********** LIST DATA METHODS **********
+
+  // the number of entries of the first directory of a list
+  private static final int INITIAL_DIRECTORY_CAPACITY = 4;
+
+  /**
+   * Add a new list with one element and return its index.
+   * @param data
+   * @return
+   */
+  public long addListData(char[] data) {
+    long index = reserve(data.length+8);
+    setTwoCharInt(index, data.length+6);
+    setTwoCharInt(index+2, 1);
+    setFourCharLong(index+4, 0);
+    setChars(index+8, data);
+    return index;
+  }
+
+  /**
+   * Append an element to the list at the given index and return the index
+   * of the list. If the index is less than 0, this is identical to
+   * addListData(data) and creates a new list. This takes amortized
+   * constant time.
+   * @param index
+   * @param data
+   * @return
+   */
+  public long addListData(long index, char[] data) {
+    if(index < 0) {
+      return addListData(data);
+    }
+    int listSize = getListSize(index);
+    if(listSize < 1) {
+      throw new RuntimeException("Adding to a list, but size is <1: "+listSize);
+    }
+    long block = addData(data);
+    long dir = getFourCharLong(index+4);
+    int capacity = (dir == 0) ? 0 : getTwoCharInt(dir);
+    if(listSize-1 == capacity) {
+      dir = addDirectory(dir, capacity);
+      setFourCharLong(index+4, dir);
+    }
+    setFourCharLong(dir+2+4L*(listSize-1), block);
+    setTwoCharInt(index+2, listSize+1);
+    return index;
+  }
+
+  /**
+   * Return the list element at the given position of the list at index.
+   * This takes constant time for any element.
+   * @param index
+   * @param element
+   * @return
+   */
+  public char[] getListData(long index, int element) {
+    int listSize = getListSize(index);
+    if(element < 0 || element >= listSize) {
+      throw new RuntimeException("getting list data but element is not in 0.."+(listSize-1)+": "+element);
+    }
+    if(element == 0) {
+      return getFixedLengthData(index+8, getTwoCharInt(index)-6);
+    }
+    return getData(getElementIndex(index, element));
+  }
+
+  /**
+   * Find the position of the chunk among the elements of the list at index
+   * or return -1 if not found.
+   * @param index
+   * @param chunk
+   * @return
+   */
+  public int findListElementIndex(long index, char[] chunk) {
+    if(isChunkEqual(index+8, getTwoCharInt(index)-6, chunk)) {
+      return 0;
+    }
+    int listSize = getListSize(index);
+    for(int element=1; element<listSize; element++) {
+      long block = getElementIndex(index, element);
+      if(isChunkEqual(block+2, getTwoCharInt(block), chunk)) {
+        return element;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Return the number of elements of the list at the given index.
+   * @param index
+   * @return
+   */
+  public int getListSize(long index) {
+    return getTwoCharInt(index+2);
+  }
+
+  // the index of the variable length data of an element > 0 of the list
+  private long getElementIndex(long index, int element) {
+    return getFourCharLong(getFourCharLong(index+4)+2+4L*(element-1));
+  }
+
+  // add a directory with twice the capacity of the old one, or the initial
+  // capacity if there is none, copy the old entries and return its index
+  private long addDirectory(long oldDir, int oldCapacity) {
+    int capacity = (oldCapacity == 0) ? INITIAL_DIRECTORY_CAPACITY : 2*oldCapacity;
+    long dir = reserve(2+4*capacity);
+    setTwoCharInt(dir, capacity);
+    for(int i=0; i<4*oldCapacity; i++) {
+      setChar(dir+2+i, getChar(oldDir+2+i));
+    }
+    return dir;
+  }
+
+  private boolean isChunkEqual(long index, int length, char[] chunk) {
+    if(chunk.length != length) {
+      return false;
+    }
+    for(int i=0; i<length; i++) {
+      if(getChar(index+i) != chunk[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // make room for n more chars and return the index of the first one
+  private long reserve(int n) {
+    if(segments == null) {
+      throw new RuntimeException("Store is closed");
+    }
+    long index = size;
+    long end = size + n;
+    while(((long)nrSegments << segmentShift) < end) {
+      if(nrSegments == segments.length) {
+        segments = Arrays.copyOf(segments, 2*segments.length);
+      }
+      segments[nrSegments++] = DirectMemory.allocate(2L << segmentShift);
+    }
+    size = end;
+    return index;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    if(segments == null) {
+      throw new IOException("Store is closed");
+    }
+    out.defaultWriteObject();
+    out.writeLong(size);
+    for(long i=0; i<size; i++) {
+      out.writeChar(getChar(i));
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    segments = new ByteBuffer[4];
+    long n = in.readLong();
+    while(size < n) {
+      int length = (int)Math.min(n-size, 1 << segmentShift);
+      long index = reserve(length);
+      for(int i=0; i<length; i++) {
+        setChar(index+i, in.readChar());
+      }
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package com.jpetrak.miscfastcompact.store;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A store like StoreOfInts with long indexes (like BigStoreOfInts), but the
+ * data is kept outside of the Java heap in direct buffers, so it does not add to the 
+ * work of the garbage collector, however large it gets. The heap only holds
+ * the array of buffers.
+ * <p>
+ * The memory is allocated in segments of 2^segmentShift ints (2^22 by 
+ * default, i.e. 16MB) and the store grows by adding a new segment, nothing
+ * ever gets copied. Data can span segments, so chunks of any size can be 
+ * stored. The memory of all segments is freed by close: after that, the
+ * store must not be used any more. Without close, the memory gets freed 
+ * when the garbage collector finds the store to be unreachable.
+ * <p>
+ * The store is not thread-safe: while data is added, nothing else may access
+ * it, and close must only be called when no other thread uses the store.
+ * The exception are the read-only views created with snapshot, which share
+ * the segments with the store: these can be used by other threads while 
+ * data gets added to the store. Once there is a view, close only frees the
+ * segments added after the view was created, the memory of the others gets
+ * freed by the garbage collector once neither the store nor a view can be
+ * reached any more.
+ * When serialized, the data gets written to the stream and read back into 
+ * new off-heap memory.
+ *
+ * @author Johann Petrak
+ */
+public class OffHeapStoreOfInts implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public static final int DEFAULT_SEGMENT_SHIFT = 22;
+
+  private final int segmentShift;
+  private final int segmentMask;
+  private transient ByteBuffer[] segments;
+  private transient int nrSegments;
+  private transient long size;
+  // the number of segments shared with views, which close does not free
+  private transient int sharedSegments;
+  // true for a view created by snapshot
+  private transient boolean readOnly;
+
+  public OffHeapStoreOfInts() {
+    this(DEFAULT_SEGMENT_SHIFT);
+  }
+
+  /**
+   * Create a store which allocates segments of 2^segmentShift ints.
+   * @param segmentShift
+   */
+  public OffHeapStoreOfInts(int segmentShift) {
+    if(segmentShift < 4 || segmentShift > 28) {
+      throw new RuntimeException("Segment shift must be between 4 and 28 but is "+segmentShift);
+    }
+    this.segmentShift = segmentShift;
+    segmentMask = (1 << segmentShift)-1;
+    segments = new ByteBuffer[4];
+  }
+
+  /**
+   * The number of ints stored, which is also the index of the next data.
+   * @return
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * The store allocates segments of 2^segmentShift ints.
+   * @return
+   */
+  public int getSegmentShift() {
+    return segmentShift;
+  }
+
+  /**
+   * Create a read-only view of the data stored so far, which shares the 
+   * off-heap memory with this store, so this only copies the array of
+   * segments. Data added to this store later is not visible in the view, 
+   * but data changed with replaceFixedLengthData is. Data cannot be added 
+   * to the view and closing the view does not free any memory.
+   * @return
+   */
+  public OffHeapStoreOfInts snapshot() {
+    if(segments == null) {
+      throw new RuntimeException("Store is closed");
+    }
+    OffHeapStoreOfInts view = new OffHeapStoreOfInts(segmentShift);
+    view.segments = Arrays.copyOf(segments, Math.max(nrSegments, 1));
+    view.nrSegments = nrSegments;
+    view.size = size;
+    view.readOnly = true;
+    sharedSegments = nrSegments;
+    return view;
+  }
+
+  /**
+   * The number of bytes of off-heap memory allocated.
+   * @return
+   */
+  public long getOffHeapBytes() {
+    return ((long)nrSegments << segmentShift) * 4;
+  }
+
+  /**
+   * The number of bytes of heap memory used, which is only the array of
+   * segments.
+   * @return
+   */
+  public long getMemoryFootprint() {
+    return segments == null ? 0 : Utils.arrayBytes(segments.length, 4);
+  }
+
+  /**
+   * Free all the off-heap memory which is not shared with a view. The store
+   * cannot be used after this.
+   */
+  public void close() {
+    ByteBuffer[] old = segments;
+    if(old == null) {
+      return;
+    }
+    // make sure that any further access fails before freeing the memory
+    segments = null;
+    if(!readOnly) {
+      for(int i=sharedSegments; i<nrSegments; i++) {
+        DirectMemory.free(old[i]);
+        old[i] = null;
+      }
+    }
+    nrSegments = 0;
+    size = 0;
+  }
+
+  public boolean isClosed() {
+    return segments == null;
+  }
+
+  /**
+   * The int at the given index.
+   * @param index
+   * @return
+   */
+  public int getInt(long index) {
+    return segments[(int)(index >>> segmentShift)].getInt(((int)index & segmentMask) << 2);
+  }
+
+  private void setInt(long index, int value) {
+    segments[(int)(index >>> segmentShift)].putInt(((int)index & segmentMask) << 2, value);
+  }
+
+  // ********** VARIABLE LENGTH DATA METHODS **********
+
+  public long addData(int[] data) {
+    return addData(data, data.length);
+  }
+
+  /**
+   * Add the first length elements of the array as variable length data and
+   * get back the index under which we can get it back. The length is stored
+   * at the index, the data after it.
+   * @param data
+   * @param length
+   * @return
+   */
+  public long addData(int[] data, int length) {
+    long index = reserve(length+1);
+    setInt(index, length);
+    for(int i=0; i<length; i++) {
+      setInt(index+1+i, data[i]);
+    }
+    return index;
+  }
+
+  public int[] getData(long index) {
+    return getFixedLengthData(index+1, getInt(index));
+  }
+
+  public int getSize(long index) {
+    return getInt(index);
+  }
+
+  // ********** FIXED LENGTH DATA METHODS **********
+
+  public long addFixedLengthData(int[] data) {
+    long index = reserve(data.length);
+    for(int i=0; i<data.length; i++) {
+      setInt(index+i, data[i]);
+    }
+    return index;
+  }
+
+  /**
+   * Replace a block of fixed length data with new data of exactly the same
+   * length.
+   * @param index
+   * @param data
+   * @return
+   */
+  public long replaceFixedLengthData(long index, int[] data) {
+    checkNotReadOnly();
+    for(int i=0; i<data.length; i++) {
+      setInt(index+i, data[i]);
+    }
+    return index;
+  }
+
+  public int[] getFixedLengthData(long index, int length) {
+    int[] data = new int[length];
+    for(int i=0; i<length; i++) {
+      data[i] = getInt(index+i);
+    }
+    return data;
+  }
+
+  private void checkNotReadOnly() {
+    if(readOnly) {
+      throw new RuntimeException("Cannot modify a snapshot of a store");
+    }
+  }
+
+  // make room for n more ints and return the index of the first one
+  private long reserve(int n) {
+    if(segments == null) {
+      throw new RuntimeException("Store is closed");
+    }
+    checkNotReadOnly();
+    long index = size;
+    long end = size + n;
+    while(((long)nrSegments << segmentShift) < end) {
+      if(nrSegments == segments.length) {
+        segments = Arrays.copyOf(segments, 2*segments.length);
+      }
+      segments[nrSegments++] = DirectMemory.allocate(4L << segmentShift);
+    }
+    size = end;
+    return index;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    if(segments == null) {
+      throw new IOException("Store is closed");
+    }
+    out.defaultWriteObject();
+    out.writeLong(size);
+    for(long i=0; i<size; i++) {
+      out.writeInt(getInt(i));
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    segments = new ByteBuffer[4];
+    long n = in.readLong();
+    while(size < n) {
+      int length = (int)Math.min(n-size, 1 << segmentShift);
+      long index = reserve(length);
+      for(int i=0; i<length; i++) {
+        setInt(index+i, in.readInt());
+      }
+    }
+  }
+}
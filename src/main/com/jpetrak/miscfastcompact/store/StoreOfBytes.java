@@ -0,0 +1,174 @@
+package com.jpetrak.miscfastcompact.store;
+
+import com.jpetrak.miscfastcompact.utils.Utils;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import java.io.Serializable;
+
+
+/**
+ * This represents a store that can add and retrieve byte[] elements, in the
+ * same way as StoreOfChars does for char[] elements. Each chunk is 
+ * identified by the int index returned when adding it. The size of each 
+ * chunk as well as the total size of all chunks is limited to MAXINT.
+ * <p>
+ * For variable length chunks, the length is stored as 4 bytes (most 
+ * significant byte first) before the actual data. Fixed length chunks 
+ * are stored without the length, the client has to know the length.
+ * 
+ * @author Johann Petrak
+ *
+ */
+public class StoreOfBytes implements Serializable {
+   
+  /**
+   * 
+   */
+  private static final long serialVersionUID = 123L;
+  
+  ByteArrayList theList;
+  int curIndex = 0;
+  
+  public StoreOfBytes(int capacity) {
+    theList = new ByteArrayList(capacity);
+  }
+  public StoreOfBytes() {
+    theList = new ByteArrayList();
+  }
+  
+  
+  public int size() { return theList.size(); }
+  
+  /**
+   * The number of bytes of heap memory allocated for the elements of the 
+   * store, including the capacity not used yet (see Utils.arrayBytes).
+   * @return 
+   */
+  public long getMemoryFootprint() {
+    return Utils.arrayBytes(theList.elements().length, 1);
+  }
+  // ********** VARIABLE LENGTH DATA METHODS **********
+  
+  /**
+   * Add variable length data and get back the index under which we can get it back.
+   * 
+   * @param the data
+   * @return index that can be used to get back the data
+   */
+  public int addData(byte[] data) {
+    // remember where we store the data
+    int oldIndex = curIndex;
+    // first store the length of the data as four bytes
+    int l = data.length;
+    addBytes(new byte[]{(byte)(l >>> 24), (byte)(l >>> 16), (byte)(l >>> 8), (byte)l}, 4);
+    addBytes(data, data.length);
+    // after storing, the new index is now moved by the length of the data
+    // plus the four bytes where we store the length
+    curIndex += data.length+4;
+    return oldIndex;
+  }
+  
+  /** 
+   * Get variable length data from the given index.
+   * @param index
+   * @return
+   */
+  public byte[] getData(int index) {
+    int l = getSize(index);
+    byte data[] = new byte[l];
+    theList.getElements(index+4, data, 0, l);
+    return data;
+  }
+
+  /** 
+   * Get the size of the variable data stored at the given index.
+   * @param index
+   * @return 
+   */
+  public int getSize(int index) {
+    return ((theList.getByte(index) & 0xFF) << 24) |
+            ((theList.getByte(index+1) & 0xFF) << 16) |
+            ((theList.getByte(index+2) & 0xFF) << 8) |
+            (theList.getByte(index+3) & 0xFF);
+  }
+  
+  /**
+   * Get the array that currently backs the store. The array returned must 
+   * not be modified and is only valid until the next time data gets added
+   * to the store.
+   * @return 
+   */
+  public byte[] getBackingArray() {
+    return theList.elements();
+  }
+  
+  // ********** FIXED LENGTH DATA METHODS **********
+  
+  /**
+   * Add fixed length data and get back the index under which we can get it back. This will 
+   * add a chunk of data of known length to the store: no length is stored in the 
+   * store for this chunk. This chunk can only be retrieved with the getFixedLengthData
+   * method.
+   * 
+   * @param data
+   * @return
+   */
+  public int addFixedLengthData(byte[] data) {
+    return addFixedLengthData(data, data.length);
+  }
+  
+  /**
+   * Add the first length bytes of data as fixed length data.
+   * @param data
+   * @param length
+   * @return 
+   */
+  public int addFixedLengthData(byte[] data, int length) {
+    // remember where we store the data
+    int oldIndex = curIndex;
+    addBytes(data, length);
+    // after storing, the new index is now moved by the length of the data
+    curIndex += length;
+    return oldIndex;
+  }
+  
+  /**
+   * Replace a block of fixed length data with new data. 
+   * The data passed to this method must be of exactly the same length
+   * as the data originally stored, otherwise the whole store will get
+   * corrupted!
+   * 
+   * @param index
+   * @param data
+   * @return 
+   */
+  public int replaceFixedLengthData(int index, byte[] data) {
+    for(int i = 0; i<data.length; i++) {
+      theList.set(index+i,data[i]);
+    }
+    return index;
+  }
+ 
+  
+  /** 
+   * Get fixed length data from the given index.
+   * The length must be exactly the same as used when storing the fixed
+   * length data and the data must have been stored with the addFixedLengthData
+   * method.
+   * @param index
+   * @return
+   */
+  public byte[] getFixedLengthData(int index, int length) {
+    byte data[] = new byte[length];
+    theList.getElements(index, data, 0, length);
+    return data;
+  }
+  
+  
+  private void addBytes(byte[] bs, int length) {
+    if((theList.size()+length) < 0) {
+      throw new RuntimeException("Capacity of store exhausted, adding data would wrap index");
+    }
+    theList.addElements(theList.size(), bs, 0, length);
+  }
+  
+}
@@ -24,16 +24,23 @@ import java.io.Serializable;
  *  variable size char[]. Internally, we use several chunks to store each of 
  *  the list element, but to the user, the whole list is identified by the 
  *  first chunk and list elements are identified by the first chunk and the 
- *  element number. We store the number of elements in the first chunk and we 
- *  store the chunk id of the following list element in each element. Thus, the first chunks
- *  of a list consists of the the chunk length, the list size, the index of the next element chunk
- *  and the actual chunk data for the first element. Elements 2-N consist of the chunk length,
- *   the index of the next element chunk and the actual chunk data. Next chunk index and in the 
- *   first element, the list size are included in chunk length, the chunk length field itself
- *   is not. Thus, the payload of the first chunk is the list length, the
- *   next element index, and then the actual list element data, while the payload
- *   of all other elements is the next element index and the actual element data.
+ *  element number. The first chunk of a list consists of the chunk length, the
+ *  list size, the index of the directory of the list and the actual data of
+ *  the first element; list size and directory index are included in the
+ *  chunk length, the chunk length field itself is not. All other elements
+ *  are stored as variable length data and the directory holds their indices
+ *  in list order, so any element can be accessed directly. The directory
+ *  is a fixed length chunk with the capacity followed by the indices and
+ *  gets replaced by one twice as big when it is full, so appending to a
+ *  list takes amortized constant time. The directory index is 0 as long as
+ *  the list has just one element.
  *  </ul>
+ *  A store created with interning keeps a hash index over the contents of all
+ *  variable length chunks, like StoreOfInts: adding a chunk which is equal to
+ *  one already stored returns the index of the existing one and findChunk
+ *  finds the index of a chunk in expected constant time. This includes the
+ *  elements 2-N of lists, so the same value in many lists is stored once and
+ *  findListElementIndex only compares indices for these elements.
 
 * @author Johann Petrak
  *
@@ -45,9 +52,17 @@ public class StoreOfChars implements Serializable {
    */
   private static final long serialVersionUID = 123L;
   
+  private static final float MAX_LOAD = 0.75f;
+  
   CharArrayList theList;
   int curIndex = 0;
   
+  // the interning index, null if the store does not intern chunks:
+  // chunk index+1 or 0 for an empty slot and the hash of the chunk
+  private int[] internTable;
+  private int[] internHashes;
+  private int internCount;
+  
   public StoreOfChars(int capacity) {
     theList = new CharArrayList(capacity);
   }
@@ -55,19 +70,65 @@ public class StoreOfChars implements Serializable {
     theList = new CharArrayList();
   }
   
+  /**
+   * Create a store which interns variable length chunks if interning is 
+   * true.
+   * @param capacity
+   * @param interning 
+   */
+  public StoreOfChars(int capacity, boolean interning) {
+    this(capacity);
+    if(interning) {
+      internTable = new int[16];
+      internHashes = new int[16];
+    }
+  }
+  
+  /**
+   * If the store interns variable length chunks.
+   * @return 
+   */
+  public boolean isInterning() {
+    return internTable != null;
+  }
+  
   private char[] zeroChars = Utils.int2TwoChars(0); 
   private char[] oneChars = Utils.int2TwoChars(1);
   
   public int size() { return theList.size(); }
+  
+  /**
+   * The number of bytes of heap memory allocated for the elements of the 
+   * store, including the capacity not used yet (see Utils.arrayBytes).
+   * @return 
+   */
+  public long getMemoryFootprint() {
+    long bytes = Utils.arrayBytes(theList.elements().length, 2);
+    if(internTable != null) {
+      bytes += 2*Utils.arrayBytes(internTable.length, 4);
+    }
+    return bytes;
+  }
   // ********** VARIABLE LENGTH DATA METHODS **********
   
   /**
    * Add variable length data and get back the index under which we can get it back.
+   * If the store interns chunks and an equal chunk is already stored, its index
+   * is returned instead.
    * 
    * @param the data
    * @return index that can be used to get back the data
    */
   public int addData(char[] data) {
+    int hash = 0;
+    int slot = 0;
+    if(internTable != null) {
+      hash = hash(data);
+      slot = findSlot(data, hash);
+      if(internTable[slot] != 0) {
+        return internTable[slot]-1;
+      }
+    }
     // remember where we store the data
     int oldIndex = curIndex;
     // first store the length of the data
@@ -79,9 +140,30 @@ public class StoreOfChars implements Serializable {
     // after storing, the new index is now moved by the length of the data
     // plus the two chars where we store the length
     curIndex += data.length+2;
+    if(internTable != null) {
+      internTable[slot] = oldIndex+1;
+      internHashes[slot] = hash;
+      internCount++;
+      if(internCount > internTable.length * MAX_LOAD) {
+        rehash(internTable.length*2);
+      }
+    }
     return oldIndex;
   }
   
+  /**
+   * Return the index of the variable length chunk which is equal to the 
+   * data or -1 if there is none. This needs a store which interns chunks.
+   * @param data
+   * @return 
+   */
+  public int findChunk(char[] data) {
+    if(internTable == null) {
+      throw new RuntimeException("findChunk needs a store which interns chunks");
+    }
+    return internTable[findSlot(data, hash(data))]-1;
+  }
+  
   /** 
    * Get variable length data from the given index.
    * @param index
@@ -154,6 +236,8 @@ public class StoreOfChars implements Serializable {
   
   // ********** LIST DATA METHODS **********
   
+  // the number of entries of the first directory of a list
+  private static final int INITIAL_DIRECTORY_CAPACITY = 4;
   
   /**
    * Add a new list to the store and return its index. After this, a list with 
@@ -166,12 +250,12 @@ public class StoreOfChars implements Serializable {
   public int addListData(char[] data) {
     // create the special first list entry: 
     // = length of list (int=2 chars), set to 1
-    // = index of next list entry (int=2 chars), set to 0
+    // = index of the directory (int=2 chars), set to 0 since there is none yet
     // = actual data
     // remember where we store the data
     int oldIndex = curIndex;
     // first store the length of the data: for the first list entry
-    // this also includes size and next element index, so add 4
+    // this also includes size and directory index, so add 4
     // we split the int that represents the length into to chars
     int l = data.length+4;
     char[] lAsChars = Utils.int2TwoChars(l);
@@ -189,13 +273,14 @@ public class StoreOfChars implements Serializable {
    * Append additional data blocks to a list that already exists in the store at 
    * the given index. If the given index is less than 0, this is identical
    * to addListData(data) and will create a new chunk and return its index.
+   * This takes amortized constant time: the element is stored as variable 
+   * length data and its index is added to the directory of the list, which 
+   * only needs to be copied when it is full.
    * 
    * @param index
    * @param data
    * @return 
    */
-  // TODO: instead of doing getData to get the element indices, just directly access
-  // the characters
   public int addListData(int index, char[] data) {
     if(index <= 0) {
       return addListData(data);
@@ -206,48 +291,27 @@ public class StoreOfChars implements Serializable {
       throw new RuntimeException("Adding to a list, but size is <1: "+size);
     }
 
-    
-    // update the size
-    char sz[] = Utils.int2TwoChars(size+1);
-    theList.set(index+2,sz[0]); // just skip the data length characters: 2 characters
-    theList.set(index+3,sz[1]);
-    
-    
     // store the new data
-    int newBlockIndex = addNewListBlock(data);
-    
-    // now add the index of that block to either the first block or 
-    // dereference until we are the correct block
+    int newBlockIndex = addData(data);
     
-    int curBlockIndex = index; 
-    // if we need to append not at the first block (size!=1, get the next block which
-    // corresponds to size=2    
-    // then if size > 2, iterate as often as still needed
-    if(size > 1) {
-      curBlockIndex = getNextElementIndex4First(index);
-      for(int i=2; i<size; i++) {
-        curBlockIndex = getNextElementIndex4Other(curBlockIndex);
-      }
+    // the directory holds the indices of elements 1..size-1, get a bigger
+    // one if it is missing or full
+    int dirIndex = getInt(index+4);
+    int capacity = (dirIndex == 0) ? 0 : getInt(dirIndex);
+    if(size-1 == capacity) {
+      dirIndex = addDirectory(dirIndex, capacity);
+      setInt(index+4, dirIndex);
     }
+    setInt(dirIndex+2+2*(size-1), newBlockIndex);
     
-    // encode the new block index 
-    char idx[] = Utils.int2TwoChars(newBlockIndex);
-    
-    
-    if(size == 1) {
-      theList.set(index+4,idx[0]);
-      theList.set(index+5,idx[1]);            
-    } else {
-      theList.set(curBlockIndex+2,idx[0]);
-      theList.set(curBlockIndex+3,idx[1]);                  
-    }
-    
-    
+    // update the size
+    setInt(index+2, size+1);
     return index;
   }
   
   /**
-   * Return the list element at the given index.
+   * Return the list element at the given index. This takes constant time
+   * for any element.
    * @param index
    * @param element
    * @return
@@ -258,27 +322,13 @@ public class StoreOfChars implements Serializable {
     if(size <= 0) {
       throw new RuntimeException("getting list data but size is <=0: "+size);
     }
-    assert(element<size);
-    if(element >= size) {
-      throw new RuntimeException("getting list data but element>=size: "+element+"/"+size);
-    }
-    
-    if(size == 1 && element != 0) {
-      throw new RuntimeException("getting list data but size=1 and element!=0: "+element);
+    if(element < 0 || element >= size) {
+      throw new RuntimeException("getting list data but element is not in 0.."+(size-1)+": "+element);
     }
     if(element == 0) {
-      return getDataWithout(index, 4);
+      return getFixedLengthData(index+6, getInt(index)-4);
     }
-    // if we need an element >0, 
-    // de-reference the current block "element" times and get the data from there
-    int nextBlockIndex = getNextElementIndex4First(index);
-    // we did already the first dereferencing from the first block, so if necessary
-    // dereference element-1 more times
-    for(int i=0;i<(element-1);i++) {
-      nextBlockIndex = getNextElementIndex4Other(nextBlockIndex);
-    }
-    // we have the index of the block we want, return it
-    return getDataWithout(nextBlockIndex,2);
+    return getData(getElementIndex(index, element));
   }
   
   /** 
@@ -291,27 +341,32 @@ public class StoreOfChars implements Serializable {
    * @return the index of the chunk in the list or -1 if not found
    */
   public int findListElementIndex(int index, char[] chunk) {
-    int elementIndex = 0;
-    
     // if the list exists at all, there always must be at least one element, so
     // always check the first element.
     // Find the start and the length of the first element and compare
-    int length = Utils.twoChars2Int(theList.get(index), theList.get(index+1));
-    int chunkIndex = index+6;  // 2 for the chunk length, 2 for list size,, 2 for next element index
-    if(isChunkEqual(chunkIndex,length-4,chunk)) {
-      return elementIndex;
+    // 2 for the chunk length, 2 for list size, 2 for directory index
+    if(isChunkEqual(index+6,getInt(index)-4,chunk)) {
+      return 0;
+    }
+    int size = getListSize(index);
+    if(internTable != null) {
+      // all other elements are interned, so they can only be the stored 
+      // chunk equal to the one we look for
+      int blockIndex = findChunk(chunk);
+      if(blockIndex >= 0) {
+        for(int element = 1; element < size; element++) {
+          if(getElementIndex(index, element) == blockIndex) {
+            return element;
+          }
+        }
+      }
+      return -1;
     }
-    // get the next chunk pointer
-    int nextBlockIndex = getNextElementIndex4First(index);
-    while(nextBlockIndex != 0) {
-      elementIndex++;
-      // now check the block at this index!
-      length = Utils.twoChars2Int(theList.get(nextBlockIndex), theList.get(nextBlockIndex+1));
-      chunkIndex = nextBlockIndex+4; // 2 for chunk length, 2 for next element index
-      if(isChunkEqual(chunkIndex,length-2,chunk)) {
-        return elementIndex;
+    for(int element = 1; element < size; element++) {
+      int blockIndex = getElementIndex(index, element);
+      if(isChunkEqual(blockIndex+2,getInt(blockIndex),chunk)) {
+        return element;
       }
-      nextBlockIndex = getNextElementIndex4Other(nextBlockIndex);
     }
     return -1;
   }
@@ -321,8 +376,9 @@ public class StoreOfChars implements Serializable {
     if(chunk.length != length) {
       return false;
     }
+    char[] elements = theList.elements();
     for(int i = 0; i<length; i++) {
-      if(theList.get(index+i) != chunk[i]) {
+      if(elements[index+i] != chunk[i]) {
         return false;
       }
     }
@@ -335,50 +391,83 @@ public class StoreOfChars implements Serializable {
    * @return
    */
   public int getListSize(int index) {
-   return Utils.twoChars2Int(theList.get(index+2), theList.get(index+3));
+   return getInt(index+2);
   }
   
   //*******************************************************************
   // internal utility methods 
   // ******************************************************************
   
-  private int getNextElementIndex4First(int index) {
-    return Utils.twoChars2Int(theList.get(index+4), theList.get(index+5));
+  private int getInt(int index) {
+    return Utils.twoChars2Int(theList.getChar(index), theList.getChar(index+1));
   }
-  private int getNextElementIndex4Other(int index) {
-    return Utils.twoChars2Int(theList.get(index+2), theList.get(index+3));
+  private void setInt(int index, int value) {
+    theList.set(index, (char)(value >>> 16));
+    theList.set(index+1, (char)value);
   }
   
-  // special method to retrieve just the data from a list element: same as 
-  // the ordinary get data, except the we have to skip to chars at the 
-  // beginning which is the next element pointer, or the size and next element pointer
-  // without is 2 or 4 for these.
-  private char[] getDataWithout(int index, int without) {
-    // retrieve the length 
-    int l = Utils.twoChars2Int(theList.get(index), theList.get(index+1));
-    // now retrieve the characters for this data block
-    char data[] = new char[l-without];
-    for(int i=0; i<(l-without); i++) {
-      data[i] = theList.get(index+2+without+i);
+  // the index of the variable length data of an element > 0 of the list
+  private int getElementIndex(int index, int element) {
+    return getInt(getInt(index+4)+2+2*(element-1));
+  }
+  
+  // the slot of the chunk equal to data or the empty slot where it would go
+  private int findSlot(char[] data, int hash) {
+    int mask = internTable.length-1;
+    int slot = hash & mask;
+    int entry;
+    while((entry = internTable[slot]) != 0) {
+      if(internHashes[slot] == hash && getInt(entry-1) == data.length 
+              && isChunkEqual(entry+1, data.length, data)) {
+        return slot;
+      }
+      slot = (slot+1) & mask;
     }
-    return data;
+    return slot;
   }
   
-  // similar to addData but also adds the empty next block entry at the beginning 
-  private int addNewListBlock(char[] data) {
-    // remember where we store the data
-    int oldIndex = curIndex;
-    // first store the length of the data
-    // we split the int that represents the length into to chars
-    int l = data.length+2;
-    char[] lAsChars = Utils.int2TwoChars(l);
-    addChars(lAsChars);
-    addChars(zeroChars);
-    addChars(data);
-    // after storing, the new index is now moved by the length of the data
-    // plus the two chars where we store the length
-    curIndex += data.length+4;
-    return oldIndex;    
+  private void rehash(int newCapacity) {
+    int[] newTable = new int[newCapacity];
+    int[] newHashes = new int[newCapacity];
+    int newMask = newCapacity-1;
+    for(int i=0; i<internTable.length; i++) {
+      if(internTable[i] != 0) {
+        int slot = internHashes[i] & newMask;
+        while(newTable[slot] != 0) {
+          slot = (slot+1) & newMask;
+        }
+        newTable[slot] = internTable[i];
+        newHashes[slot] = internHashes[i];
+      }
+    }
+    internTable = newTable;
+    internHashes = newHashes;
+  }
+  
+  private static int hash(char[] data) {
+    int h = data.length;
+    for(int i=0; i<data.length; i++) {
+      h = 31*h + data[i];
+    }
+    return Utils.mixHash(h);
+  }
+  
+  // add a directory with twice the capacity of the old one (or the initial
+  // capacity if there is none), copy the entries of the old one and return 
+  // its index. A directory is the capacity followed by two chars for the 
+  // index of each element. The old directory is left in the store unused, 
+  // since the directories double, the unused ones together are never bigger
+  // than the current one.
+  private int addDirectory(int oldIndex, int oldCapacity) {
+    int capacity = (oldCapacity == 0) ? INITIAL_DIRECTORY_CAPACITY : 2*oldCapacity;
+    char[] dir = new char[2+2*capacity];
+    char[] cap = Utils.int2TwoChars(capacity);
+    dir[0] = cap[0];
+    dir[1] = cap[1];
+    if(oldCapacity > 0) {
+      theList.getElements(oldIndex+2, dir, 2, 2*oldCapacity);
+    }
+    return addFixedLengthData(dir);
   }
   
   
@@ -386,9 +475,7 @@ public class StoreOfChars implements Serializable {
     if((theList.size()+cs.length) < 0) {
       throw new RuntimeException("Capacity of store exhausted, adding data would wrap index");
     }
-    for(char c : cs) {
-      theList.add(c);
-    }
+    theList.addElements(theList.size(), cs, 0, cs.length);
   }
   
   
@@ -6,6 +6,17 @@ import java.io.Serializable;
 
 
 /**
+ * A store of int[] chunks, each identified by the int index returned when
+ * adding it, see StoreOfChars.
+ * <p>
+ * A store created with interning keeps a hash index over the contents of
+ * all variable length chunks: adding a chunk which is equal to one already
+ * stored does not store it again but returns the index of the existing one,
+ * and findChunk finds the index of a chunk in expected constant time. The
+ * index is an open addressing hash table (linear probing) over primitive
+ * int arrays, of the chunk index+1 and the hash of the chunk in each slot,
+ * so it needs 8 bytes per slot and no objects per chunk. Fixed length data
+ * is not interned.
  * 
  * @author Johann Petrak
  *
@@ -17,9 +28,19 @@ public class StoreOfInts implements Serializable {
    */
   private static final long serialVersionUID = 123L;
   
+  private static final float MAX_LOAD = 0.75f;
+  
   IntArrayList theList;
   int curIndex = 0;
   
+  // the interning index, null if the store does not intern chunks:
+  // chunk index+1 or 0 for an empty slot and the hash of the chunk
+  private int[] internTable;
+  private int[] internHashes;
+  private int internCount;
+  // true for a view created by snapshot
+  private boolean readOnly = false;
+  
   public StoreOfInts(int capacity) {
     theList = new IntArrayList(capacity);
   }
@@ -27,8 +48,58 @@ public class StoreOfInts implements Serializable {
     theList = new IntArrayList();
   }
   
+  /**
+   * Create a store which interns variable length chunks if interning is 
+   * true.
+   * @param capacity
+   * @param interning 
+   */
+  public StoreOfInts(int capacity, boolean interning) {
+    this(capacity);
+    if(interning) {
+      internTable = new int[16];
+      internHashes = new int[16];
+    }
+  }
+  
+  /**
+   * If the store interns variable length chunks.
+   * @return 
+   */
+  public boolean isInterning() {
+    return internTable != null;
+  }
+  
   
   public int size() { return theList.size(); }
+  
+  /**
+   * Create a read-only view of the data stored so far, which shares the 
+   * memory with this store. Data added to this store later is not visible 
+   * in the view, but data changed with replaceFixedLengthData is. The 
+   * view does not intern chunks and data cannot be added to it.
+   * @return 
+   */
+  public StoreOfInts snapshot() {
+    StoreOfInts view = new StoreOfInts(0);
+    view.theList = IntArrayList.wrap(theList.elements(), theList.size());
+    view.curIndex = curIndex;
+    view.readOnly = true;
+    return view;
+  }
+  
+  /**
+   * The number of bytes of heap memory allocated for the elements of the 
+   * store, including the capacity not used yet (see Utils.arrayBytes).
+   * @return 
+   */
+  public long getMemoryFootprint() {
+    long bytes = Utils.arrayBytes(theList.elements().length, 4);
+    if(internTable != null) {
+      bytes += 2*Utils.arrayBytes(internTable.length, 4);
+    }
+    return bytes;
+  }
   // ********** VARIABLE LENGTH DATA METHODS **********
   
   /**
@@ -38,17 +109,59 @@ public class StoreOfInts implements Serializable {
    * @return index that can be used to get back the data
    */
   public int addData(int[] data) {
-    // remember where we store the data
+    return addData(data, data.length);
+  }
+  
+  /**
+   * Add the first length elements of the given array as variable length data 
+   * and get back the index under which we can get it back. This can be used 
+   * to store data from a reused buffer without copying it first. If the store
+   * interns chunks and an equal chunk is already stored, its index is returned
+   * instead.
+   * 
+   * @param data
+   * @param length
+   * @return index that can be used to get back the data
+   */
+  public int addData(int[] data, int length) {
+    checkNotReadOnly();
+    int hash = 0;
+    int slot = 0;
+    if(internTable != null) {
+      hash = hash(data, length);
+      slot = findSlot(data, length, hash);
+      if(internTable[slot] != 0) {
+        return internTable[slot]-1;
+      }
+    }
     int oldIndex = curIndex;
-    // first store the length of the data
-    addInt(data.length);
-    addInts(data);
-    // after storing, the new index is now moved by the length of the data
-    // plus the two chars where we store the length
-    curIndex += data.length+1;
+    addInt(length);
+    addInts(data, length);
+    curIndex += length+1;
+    if(internTable != null) {
+      internTable[slot] = oldIndex+1;
+      internHashes[slot] = hash;
+      internCount++;
+      if(internCount > internTable.length * MAX_LOAD) {
+        rehash(internTable.length*2);
+      }
+    }
     return oldIndex;
   }
   
+  /**
+   * Return the index of the variable length chunk which is equal to the 
+   * data or -1 if there is none. This needs a store which interns chunks.
+   * @param data
+   * @return 
+   */
+  public int findChunk(int[] data) {
+    if(internTable == null) {
+      throw new RuntimeException("findChunk needs a store which interns chunks");
+    }
+    return internTable[findSlot(data, data.length, hash(data, data.length))]-1;
+  }
+  
   /** 
    * Get variable length data from the given index.
    * @param index
@@ -59,11 +172,21 @@ public class StoreOfInts implements Serializable {
     int l = theList.get(index);
     // now retrieve the characters for this data block
     int data[] = new int[l];
-    for(int i=0; i<l; i++) {
-      data[i] = theList.get(index+1+i);
-    }
+    theList.getElements(index+1, data, 0, l);
     return data;
   }
+  
+  /**
+   * Get the array that currently backs the store. The variable length data 
+   * stored at index can be accessed directly in this array: the length is 
+   * at index, the data at index+1 to index+length. This avoids copying the 
+   * data, but the array returned must not be modified and is only valid 
+   * until the next time data gets added to the store.
+   * @return 
+   */
+  public int[] getBackingArray() {
+    return theList.elements();
+  }
 
   /** 
    * Get the size of the variable data stored at the given index.
@@ -87,6 +210,7 @@ public class StoreOfInts implements Serializable {
    * @return
    */
   public int addFixedLengthData(int[] data) {
+    checkNotReadOnly();
     // remember where we store the data
     int oldIndex = curIndex;
     addInts(data);
@@ -106,6 +230,7 @@ public class StoreOfInts implements Serializable {
    * @return 
    */
   public int replaceFixedLengthData(int index, int[] data) {
+    checkNotReadOnly();
     for(int i = 0; i<data.length; i++) {
       theList.set(index+i,data[i]);
     }
@@ -123,13 +248,17 @@ public class StoreOfInts implements Serializable {
    */
   public int[] getFixedLengthData(int index, int length) {
     int data[] = new int[length];
-    for(int i=0; i<length; i++) {
-      data[i] = theList.get(index+i);
-    }
+    theList.getElements(index, data, 0, length);
     return data;
   }
   
   
+  private void checkNotReadOnly() {
+    if(readOnly) {
+      throw new RuntimeException("Cannot modify a snapshot of a store");
+    }
+  }
+  
   private void addInts(int[] is) {
     if((theList.size()+is.length) < 0) {
       throw new RuntimeException("Capacity of store exhausted, adding data would wrap index");
@@ -139,6 +268,66 @@ public class StoreOfInts implements Serializable {
     }
   }
   
+  // the slot of the chunk equal to data or the empty slot where it would go
+  private int findSlot(int[] data, int length, int hash) {
+    int mask = internTable.length-1;
+    int slot = hash & mask;
+    int entry;
+    int[] elements = theList.elements();
+    while((entry = internTable[slot]) != 0) {
+      if(internHashes[slot] == hash && isEqual(elements, entry-1, data, length)) {
+        return slot;
+      }
+      slot = (slot+1) & mask;
+    }
+    return slot;
+  }
+  
+  private static boolean isEqual(int[] elements, int index, int[] data, int length) {
+    if(elements[index] != length) {
+      return false;
+    }
+    for(int i=0; i<length; i++) {
+      if(elements[index+1+i] != data[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+  
+  private void rehash(int newCapacity) {
+    int[] newTable = new int[newCapacity];
+    int[] newHashes = new int[newCapacity];
+    int newMask = newCapacity-1;
+    for(int i=0; i<internTable.length; i++) {
+      if(internTable[i] != 0) {
+        int slot = internHashes[i] & newMask;
+        while(newTable[slot] != 0) {
+          slot = (slot+1) & newMask;
+        }
+        newTable[slot] = internTable[i];
+        newHashes[slot] = internHashes[i];
+      }
+    }
+    internTable = newTable;
+    internHashes = newHashes;
+  }
+  
+  private static int hash(int[] data, int length) {
+    int h = length;
+    for(int i=0; i<length; i++) {
+      h = 31*h + data[i];
+    }
+    return Utils.mixHash(h);
+  }
+  
+  private void addInts(int[] is, int length) {
+    if((theList.size()+length) < 0) {
+      throw new RuntimeException("Capacity of store exhausted, adding data would wrap index");
+    }
+    theList.addElements(theList.size(), is, 0, length);
+  }
+  
   private void addInt(int i) {
     if((theList.size()+1) < 0) {
       throw new RuntimeException("Capacity of store exhausted, adding data would wrap index");
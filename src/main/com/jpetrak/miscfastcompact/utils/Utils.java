@@ -83,4 +83,31 @@ public class Utils {
   }
   
   
+  /**
+   * The number of bytes of heap memory for an array with the given length
+   * and element size, assuming the 16 byte array header of a 64 bit JVM 
+   * with compressed references and alignment to 8 bytes.
+   * @param length
+   * @param elementSize
+   * @return 
+   */
+  public static long arrayBytes(long length, int elementSize) {
+    return (16 + length*elementSize + 7) & ~7L;
+  }
+  
+  /**
+   * Spread the bits of a hash code, so that the lowest bits can be used to
+   * select the slot of a hash table with a power of two size.
+   * @param h
+   * @return 
+   */
+  public static int mixHash(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+  
 }
@@ -1,12 +1,14 @@
 package com.jpetrak.miscfastcompact;
 
 import com.jpetrak.miscfastcompact.graph.TestGraphStore1;
+import com.jpetrak.miscfastcompact.graph.TestNodeNames1;
+import com.jpetrak.miscfastcompact.store.TestStores1;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 
 @RunWith(Suite.class)
-@SuiteClasses({ TestGraphStore1.class })
+@SuiteClasses({ TestGraphStore1.class, TestNodeNames1.class, TestStores1.class })
 public class TestSuiteAll {
 }
@@ -1,8 +1,27 @@
 
 package com.jpetrak.miscfastcompact.graph;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestGraphStore1 {
   @Test
@@ -16,6 +35,1313 @@ public class TestGraphStore1 {
     gstore.addEdge("uri4", "uri1", 5);
     gstore.addEdge("uri4", "uri6", 6);
     gstore.addEdge("uri8", "uri9", 7);
-    assertEquals("Dummy test",0,0);
+    gstore.finishImport();
+    int uri1 = gstore.getNodeId("uri1");
+    int uri4 = gstore.getNodeId("uri4");
+    int uri6 = gstore.getNodeId("uri6");
+    assertEquals(3, gstore.getFirstEdgeData(uri1, uri4));
+    assertEquals(5, gstore.getFirstEdgeData(uri4, uri1));
+    assertEquals(Integer.MIN_VALUE, gstore.getFirstEdgeData(uri1, uri6));
+    assertEquals(7, gstore.getFirstEdgeData(gstore.getNodeId("uri8"), gstore.getNodeId("uri9")));
+    // uri1 -> uri4 -> uri6
+    assertEquals(9, gstore.getSumEdgeDataSequence(uri1, uri6));
+    // uri2 and uri3 share parent uri1
+    assertEquals(3, gstore.getSumEdgeDataSharedParent(gstore.getNodeId("uri2"), gstore.getNodeId("uri3")));
+    // uri1 and uri4 do not have a common child
+    assertEquals(0, gstore.getSumEdgeDataSharedChild(uri1, uri4));
+  }
+
+  @Test
+  public void importSpillTest1() {
+    // the same random edges, imported once in memory and once with
+    // a tiny memory budget so that many runs get spilled and merged
+    int nrNodes = 200;
+    int nrEdges = 5000;
+    GraphStore inMemory = new GraphStore();
+    GraphStore spilled = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      inMemory.addNode("n"+i);
+      spilled.addNode("n"+i);
+    }
+    inMemory.startImport(nrEdges);
+    spilled.startImport(37);
+    Random rnd = new Random(1);
+    for(int i=0; i<nrEdges; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      int data = rnd.nextInt(100);
+      inMemory.addEdge(from, to, data);
+      spilled.addEdge(from, to, data);
+    }
+    inMemory.finishImport();
+    spilled.finishImport();
+    for(int i=0; i<nrNodes; i++) {
+      for(int j=0; j<nrNodes; j+=7) {
+        assertEquals(inMemory.getFirstEdgeData(i, j), spilled.getFirstEdgeData(i, j));
+        assertEquals(inMemory.getSumEdgeDataSharedParent(i, j), spilled.getSumEdgeDataSharedParent(i, j));
+        assertEquals(inMemory.getSumEdgeDataSharedChild(i, j), spilled.getSumEdgeDataSharedChild(i, j));
+        assertEquals(inMemory.getSumEdgeDataSequence(i, j), spilled.getSumEdgeDataSequence(i, j));
+      }
+    }
+  }
+
+  @Test
+  public void freezeTest1() {
+    // random graph without duplicate edges, compare all queries before and
+    // after freezing
+    int nrNodes = 150;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(1000);
+    Random rnd = new Random(2);
+    for(int i=0; i<nrNodes; i++) {
+      for(int j=0; j<nrNodes; j++) {
+        if(rnd.nextInt(10) == 0) {
+          gstore.addEdge(i, j, rnd.nextInt(100));
+        }
+      }
+    }
+    gstore.finishImport();
+    int[] expected = new int[nrNodes*nrNodes*4];
+    int k = 0;
+    for(int i=0; i<nrNodes; i++) {
+      for(int j=0; j<nrNodes; j++) {
+        expected[k++] = gstore.getFirstEdgeData(i, j);
+        expected[k++] = gstore.getSumEdgeDataSharedParent(i, j);
+        expected[k++] = gstore.getSumEdgeDataSharedChild(i, j);
+        expected[k++] = gstore.getSumEdgeDataSequence(i, j);
+      }
+    }
+    gstore.freeze();
+    assertTrue(gstore.isFrozen());
+    k = 0;
+    for(int i=0; i<nrNodes; i++) {
+      for(int j=0; j<nrNodes; j++) {
+        assertEquals(expected[k++], gstore.getFirstEdgeData(i, j));
+        assertEquals(expected[k++], gstore.getSumEdgeDataSharedParent(i, j));
+        assertEquals(expected[k++], gstore.getSumEdgeDataSharedChild(i, j));
+        assertEquals(expected[k++], gstore.getSumEdgeDataSequence(i, j));
+      }
+    }
+    assertEquals(3, gstore.addNode("n3"));
+    try {
+      gstore.addNode("newnode");
+      fail("Adding a node to a frozen store should fail");
+    } catch (RuntimeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void splitLayoutTest1() {
+    // the same random edges in both layouts must give the same results
+    int nrNodes = 150;
+    GraphStore interleaved = new GraphStore();
+    GraphStore split = new GraphStore(EdgeLayout.SPLIT);
+    for(int i=0; i<nrNodes; i++) {
+      interleaved.addNode("n"+i);
+      split.addNode("n"+i);
+    }
+    interleaved.startImport(1000);
+    split.startImport(1000);
+    Random rnd = new Random(6);
+    for(int i=0; i<nrNodes*15; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      int data = rnd.nextInt(100);
+      interleaved.addEdge(from, to, data);
+      split.addEdge(from, to, data);
+    }
+    interleaved.finishImport();
+    split.finishImport();
+    for(int i=0; i<nrNodes; i++) {
+      assertEquals(interleaved.getOutDegree(i), split.getOutDegree(i));
+      assertEquals(interleaved.getInDegree(i), split.getInDegree(i));
+      for(int j=0; j<nrNodes; j++) {
+        for(PairQuery query : PairQuery.values()) {
+          assertEquals(interleaved.query(query, i, j), split.query(query, i, j));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void compressedTest1() {
+    // a few nodes with many edges and many nodes with few edges, compare 
+    // the queries and cursors of a compressed and an uncompressed store
+    int nrNodes = 2000;
+    GraphStore csr = new GraphStore();
+    GraphStore compressed = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      csr.addNode("n"+i);
+      compressed.addNode("n"+i);
+    }
+    csr.startImport(100000);
+    compressed.startImport(100000);
+    // no duplicate edges, so that find always gives the same edge
+    Random rnd = new Random(7);
+    TreeSet<Long> added = new TreeSet<Long>();
+    for(int i=0; i<nrNodes*10; i++) {
+      int from = (i%3 == 0) ? rnd.nextInt(5) : rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      int data = rnd.nextInt(200)-100;
+      if(added.add(((long)from << 32) | to)) {
+        csr.addEdge(from, to, data);
+        compressed.addEdge(from, to, data);
+      }
+    }
+    csr.finishImport();
+    compressed.finishImport();
+    csr.freeze();
+    compressed.freeze(true);
+    assertTrue(((CompressedEdges)compressed.getOutEdgeLists()).getEncodedSize() <
+            8L*csr.getOutEdgeLists().getNumberOfEdges());
+    EdgeCursor c1 = csr.newEdgeCursor();
+    EdgeCursor c2 = compressed.newEdgeCursor();
+    for(int i=0; i<nrNodes; i++) {
+      csr.getOutEdges(i, c1);
+      compressed.getOutEdges(i, c2);
+      assertEquals(c1.size(), c2.size());
+      for(int j=0; j<c1.size(); j++) {
+        assertEquals(c1.nodeId(j), c2.nodeId(j));
+        assertEquals(c1.edgeData(j), c2.edgeData(j));
+      }
+      int k = rnd.nextInt(nrNodes);
+      int from = c1.size() == 0 ? 0 : rnd.nextInt(c1.size());
+      int p1 = c1.find(k, from);
+      int p2 = c2.find(k, from);
+      assertEquals(p1, p2);
+    }
+    for(int i=0; i<nrNodes; i+=3) {
+      for(int j=0; j<nrNodes; j+=11) {
+        for(PairQuery query : PairQuery.values()) {
+          assertEquals(csr.query(query, i, j), compressed.query(query, i, j));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void insertEdgeTest1() throws Exception {
+    // edges imported in bulk plus edges inserted one by one must give the 
+    // same results as importing all of them at once
+    int nrNodes = 100;
+    GraphStore all = new GraphStore();
+    GraphStore incremental = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      all.addNode("n"+i);
+      incremental.addNode("n"+i);
+    }
+    incremental.setMaxDeltaSize(5);
+    all.startImport(10000);
+    incremental.startImport(10000);
+    Random rnd = new Random(8);
+    TreeSet<Long> added = new TreeSet<Long>();
+    int[][] inserted = new int[2000][];
+    for(int i=0; i<3000; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      if(!added.add(((long)from << 32) | to)) {
+        continue;
+      }
+      int data = rnd.nextInt(100);
+      all.addEdge(from, to, data);
+      if(i < 1000) {
+        incremental.addEdge(from, to, data);
+      } else {
+        inserted[i-1000] = new int[]{from, to, data};
+      }
+    }
+    all.finishImport();
+    incremental.finishImport();
+    for(int[] edge : inserted) {
+      if(edge != null) {
+        incremental.insertEdge(edge[0], edge[1], edge[2]);
+      }
+    }
+    for(int round=0; round<2; round++) {
+      for(int i=0; i<nrNodes; i++) {
+        assertEquals(all.getOutDegree(i), incremental.getOutDegree(i));
+        assertEquals(all.getInDegree(i), incremental.getInDegree(i));
+        for(int j=0; j<nrNodes; j++) {
+          for(PairQuery query : PairQuery.values()) {
+            assertEquals(all.query(query, i, j), incremental.query(query, i, j));
+          }
+        }
+      }
+      incremental.startBackgroundCompaction().get();
+    }
+    incremental.insertEdge("n1", "new", 3);
+    assertEquals(3, incremental.getFirstEdgeData(1, incremental.getNodeId("new")));
+  }
+
+  @Test
+  public void compactionTest1() throws Exception {
+    // queries see all the edges exactly once and nodes added while the 
+    // compaction runs are kept; with the OFF_HEAP layout, the old edge 
+    // lists must not be freed while the queries can still read them
+    int nrNodes = 300;
+    GraphStore gstore = new GraphStore(EdgeLayout.OFF_HEAP);
+    gstore.setMaxDeltaSize(1000);
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    Random rnd = new Random(10);
+    TreeSet<Long> added = new TreeSet<Long>();
+    int[] outDegrees = new int[nrNodes];
+    int[][] firstData = new int[nrNodes][nrNodes];
+    for(int i=0; i<nrNodes; i++) {
+      Arrays.fill(firstData[i], Integer.MIN_VALUE);
+    }
+    for(int i=0; i<30000; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      if(added.add(((long)from << 32) | to)) {
+        gstore.insertEdge(from, to, i);
+        outDegrees[from]++;
+        firstData[from][to] = i;
+      }
+    }
+    for(int round=0; round<3; round++) {
+      java.util.concurrent.Future<Void> compaction = gstore.startBackgroundCompaction();
+      int k = 0;
+      while(!compaction.isDone() || k < 10) {
+        int from = rnd.nextInt(nrNodes);
+        int to = rnd.nextInt(nrNodes);
+        assertEquals(outDegrees[from], gstore.getOutDegree(from));
+        assertEquals(firstData[from][to], gstore.getFirstEdgeData(from, to));
+        if(k % 100 == 0) {
+          // waits for the compaction to finish
+          String name = "r"+round+"_"+k;
+          int id = gstore.addNode(name);
+          assertEquals(name, gstore.getNodeName(id));
+          assertEquals(0, gstore.getOutDegree(id));
+        }
+        k++;
+      }
+      compaction.get();
+    }
+    int n = gstore.getNumberOfNodes();
+    assertTrue(n > nrNodes);
+    gstore.insertEdge(n-1, 0, 77);
+    assertEquals(77, gstore.getFirstEdgeData(n-1, 0));
+    assertEquals(1, gstore.getInDegree(0)-countIn(firstData, 0));
+    gstore.close();
+  }
+  
+  private static int countIn(int[][] firstData, int to) {
+    int count = 0;
+    for(int[] data : firstData) {
+      if(data[to] != Integer.MIN_VALUE) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void snapshotTest1() throws Exception {
+    // the writer adds the edges 0->k with data k and publishes a snapshot
+    // after every 10 edges, so each snapshot must have exactly 10*epoch 
+    // out edges for node 0, whatever the writer does at the same time
+    final GraphStore gstore = new GraphStore();
+    gstore.addNode("n0");
+    gstore.publishSnapshot();
+    final int rounds = 50;
+    final AtomicBoolean failed = new AtomicBoolean(false);
+    Thread[] readers = new Thread[3];
+    for(int t=0; t<readers.length; t++) {
+      readers[t] = new Thread() {
+        @Override
+        public void run() {
+          long last = 0;
+          while(last < rounds+1) {
+            GraphStore snapshot = gstore.getSnapshot();
+            long epoch = snapshot.getEpoch();
+            int n = 10*(int)(epoch-1);
+            if(epoch < last || snapshot.getOutDegree(0) != n || 
+               (n > 0 && snapshot.getFirstEdgeData(0, snapshot.getNodeId("n"+n)) != n)) {
+              failed.set(true);
+              return;
+            }
+            last = epoch;
+          }
+        }
+      };
+      readers[t].start();
+    }
+    int k = 0;
+    for(int r=0; r<rounds; r++) {
+      for(int i=0; i<10; i++) {
+        k++;
+        gstore.insertEdge("n0", "n"+k, k);
+      }
+      gstore.publishSnapshot();
+    }
+    for(Thread reader : readers) {
+      reader.join();
+    }
+    assertFalse(failed.get());
+    assertEquals(rounds+1, gstore.getSnapshot().getEpoch());
+  }
+
+  @Test
+  public void snapshotSharingTest1() {
+    // a snapshot shares the data with the store, but must not change when 
+    // the store folds deltas, compacts, adds nodes or gets closed
+    for(EdgeLayout layout : EdgeLayout.values()) {
+      GraphStore gstore = new GraphStore(layout);
+      Random rnd = new Random(18);
+      int nrNodes = 300;
+      gstore.startImport(10000);
+      for(int i=0; i<2000; i++) {
+        gstore.addEdge("n"+rnd.nextInt(nrNodes), "n"+rnd.nextInt(nrNodes), rnd.nextInt(100));
+      }
+      gstore.finishImport();
+      GraphStore snapshot1 = gstore.publishSnapshot();
+      int[][] edges1 = allEdges(snapshot1);
+      gstore.setMaxDeltaSize(4);
+      for(int i=0; i<1000; i++) {
+        gstore.insertEdge("n"+rnd.nextInt(nrNodes+50), "n"+rnd.nextInt(nrNodes), rnd.nextInt(100));
+      }
+      GraphStore snapshot2 = gstore.publishSnapshot();
+      int[][] edges2 = allEdges(snapshot2);
+      assertEquals(nrNodes, snapshot1.getNumberOfNodes());
+      assertEquals(gstore.getNumberOfNodes(), snapshot2.getNumberOfNodes());
+      for(int i=0; i<1000; i++) {
+        gstore.insertEdge("n"+rnd.nextInt(nrNodes+100), "n"+rnd.nextInt(nrNodes), rnd.nextInt(100));
+      }
+      gstore.compactEdges();
+      for(int i=0; i<1000; i++) {
+        gstore.insertEdge("n"+rnd.nextInt(nrNodes+150), "n"+rnd.nextInt(nrNodes), rnd.nextInt(100));
+      }
+      assertTrue(Arrays.deepEquals(edges1, allEdges(snapshot1)));
+      assertTrue(Arrays.deepEquals(edges2, allEdges(snapshot2)));
+      assertEquals(-1, snapshot1.getNodeId("n"+(nrNodes+120)));
+      assertEquals(gstore.getNodeId("n7"), snapshot1.getNodeId("n7"));
+      gstore.close();
+      assertTrue(Arrays.deepEquals(edges1, allEdges(snapshot1)));
+      assertTrue(Arrays.deepEquals(edges2, allEdges(snapshot2)));
+    }
+  }
+
+  // the out and the in edges of each node as node id and edge data pairs
+  private static int[][] allEdges(GraphStore gstore) {
+    int n = gstore.getNumberOfNodes();
+    int[][] edges = new int[2*n][];
+    EdgeCursor cursor = gstore.newEdgeCursor();
+    for(int i=0; i<n; i++) {
+      for(int d=0; d<2; d++) {
+        if(d == 0) {
+          gstore.getOutEdges(i, cursor);
+        } else {
+          gstore.getInEdges(i, cursor);
+        }
+        int[] list = new int[2*cursor.size()];
+        for(int j=0; j<cursor.size(); j++) {
+          list[2*j] = cursor.nodeId(j);
+          list[2*j+1] = cursor.edgeData(j);
+        }
+        edges[2*i+d] = list;
+      }
+    }
+    return edges;
+  }
+
+  @Test
+  public void topKTest1() {
+    int nrNodes = 200;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(10000);
+    Random rnd = new Random(9);
+    for(int i=0; i<nrNodes*20; i++) {
+      int from = (i%2 == 0) ? 0 : rnd.nextInt(nrNodes);
+      gstore.addEdge(from, rnd.nextInt(nrNodes), rnd.nextInt(50)-10);
+    }
+    gstore.finishImport();
+    int k = 7;
+    int[][] expected = new int[nrNodes*2][];
+    for(int i=0; i<nrNodes; i++) {
+      expected[2*i] = gstore.topKOutNeighbors(i, k);
+      expected[2*i+1] = gstore.topKInNeighbors(i, k);
+      int[] ids = new int[k];
+      int[] data = new int[k];
+      int n = gstore.topKOutNeighbors(i, k, ids, data);
+      assertEquals(Math.min(k, gstore.getOutDegree(i)), n);
+      for(int j=1; j<n; j++) {
+        assertTrue(data[j-1] >= data[j]);
+      }
+      // no edge that is not in the top k has larger edge data
+      EdgeCursor cursor = gstore.newEdgeCursor();
+      gstore.getOutEdges(i, cursor);
+      int larger = 0;
+      for(int j=0; j<cursor.size(); j++) {
+        if(n > 0 && cursor.edgeData(j) > data[n-1]) {
+          larger++;
+        }
+      }
+      assertTrue(larger <= n);
+    }
+    gstore.buildRankingIndex();
+    assertTrue(gstore.hasRankingIndex());
+    for(int round=0; round<2; round++) {
+      for(int i=0; i<nrNodes; i++) {
+        assertTrue(Arrays.equals(expected[2*i], gstore.topKOutNeighbors(i, k)));
+        assertTrue(Arrays.equals(expected[2*i+1], gstore.topKInNeighbors(i, k)));
+      }
+      gstore.freeze(true);
+    }
+    assertTrue(gstore.hasRankingIndex());
+    assertEquals(0, gstore.topKOutNeighbors(0, 0).length);
+    try {
+      gstore.topKInNeighbors(0, -1);
+      fail();
+    } catch(RuntimeException ex) {
+      assertEquals("k must be >= 0 but is -1", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void similarityTest1() {
+    GraphStore gstore = new GraphStore();
+    gstore.startImport(100);
+    gstore.addEdge("a", "x", 2);
+    gstore.addEdge("a", "y", 4);
+    gstore.addEdge("a", "z", 1);
+    gstore.addEdge("b", "y", 3);
+    gstore.addEdge("b", "z", 5);
+    gstore.addEdge("b", "w", 2);
+    gstore.addEdge("c", "y", 1);
+    gstore.finishImport();
+    int a = gstore.getNodeId("a");
+    int b = gstore.getNodeId("b");
+    double eps = 1e-9;
+    NeighborhoodSimilarity sim = new NeighborhoodSimilarity(gstore, Direction.OUT, false);
+    assertEquals(0.5, sim.jaccard(a, b), eps);
+    assertEquals(2.0/3, sim.cosine(a, b), eps);
+    assertEquals(2.0/3, sim.overlap(a, b), eps);
+    assertEquals(1/Math.log(3)+1/Math.log(2), sim.adamicAdar(a, b), eps);
+    sim = new NeighborhoodSimilarity(gstore, Direction.OUT, true);
+    double[] result = new double[SimilarityMeasure.values().length];
+    sim.similarities(a, b, result);
+    assertEquals(4.0/13, result[SimilarityMeasure.JACCARD.ordinal()], eps);
+    assertEquals(17/Math.sqrt(21*38), result[SimilarityMeasure.COSINE.ordinal()], eps);
+    assertEquals(4.0/7, result[SimilarityMeasure.OVERLAP.ordinal()], eps);
+    assertEquals(3/Math.log(3)+1/Math.log(2), result[SimilarityMeasure.ADAMIC_ADAR.ordinal()], eps);
+    // y and z share parents a and b
+    sim = new NeighborhoodSimilarity(gstore, Direction.IN, false);
+    int y = gstore.getNodeId("y");
+    int z = gstore.getNodeId("z");
+    assertEquals(2.0/3, sim.jaccard(y, z), eps);
+    assertEquals(0, sim.jaccard(y, gstore.getNodeId("a")), eps);
+  }
+
+  @Test
+  public void sharedNeighborsJobTest1() throws Exception {
+    int nrNodes = 300;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(10000);
+    Random rnd = new Random(10);
+    TreeSet<Long> added = new TreeSet<Long>();
+    for(int i=0; i<nrNodes*5; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      if(added.add(((long)from << 32) | to)) {
+        gstore.addEdge(from, to, 1+rnd.nextInt(20));
+      }
+    }
+    gstore.finishImport();
+    int k = 5;
+    for(PairQuery query : new PairQuery[]{PairQuery.SHARED_PARENT, PairQuery.SHARED_CHILD}) {
+      // expected: the pair query for all pairs, scores > 0 only
+      StringBuilder expected = new StringBuilder();
+      for(int x=0; x<nrNodes; x++) {
+        final int[] scores = new int[nrNodes];
+        Integer[] others = new Integer[nrNodes];
+        for(int y=0; y<nrNodes; y++) {
+          scores[y] = (y == x) ? 0 : gstore.query(query, x, y);
+          others[y] = y;
+        }
+        Arrays.sort(others, new Comparator<Integer>() {
+          @Override
+          public int compare(Integer o1, Integer o2) {
+            return scores[o1] != scores[o2] ? scores[o2] - scores[o1] : o1 - o2;
+          }
+        });
+        for(int i=0; i<k && scores[others[i]] > 0; i++) {
+          expected.append(x).append('\t').append(others[i]).append('\t').append(scores[others[i]]).append('\n');
+        }
+      }
+      for(int parallelism : new int[]{1, 0}) {
+        gstore.setBatchParallelism(parallelism);
+        StringWriter out = new StringWriter();
+        gstore.computeTopKSharedNeighbors(query, k, out);
+        // sort the lines by node, keeping the order within a node
+        String[] lines = out.toString().split("\n");
+        Arrays.sort(lines, new Comparator<String>() {
+          @Override
+          public int compare(String o1, String o2) {
+            return Integer.parseInt(o1.split("\t")[0]) - Integer.parseInt(o2.split("\t")[0]);
+          }
+        });
+        StringBuilder actual = new StringBuilder();
+        for(String line : lines) {
+          actual.append(line).append('\n');
+        }
+        assertEquals(expected.toString(), actual.toString());
+      }
+    }
+    // invalid arguments leave an existing file alone
+    File file = File.createTempFile("topk", ".tsv");
+    file.deleteOnExit();
+    FileWriter writer = new FileWriter(file);
+    writer.write("old\n");
+    writer.close();
+    try {
+      gstore.computeTopKSharedNeighbors(PairQuery.SHARED_PARENT, 0, file);
+      fail();
+    } catch(RuntimeException ex) {
+      assertEquals(4, file.length());
+    }
+    try {
+      gstore.computeTopKSharedNeighbors(PairQuery.SEQUENCE, k, file);
+      fail();
+    } catch(RuntimeException ex) {
+      assertEquals(4, file.length());
+    }
+    file.delete();
+  }
+
+  @Test
+  public void traversalTest1() {
+    // a sparse part and a dense part, so that both push and pull get used
+    int nrNodes = 600;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(100000);
+    Random rnd = new Random(11);
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addEdge(i, rnd.nextInt(nrNodes), 1);
+    }
+    for(int i=0; i<nrNodes*8; i++) {
+      gstore.addEdge(rnd.nextInt(nrNodes/2), rnd.nextInt(nrNodes/2), 1);
+    }
+    gstore.finishImport();
+    GraphTraversal traversal = new GraphTraversal(gstore);
+    EdgeCursor cursor = gstore.newEdgeCursor();
+    for(int source=0; source<nrNodes; source+=37) {
+      for(Direction direction : Direction.values()) {
+        // simple BFS for the expected distances
+        int[] expected = new int[nrNodes];
+        Arrays.fill(expected, -1);
+        expected[source] = 0;
+        int[] queue = new int[nrNodes];
+        int n = 1;
+        queue[0] = source;
+        for(int i=0; i<n; i++) {
+          if(direction == Direction.OUT) {
+            gstore.getOutEdges(queue[i], cursor);
+          } else {
+            gstore.getInEdges(queue[i], cursor);
+          }
+          for(int j=0; j<cursor.size(); j++) {
+            if(expected[cursor.nodeId(j)] < 0) {
+              expected[cursor.nodeId(j)] = expected[queue[i]]+1;
+              queue[n++] = cursor.nodeId(j);
+            }
+          }
+        }
+        assertTrue(Arrays.equals(expected, traversal.bfsDistances(source, direction)));
+        int[] twoHops = traversal.kHopNeighborhood(source, 2, direction);
+        int count = 0;
+        for(int i=0; i<nrNodes; i++) {
+          if(expected[i] == 1 || expected[i] == 2) {
+            count++;
+          }
+        }
+        assertEquals(count, twoHops.length);
+        for(int i=0; i<twoHops.length; i++) {
+          assertTrue(expected[twoHops[i]] == 1 || expected[twoHops[i]] == 2);
+          // increasing distance, then increasing node id
+          if(i > 0) {
+            int d = expected[twoHops[i]] - expected[twoHops[i-1]];
+            assertTrue(d > 0 || (d == 0 && twoHops[i] > twoHops[i-1]));
+          }
+        }
+        if(direction == Direction.OUT) {
+          for(int target=0; target<nrNodes; target+=13) {
+            assertEquals(expected[target], traversal.distance(source, target));
+            assertEquals(expected[target] >= 0, traversal.isReachable(source, target));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void reachabilityTest1() {
+    // random DAG: edges only go from earlier to later nodes of a random 
+    // permutation
+    int nrNodes = 400;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    Random rnd = new Random(12);
+    int[] perm = new int[nrNodes];
+    for(int i=0; i<nrNodes; i++) {
+      int j = rnd.nextInt(i+1);
+      perm[i] = perm[j];
+      perm[j] = i;
+    }
+    gstore.startImport(10000);
+    for(int i=0; i<nrNodes*2; i++) {
+      int a = rnd.nextInt(nrNodes-1);
+      int b = a+1+rnd.nextInt(Math.min(20, nrNodes-a-1));
+      gstore.addEdge(perm[a], perm[b], 1);
+    }
+    gstore.finishImport();
+    gstore.freeze();
+    ReachabilityIndex index = new ReachabilityIndex(gstore);
+    GraphTraversal traversal = new GraphTraversal(gstore);
+    for(int a=0; a<nrNodes; a+=7) {
+      int[] distances = traversal.bfsDistances(a, Direction.OUT);
+      int nrDescendants = 0;
+      for(int b=0; b<nrNodes; b++) {
+        boolean expected = b != a && distances[b] > 0;
+        assertEquals(expected, index.isAncestor(a, b));
+        assertEquals(expected, index.isDescendant(b, a));
+        if(expected) {
+          nrDescendants++;
+        }
+      }
+      int[] descendants = index.getDescendants(a);
+      assertEquals(nrDescendants, descendants.length);
+      for(int i=0; i<descendants.length; i++) {
+        assertTrue(distances[descendants[i]] > 0);
+        if(i > 0) {
+          assertTrue(index.getTopologicalPosition(descendants[i-1]) < index.getTopologicalPosition(descendants[i]));
+        }
+      }
+      for(int ancestor : index.getAncestors(a)) {
+        assertTrue(index.isAncestor(ancestor, a));
+      }
+    }
+    // a cycle is not allowed
+    GraphStore cyclic = new GraphStore();
+    cyclic.startImport(10);
+    cyclic.addEdge("a", "b", 1);
+    cyclic.addEdge("b", "c", 1);
+    cyclic.addEdge("c", "a", 1);
+    cyclic.finishImport();
+    try {
+      new ReachabilityIndex(cyclic);
+      fail("A graph with a cycle should be rejected");
+    } catch (RuntimeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void queryCacheTest1() {
+    int nrNodes = 100;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(10000);
+    Random rnd = new Random(13);
+    for(int i=0; i<nrNodes*10; i++) {
+      gstore.addEdge(rnd.nextInt(nrNodes), rnd.nextInt(nrNodes), rnd.nextInt(100));
+    }
+    gstore.finishImport();
+    assertEquals(null, gstore.getQueryCache());
+    int[] expected = new int[nrNodes*nrNodes*4];
+    for(int i=0; i<nrNodes; i++) {
+      for(int j=0; j<nrNodes; j++) {
+        for(PairQuery query : PairQuery.values()) {
+          expected[(i*nrNodes+j)*4+query.ordinal()] = gstore.query(query, i, j);
+        }
+      }
+    }
+    gstore.setQueryCacheSize(500);
+    // skewed: most queries for a few pairs
+    for(int n=0; n<50000; n++) {
+      int i = (n%2 == 0) ? rnd.nextInt(5) : rnd.nextInt(nrNodes);
+      int j = (n%2 == 0) ? rnd.nextInt(5) : rnd.nextInt(nrNodes);
+      PairQuery query = PairQuery.values()[rnd.nextInt(4)];
+      assertEquals(expected[(i*nrNodes+j)*4+query.ordinal()], gstore.query(query, i, j));
+    }
+    PairQueryCache cache = gstore.getQueryCache();
+    assertTrue(cache.getHits() > 25000);
+    assertTrue(cache.getMisses() > 0);
+    assertTrue(cache.getEvictions() > 0);
+    assertTrue(cache.size() <= 500);
+    // a negative id does not change the query part of the key
+    long key = PairQueryCache.key(PairQuery.FIRST_EDGE_DATA, 3, -1);
+    assertEquals(PairQuery.FIRST_EDGE_DATA.ordinal(), (int)(key >>> 62));
+    assertEquals(3, (int)((key >>> 31) & 0x7FFFFFFFL));
+    // new edges clear the cache
+    assertEquals(expected[(1*nrNodes+2)*4], gstore.getFirstEdgeData(1, 2));
+    gstore.insertEdge(1, 2, Integer.MAX_VALUE);
+    assertEquals(0, cache.size());
+    assertTrue(gstore.getFirstEdgeData(1, 2) != Integer.MIN_VALUE);
+    gstore.setQueryCacheSize(0);
+    assertEquals(null, gstore.getQueryCache());
+  }
+
+  @Test
+  public void reorderTest1() {
+    int nrNodes = 150;
+    for(NodeOrder order : NodeOrder.values()) {
+      for(int frozen=0; frozen<3; frozen++) {
+        GraphStore gstore = new GraphStore();
+        for(int i=0; i<nrNodes; i++) {
+          gstore.addNode("n"+i);
+        }
+        gstore.startImport(10000);
+        // no duplicate edges, so that the first edge found is always the same
+        Random rnd = new Random(14);
+        TreeSet<Long> added = new TreeSet<Long>();
+        for(int i=0; i<nrNodes*6; i++) {
+          int from = rnd.nextInt(nrNodes);
+          int to = rnd.nextInt(nrNodes);
+          if(added.add(((long)from << 32) | to)) {
+            gstore.addEdge(from, to, rnd.nextInt(100));
+          }
+        }
+        gstore.finishImport();
+        if(frozen > 0) {
+          gstore.freeze(frozen == 2);
+        }
+        int[] expected = new int[nrNodes*nrNodes*4];
+        for(int i=0; i<nrNodes; i++) {
+          for(int j=0; j<nrNodes; j++) {
+            for(PairQuery query : PairQuery.values()) {
+              expected[(i*nrNodes+j)*4+query.ordinal()] = gstore.query(query, i, j);
+            }
+          }
+        }
+        int[] newIds = gstore.reorderNodes(order);
+        assertEquals(frozen > 0, gstore.isFrozen());
+        boolean[] used = new boolean[nrNodes];
+        for(int i=0; i<nrNodes; i++) {
+          assertFalse(used[newIds[i]]);
+          used[newIds[i]] = true;
+          assertEquals("n"+i, gstore.getNodeName(newIds[i]));
+          assertEquals(newIds[i], gstore.getNodeId("n"+i));
+        }
+        for(int i=0; i<nrNodes; i++) {
+          for(int j=0; j<nrNodes; j++) {
+            for(PairQuery query : PairQuery.values()) {
+              assertEquals(expected[(i*nrNodes+j)*4+query.ordinal()], gstore.query(query, newIds[i], newIds[j]));
+            }
+          }
+        }
+        if(order == NodeOrder.DEGREE) {
+          for(int i=1; i<nrNodes; i++) {
+            assertTrue(gstore.getOutDegree(i-1)+gstore.getInDegree(i-1) >= gstore.getOutDegree(i)+gstore.getInDegree(i));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void metricsTest1() throws Exception {
+    int nrNodes = 100;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(10000);
+    Random rnd = new Random(15);
+    for(int i=0; i<nrNodes*10; i++) {
+      gstore.addEdge(rnd.nextInt(nrNodes), rnd.nextInt(nrNodes), rnd.nextInt(100));
+    }
+    gstore.finishImport();
+    assertEquals(null, gstore.getMetrics());
+    int[] expected = new int[nrNodes*4];
+    for(int i=0; i<nrNodes; i++) {
+      for(PairQuery query : PairQuery.values()) {
+        expected[i*4+query.ordinal()] = gstore.query(query, i, (i*7)%nrNodes);
+      }
+    }
+    GraphMetrics metrics = gstore.enableMetrics();
+    for(int i=0; i<nrNodes; i++) {
+      for(PairQuery query : PairQuery.values()) {
+        assertEquals(expected[i*4+query.ordinal()], gstore.query(query, i, (i*7)%nrNodes));
+      }
+    }
+    long intersections = 0;
+    for(PairQuery query : PairQuery.values()) {
+      assertEquals(nrNodes, metrics.getQueryCount(query));
+      assertTrue(metrics.getTotalLatencyNanos(query) > 0);
+      assertTrue(metrics.getLatencyPercentileNanos(query, 50) <= metrics.getLatencyPercentileNanos(query, 99));
+    }
+    for(long n : metrics.getSmallerListSizeHistogram()) {
+      intersections += n;
+    }
+    assertTrue(intersections > 0 && intersections <= 3*nrNodes);
+    assertTrue(metrics.getProbes() > 0);
+    assertTrue(metrics.getProbeRatio() > 0 && metrics.getProbeRatio() <= 1.0);
+    // JMX
+    ObjectName name = metrics.registerMBean("metricsTest1");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    assertEquals(metrics.getProbes(), server.getAttribute(name, "Probes"));
+    assertEquals((long)nrNodes, server.invoke(name, "getQueryCount", 
+            new Object[]{"SEQUENCE"}, new String[]{String.class.getName()}));
+    gstore.disableMetrics();
+    assertFalse(server.isRegistered(name));
+    assertEquals(null, gstore.getMetrics());
+    // footprint and sink
+    final Map<String, Double> reported = new HashMap<String, Double>();
+    MetricsSink sink = new MetricsSink() {
+      @Override
+      public void counter(String name, long value) { reported.put(name, (double)value); }
+      @Override
+      public void gauge(String name, double value) { reported.put(name, value); }
+      @Override
+      public void histogram(String name, long[] buckets) { reported.put(name, (double)buckets.length); }
+    };
+    MemoryFootprint footprint = gstore.getMemoryFootprint();
+    assertTrue(footprint.getBytes("nodes.names") >= 16+2*nrNodes);
+    assertTrue(footprint.getBytes("outEdges.store") >= 16+4*2*nrNodes*10);
+    assertTrue(footprint.getBytes("inEdges.id2chunk") >= 16+4*nrNodes);
+    assertTrue(footprint.toString().endsWith("total\t"+footprint.getTotalBytes()+"\n"));
+    gstore.enableMetrics();
+    gstore.getSumEdgeDataSharedChild(1, 2);
+    gstore.reportMetrics(sink);
+    assertEquals(1.0, reported.get("query.SHARED_CHILD.count"), 0.0);
+    assertEquals((double)footprint.getTotalBytes(), reported.get("footprint.total"), 0.0);
+    gstore.freeze();
+    footprint = gstore.getMemoryFootprint();
+    assertEquals(0, footprint.getBytes("outEdges.store"));
+    assertTrue(footprint.getBytes("outEdges.nodeIds") >= 16+4*nrNodes*10);
+    gstore.disableMetrics();
+  }
+
+  @Test
+  public void bigLayoutTest1() {
+    Random rnd = new Random(16);
+    // the BIG layout and a copy of the edges to big edge lists
+    int nrNodes = 100;
+    GraphStore gstore = new GraphStore();
+    GraphStore bigstore = new GraphStore(EdgeLayout.BIG);
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+      bigstore.addNode("n"+i);
+    }
+    gstore.startImport(10000);
+    bigstore.startImport(10000);
+    TreeSet<Long> added = new TreeSet<Long>();
+    for(int i=0; i<nrNodes*8; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      if(added.add(((long)from << 32) | to)) {
+        int d = rnd.nextInt(100);
+        gstore.addEdge(from, to, d);
+        bigstore.addEdge(from, to, d);
+      }
+    }
+    gstore.finishImport();
+    bigstore.finishImport();
+    BigChunkedEdgeLists copy = new BigChunkedEdgeLists(gstore.getOutEdgeLists());
+    assertEquals(gstore.getOutEdgeLists().getNumberOfEdges(), copy.getNumberOfEdges());
+    EdgeCursor c1 = gstore.newEdgeCursor();
+    EdgeCursor c2 = copy.newCursor();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.getOutEdges(i, c1);
+      copy.position(i, c2);
+      assertEquals(c1.size(), c2.size());
+      for(int j=0; j<c1.size(); j++) {
+        assertEquals(c1.nodeId(j), c2.nodeId(j));
+        assertEquals(c1.edgeData(j), c2.edgeData(j));
+      }
+      for(int j=0; j<nrNodes; j++) {
+        for(PairQuery query : PairQuery.values()) {
+          assertEquals(gstore.query(query, i, j), bigstore.query(query, i, j));
+        }
+      }
+    }
+    bigstore.insertEdge(1, 2, 5);
+    bigstore.compactEdges();
+    assertTrue(bigstore.getFirstEdgeData(1, 2) != Integer.MIN_VALUE);
+  }
+
+  @Test
+  public void bigFreezeTest1() {
+    // tiny segments, so the frozen edge lists, the compressed blocks and 
+    // the ranking indices all need many segments
+    for(boolean compress : new boolean[]{false, true}) {
+      Random rnd = new Random(20);
+      int nrNodes = 200;
+      GraphStore gstore = new GraphStore();
+      GraphStore bigstore = new GraphStore(EdgeLayout.BIG, 6);
+      gstore.startImport(10000);
+      bigstore.startImport(10000);
+      for(int i=0; i<nrNodes*8; i++) {
+        int from = rnd.nextInt(nrNodes);
+        int to = rnd.nextInt(nrNodes);
+        int d = rnd.nextInt(100);
+        gstore.addEdge("n"+from, "n"+to, d);
+        bigstore.addEdge("n"+from, "n"+to, d);
+      }
+      gstore.finishImport();
+      bigstore.finishImport();
+      gstore.insertEdge("n1", "n2", 5);
+      bigstore.insertEdge("n1", "n2", 5);
+      bigstore.compactEdges();
+      gstore.freeze(compress);
+      bigstore.freeze(compress);
+      if(compress) {
+        assertTrue(((CompressedEdges)bigstore.getOutEdgeLists()).bytes.length > 1);
+      } else {
+        assertTrue(((CsrEdges)bigstore.getOutEdgeLists()).nodeIds.length > 10);
+      }
+      assertEquals(gstore.getOutEdgeLists().getNumberOfEdges(), bigstore.getOutEdgeLists().getNumberOfEdges());
+      assertTrue(Arrays.deepEquals(allEdges(gstore), allEdges(bigstore)));
+      gstore.buildRankingIndex();
+      bigstore.buildRankingIndex();
+      for(int i=0; i<gstore.getNumberOfNodes(); i++) {
+        assertTrue(Arrays.equals(gstore.topKOutNeighbors(i, 5), bigstore.topKOutNeighbors(i, 5)));
+        assertTrue(Arrays.equals(gstore.topKInNeighbors(i, 5), bigstore.topKInNeighbors(i, 5)));
+      }
+    }
+    // a segment of the OFF_HEAP layout must fit into one direct buffer
+    new GraphStore(EdgeLayout.BIG, 30);
+    try {
+      new GraphStore(EdgeLayout.OFF_HEAP, 29);
+      fail();
+    } catch(RuntimeException ex) {
+      assertTrue(ex.getMessage().contains("between 4 and 28"));
+    }
+  }
+
+  @Test
+  public void bigSwitchTest1() {
+    // the big edge lists take over the full arrays without copying them 
+    // and keep the layout and the segment shift
+    Random rnd = new Random(21);
+    ModifiableEdgeLists[] small = new ModifiableEdgeLists[]{new ChunkedEdgeLists(5), new SplitChunkedEdgeLists(5)};
+    for(ModifiableEdgeLists edges : small) {
+      ModifiableEdgeLists reference = new ChunkedEdgeLists();
+      int nrNodes = 50;
+      int[] chunk = new int[20];
+      for(int i=0; i<nrNodes; i++) {
+        edges.addNode();
+        reference.addNode();
+        if(i%3 != 0) {
+          int n = addRandomChunk(rnd, chunk, nrNodes);
+          edges.setEdges(i, chunk, 2*n);
+          reference.setEdges(i, chunk, 2*n);
+        }
+      }
+      ModifiableEdgeLists big;
+      if(edges instanceof ChunkedEdgeLists) {
+        big = ((ChunkedEdgeLists)edges).toBig();
+        assertSame(((ChunkedEdgeLists)edges).getStore().getBackingArray(), ((BigChunkedEdgeLists)big).getStore().getSegment(0));
+        assertEquals(5, ((BigChunkedEdgeLists)big).getStore().getSegmentShift());
+      } else {
+        big = ((SplitChunkedEdgeLists)edges).toBig();
+        assertSame(((SplitChunkedEdgeLists)edges).getIdStore().getBackingArray(), ((BigSplitChunkedEdgeLists)big).getIdStore().getSegment(0));
+        assertEquals(5, ((BigSplitChunkedEdgeLists)big).getIdStore().getSegmentShift());
+      }
+      assertTrue(Arrays.deepEquals(allEdges(reference), allEdges(big)));
+      assertEquals(reference.getNumberOfEdges(), big.getNumberOfEdges());
+      // replace some of the old chunks and add new nodes after the switch
+      for(int i=0; i<nrNodes+20; i++) {
+        if(i >= nrNodes) {
+          big.addNode();
+          reference.addNode();
+        }
+        if(i%2 == 0) {
+          int n = addRandomChunk(rnd, chunk, nrNodes);
+          big.setEdges(i, chunk, 2*n);
+          reference.setEdges(i, chunk, 2*n);
+        }
+      }
+      assertTrue(Arrays.deepEquals(allEdges(reference), allEdges(big)));
+      assertEquals(reference.getNumberOfEdges(), big.getNumberOfEdges());
+    }
+  }
+  
+  // fill chunk with 1 to 10 random edges sorted by node id
+  private static int addRandomChunk(Random rnd, int[] chunk, int nrNodes) {
+    int n = 1+rnd.nextInt(10);
+    int id = 0;
+    for(int j=0; j<n; j++) {
+      id += rnd.nextInt(nrNodes/10)+1;
+      chunk[2*j] = id;
+      chunk[2*j+1] = rnd.nextInt(100);
+    }
+    return n;
+  }
+
+  // the edges of each node as node id and edge data pairs
+  private static int[][] allEdges(EdgeLists edges) {
+    int n = edges.getNumberOfNodes();
+    int[][] result = new int[n][];
+    EdgeCursor cursor = edges.newCursor();
+    for(int i=0; i<n; i++) {
+      edges.position(i, cursor);
+      result[i] = new int[2*cursor.size()];
+      for(int j=0; j<cursor.size(); j++) {
+        result[i][2*j] = cursor.nodeId(j);
+        result[i][2*j+1] = cursor.edgeData(j);
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void offHeapLayoutTest1() {
+    Random rnd = new Random(17);
+    // edge lists rebuilt from empty ones keep the segment size
+    OffHeapChunkedEdgeLists lists = new OffHeapChunkedEdgeLists(6);
+    OffHeapChunkedEdgeLists empty = (OffHeapChunkedEdgeLists)lists.newEmpty();
+    assertEquals(6, empty.getStore().getSegmentShift());
+    lists.close();
+    empty.close();
+    // a store with the off-heap layout gives the same results
+    int nrNodes = 100;
+    GraphStore gstore = new GraphStore();
+    GraphStore offstore = new GraphStore(EdgeLayout.OFF_HEAP);
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+      offstore.addNode("n"+i);
+    }
+    gstore.startImport(10000);
+    offstore.startImport(10000);
+    TreeSet<Long> added = new TreeSet<Long>();
+    for(int i=0; i<nrNodes*8; i++) {
+      int from = rnd.nextInt(nrNodes);
+      int to = rnd.nextInt(nrNodes);
+      if(added.add(((long)from << 32) | to)) {
+        int d = rnd.nextInt(100);
+        gstore.addEdge(from, to, d);
+        offstore.addEdge(from, to, d);
+      }
+    }
+    gstore.finishImport();
+    offstore.finishImport();
+    for(int k=0; k<2; k++) {
+      for(int i=0; i<nrNodes; i++) {
+        for(int j=0; j<nrNodes; j++) {
+          for(PairQuery query : PairQuery.values()) {
+            assertEquals(gstore.query(query, i, j), offstore.query(query, i, j));
+          }
+        }
+      }
+      // with delta buffers, which the cursors merge in
+      for(int i=0; i<50; i++) {
+        int from = rnd.nextInt(nrNodes);
+        int to = rnd.nextInt(nrNodes);
+        if(added.add(((long)from << 32) | to)) {
+          gstore.insertEdge(from, to, 7);
+          offstore.insertEdge(from, to, 7);
+        }
+      }
+    }
+    offstore.compactEdges();
+    assertEquals(gstore.getSumEdgeDataSharedChild(3, 4), offstore.getSumEdgeDataSharedChild(3, 4));
+    offstore.freeze();
+    assertEquals(gstore.getSumEdgeDataSequence(3, 4), offstore.getSumEdgeDataSequence(3, 4));
+    offstore.close();
+  }
+
+  @Test
+  public void cursorTest1() {
+    GraphStore gstore = new GraphStore();
+    gstore.addNode("a");
+    gstore.addNode("b");
+    gstore.addNode("c");
+    gstore.startImport(10);
+    gstore.addEdge("a", "c", 3);
+    gstore.addEdge("a", "b", 2);
+    gstore.addEdge("c", "b", 4);
+    gstore.finishImport();
+    int a = gstore.getNodeId("a");
+    int b = gstore.getNodeId("b");
+    int c = gstore.getNodeId("c");
+    EdgeCursor cursor = gstore.newEdgeCursor();
+    for(int round=0; round<2; round++) {
+      assertTrue(gstore.getOutEdges(a, cursor));
+      assertEquals(2, cursor.size());
+      assertEquals(b, cursor.nodeId(0));
+      assertEquals(2, cursor.edgeData(0));
+      assertEquals(c, cursor.nodeId(1));
+      assertEquals(3, cursor.edgeData(1));
+      assertEquals(1, cursor.find(c, 0));
+      assertTrue(cursor.find(a, 0) < 0);
+      assertTrue(gstore.getInEdges(b, cursor));
+      assertEquals(2, cursor.size());
+      assertEquals(4, cursor.edgeData(cursor.find(c, 0)));
+      assertFalse(gstore.getOutEdges(b, cursor));
+      assertEquals(0, cursor.size());
+      // the same again on the frozen store
+      gstore.freeze();
+    }
+  }
+
+  @Test
+  public void mappedFileTest1() throws Exception {
+    int nrNodes = 120;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("http://example.org/n"+i+(i%10==0 ? "\u00e4" : ""));
+    }
+    gstore.startImport(1000);
+    Random rnd = new Random(3);
+    for(int i=0; i<nrNodes; i++) {
+      for(int j=0; j<nrNodes; j++) {
+        if(rnd.nextInt(8) == 0) {
+          gstore.addEdge(i, j, rnd.nextInt(100));
+        }
+      }
+    }
+    gstore.finishImport();
+    File file = File.createTempFile("gstore", ".bin");
+    file.deleteOnExit();
+    GraphStoreFile.write(gstore, file);
+    GraphStore mapped = GraphStoreFile.open(file);
+    assertTrue(mapped.isFrozen());
+    assertEquals(nrNodes, mapped.getNumberOfNodes());
+    for(int i=0; i<nrNodes; i++) {
+      String name = gstore.getNodeName(i);
+      assertEquals(name, mapped.getNodeName(i));
+      assertEquals(i, mapped.getNodeId(name));
+      assertEquals(gstore.getOutDegree(i), mapped.getOutDegree(i));
+      for(int j=0; j<nrNodes; j++) {
+        assertEquals(gstore.getFirstEdgeData(i, j), mapped.getFirstEdgeData(i, j));
+        assertEquals(gstore.getSumEdgeDataSharedParent(i, j), mapped.getSumEdgeDataSharedParent(i, j));
+        assertEquals(gstore.getSumEdgeDataSharedChild(i, j), mapped.getSumEdgeDataSharedChild(i, j));
+        assertEquals(gstore.getSumEdgeDataSequence(i, j), mapped.getSumEdgeDataSequence(i, j));
+      }
+    }
+    assertEquals(-1, mapped.getNodeId("http://example.org/unknown"));
+    // a truncated file or a corrupt header is rejected before mapping
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length()-8);
+    raf.close();
+    try {
+      GraphStoreFile.open(file);
+      fail();
+    } catch(IOException ex) {
+      assertTrue(ex.getMessage().contains("truncated"));
+    }
+    raf = new RandomAccessFile(file, "rw");
+    raf.seek(12);
+    raf.write(new byte[]{3, 0, 0, 0});
+    raf.close();
+    try {
+      GraphStoreFile.open(file);
+      fail();
+    } catch(IOException ex) {
+      assertTrue(ex.getMessage().contains("hash table size 3"));
+    }
+    file.delete();
+  }
+
+  @Test
+  public void batchTest1() {
+    int nrNodes = 300;
+    GraphStore gstore = new GraphStore();
+    for(int i=0; i<nrNodes; i++) {
+      gstore.addNode("n"+i);
+    }
+    gstore.startImport(100000);
+    Random rnd = new Random(4);
+    for(int i=0; i<nrNodes*20; i++) {
+      gstore.addEdge(rnd.nextInt(nrNodes), rnd.nextInt(nrNodes), rnd.nextInt(100));
+    }
+    gstore.finishImport();
+    int n = 5000;
+    int[] n1 = new int[n];
+    int[] n2 = new int[n];
+    for(int i=0; i<n; i++) {
+      n1[i] = rnd.nextInt(nrNodes);
+      n2[i] = rnd.nextInt(nrNodes);
+    }
+    int[] result = new int[n];
+    for(int parallelism : new int[]{0, 1, 3}) {
+      gstore.setBatchParallelism(parallelism);
+      for(PairQuery query : PairQuery.values()) {
+        switch(query) {
+          case FIRST_EDGE_DATA: gstore.getFirstEdgeData(n1, n2, result); break;
+          case SHARED_PARENT: gstore.getSumEdgeDataSharedParent(n1, n2, result); break;
+          case SHARED_CHILD: gstore.getSumEdgeDataSharedChild(n1, n2, result); break;
+          case SEQUENCE: gstore.getSumEdgeDataSequence(n1, n2, result); break;
+        }
+        for(int i=0; i<n; i++) {
+          assertEquals(gstore.query(query, n1[i], n2[i]), result[i]);
+        }
+      }
+    }
+    // the snapshots use the pool of the store instead of their own
+    GraphStore snapshot1 = gstore.publishSnapshot();
+    GraphStore snapshot2 = gstore.publishSnapshot();
+    snapshot1.getFirstEdgeData(n1, n2, result);
+    snapshot2.getFirstEdgeData(n1, n2, result);
+    assertTrue(gstore.getBatchPool() != null);
+    assertSame(gstore.getBatchPool(), snapshot1.getBatchPool());
+    assertSame(gstore.getBatchPool(), snapshot2.getBatchPool());
+  }
+
+  @Test
+  public void intersectionTest1() {
+    // lists of very different sizes, so that all strategies get used by
+    // ADAPTIVE, every strategy must give the same result as a merge
+    Random rnd = new Random(5);
+    int[] sizes = new int[]{0, 1, 2, 5, 40, 300, 3000};
+    int[] pos1 = new int[3000];
+    int[] pos2 = new int[3000];
+    for(int size1 : sizes) {
+      for(int size2 : sizes) {
+        EdgeCursor c1 = randomCursor(rnd, size1, 4000);
+        EdgeCursor c2 = randomCursor(rnd, size2, 4000);
+        int expectedSum = EdgeIntersection.sumEdgeData(c1, c2, IntersectionStrategy.MERGE);
+        int expectedCount = EdgeIntersection.intersect(c1, c2, IntersectionStrategy.MERGE, pos1, pos2);
+        for(IntersectionStrategy strategy : IntersectionStrategy.values()) {
+          assertEquals(expectedSum, EdgeIntersection.sumEdgeData(c1, c2, strategy));
+          assertEquals(expectedCount, EdgeIntersection.intersect(c1, c2, strategy, pos1, pos2));
+          int sum = 0;
+          for(int i=0; i<expectedCount; i++) {
+            assertEquals(c1.nodeId(pos1[i]), c2.nodeId(pos2[i]));
+            sum += c1.edgeData(pos1[i]) + c2.edgeData(pos2[i]);
+          }
+          assertEquals(expectedSum, sum);
+        }
+      }
+    }
+  }
+
+  // a cursor over size distinct sorted random node ids below max
+  private EdgeCursor randomCursor(Random rnd, int size, int max) {
+    TreeSet<Integer> set = new TreeSet<Integer>();
+    while(set.size() < size) {
+      set.add(rnd.nextInt(max));
+    }
+    int[] ids = new int[size];
+    int[] data = new int[size];
+    int i = 0;
+    for(int id : set) {
+      ids[i] = id;
+      data[i] = rnd.nextInt(100);
+      i++;
+    }
+    ArrayEdgeCursor cursor = new ArrayEdgeCursor();
+    cursor.set(ids, 0, data, 0, 1, size);
+    return cursor;
   }
 }
@@ -0,0 +1,107 @@
+package com.jpetrak.miscfastcompact.graph;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestNodeNames1 {
+  @Test
+  public void nodeDictionaryTest1() {
+    NodeDictionary dict = new NodeDictionary();
+    int n = 20000;
+    for(int i=0; i<n; i++) {
+      assertEquals(i, dict.add("http://dbpedia.org/resource/Node_"+i));
+    }
+    // non-ASCII names go through the UTF-8 bytes
+    int idU = dict.add("http://de.dbpedia.org/resource/M\u00fcnchen");
+    int idE = dict.add("");
+    assertEquals(n+2, dict.size());
+    assertEquals(idU, dict.add("http://de.dbpedia.org/resource/M\u00fcnchen"));
+    assertEquals(idE, dict.getId(""));
+    for(int i=0; i<n; i+=13) {
+      assertEquals(i, dict.getId("http://dbpedia.org/resource/Node_"+i));
+      assertEquals("http://dbpedia.org/resource/Node_"+i, dict.getName(i));
+    }
+    assertEquals("http://de.dbpedia.org/resource/M\u00fcnchen", dict.getName(idU));
+    assertEquals("", dict.getName(idE));
+    assertEquals(-1, dict.getId("http://dbpedia.org/resource/Node_"+n));
+    assertEquals(-1, dict.getId("http://de.dbpedia.org/resource/M\u00fcnchen2"));
+  }
+
+  @Test
+  public void segmentedNamesTest1() {
+    // small segments, so the names are spread over many of them
+    NodeDictionary dict = new NodeDictionary(16, 8);
+    int n = 3000;
+    for(int i=0; i<n; i++) {
+      assertEquals(i, dict.add("http://dbpedia.org/resource/Node_"+i));
+    }
+    assertTrue(dict.getNamesStore().size() > 256*100);
+    NodeDictionary copy = new NodeDictionary(dict);
+    dict.add("added later");
+    for(int i=0; i<n; i++) {
+      assertEquals(i, dict.getId("http://dbpedia.org/resource/Node_"+i));
+      assertEquals("http://dbpedia.org/resource/Node_"+i, dict.getName(i));
+      assertEquals("http://dbpedia.org/resource/Node_"+i, copy.getName(i));
+    }
+    assertEquals(n, copy.size());
+    assertEquals(-1, copy.getId("added later"));
+  }
+
+  @Test
+  public void frontCodedTest1() {
+    int n = 1000;
+    String[] names = new String[n];
+    for(int i=0; i<n; i++) {
+      names[i] = "http://dbpedia.org/resource/"+(i%3==0 ? "Category:" : "")+"Node_"+(n-i);
+    }
+    names[5] = "http://de.dbpedia.org/resource/M\u00fcnchen";
+    names[6] = "a";
+    // insertion order: ids as added, but no lookup by name
+    FrontCodedNameStore store = new FrontCodedNameStore(8);
+    for(String name : names) {
+      store.addNode(name);
+    }
+    assertFalse(store.isSorted());
+    assertEquals(n, store.size());
+    for(int i=0; i<n; i++) {
+      assertEquals(names[i], store.getNodeName(i));
+    }
+    // sorted order: ids in sorted order and lookup by name
+    store = FrontCodedNameStore.createSorted(names, 8);
+    assertTrue(store.isSorted());
+    assertTrue(store.getEncodedSize() < n*20);
+    String[] sorted = names.clone();
+    java.util.Arrays.sort(sorted);
+    byte[] buffer = new byte[store.getMaxNameLength()];
+    for(int i=0; i<n; i++) {
+      assertEquals(sorted[i], store.getNodeName(i));
+      assertEquals(i, store.getNodeId(sorted[i]));
+      assertEquals(sorted[i].getBytes(java.nio.charset.Charset.forName("UTF-8")).length, 
+              store.getNodeNameBytes(i, buffer));
+    }
+    assertEquals(-1, store.getNodeId("http://dbpedia.org/resource/Node_0"));
+    assertEquals(-1, store.getNodeId(""));
+    assertEquals(-1, store.getNodeId("zzz"));
+  }
+
+  @Test
+  public void frontCodedSegmentsTest1() {
+    // segments of 256 bytes, so buckets get moved to new segments
+    int n = 1000;
+    FrontCodedNameStore store = new FrontCodedNameStore(8, 8);
+    String[] names = new String[n];
+    for(int i=0; i<n; i++) {
+      names[i] = String.format("http://dbpedia.org/resource/Node_%05d", i);
+      store.addNode(names[i]);
+    }
+    assertTrue(store.isSorted());
+    assertTrue(store.getEncodedSize() > 256);
+    for(int i=0; i<n; i++) {
+      assertEquals(names[i], store.getNodeName(i));
+      assertEquals(i, store.getNodeId(names[i]));
+    }
+    assertEquals(-1, store.getNodeId("http://dbpedia.org/resource/Node_"));
+  }
+}
@@ -0,0 +1,309 @@
+package com.jpetrak.miscfastcompact.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestStores1 {
+  @Test
+  public void bigStoreTest1() {
+    // small segments, so chunks have to skip to the next segment
+    BigStoreOfInts ints = new BigStoreOfInts(4);
+    BigStoreOfChars chars = new BigStoreOfChars(4);
+    Random rnd = new Random(16);
+    long[] indexes = new long[200];
+    long[] charIndexes = new long[200];
+    int[][] data = new int[200][];
+    for(int i=0; i<data.length; i++) {
+      data[i] = new int[rnd.nextInt(14)];
+      for(int j=0; j<data[i].length; j++) {
+        data[i][j] = rnd.nextInt();
+      }
+      indexes[i] = (i%2 == 0) ? ints.addData(data[i]) : ints.addFixedLengthData(data[i]);
+      char[] c = new char[data[i].length];
+      for(int j=0; j<c.length; j++) {
+        c[j] = (char)data[i][j];
+      }
+      charIndexes[i] = (i%2 == 0) ? chars.addData(c) : chars.addFixedLengthData(c);
+    }
+    assertTrue(ints.size() > 16*100);
+    for(int i=0; i<data.length; i++) {
+      int[] stored = (i%2 == 0) ? ints.getData(indexes[i]) : ints.getFixedLengthData(indexes[i], data[i].length);
+      assertTrue(Arrays.equals(data[i], stored));
+      char[] c = (i%2 == 0) ? chars.getData(charIndexes[i]) : chars.getFixedLengthData(charIndexes[i], data[i].length);
+      assertEquals(data[i].length, c.length);
+      for(int j=0; j<c.length; j++) {
+        assertEquals((char)data[i][j], c[j]);
+      }
+      if(i%2 == 0) {
+        assertEquals(data[i].length, ints.getSize(indexes[i]));
+        int[] segment = ints.getSegment(indexes[i]);
+        int offset = ints.getOffset(indexes[i]);
+        for(int j=0; j<data[i].length; j++) {
+          assertEquals(data[i][j], segment[offset+1+j]);
+        }
+      }
+    }
+    try {
+      ints.addData(new int[16]);
+      fail("Chunk larger than a segment must not be added");
+    } catch(RuntimeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void snapshotTest1() {
+    // the views share the data, so data added to or freed by the store 
+    // later must not affect them
+    StoreOfInts small = new StoreOfInts(16);
+    BigStoreOfInts big = new BigStoreOfInts(6);
+    OffHeapStoreOfInts offHeap = new OffHeapStoreOfInts(6);
+    Random rnd = new Random(19);
+    int[][] data = new int[50][];
+    long[][] indexes = new long[3][data.length];
+    for(int i=0; i<data.length; i++) {
+      data[i] = new int[1+rnd.nextInt(20)];
+      for(int j=0; j<data[i].length; j++) {
+        data[i][j] = rnd.nextInt();
+      }
+      indexes[0][i] = small.addData(data[i]);
+      indexes[1][i] = big.addData(data[i]);
+      indexes[2][i] = offHeap.addData(data[i]);
+    }
+    StoreOfInts smallView = small.snapshot();
+    BigStoreOfInts bigView = big.snapshot();
+    OffHeapStoreOfInts offHeapView = offHeap.snapshot();
+    for(int i=0; i<data.length; i++) {
+      int[] more = new int[1+rnd.nextInt(20)];
+      small.addData(more);
+      big.addData(more);
+      offHeap.addData(more);
+    }
+    offHeap.close();
+    assertTrue(bigView.size() < big.size());
+    for(int i=0; i<data.length; i++) {
+      assertTrue(Arrays.equals(data[i], smallView.getData((int)indexes[0][i])));
+      assertTrue(Arrays.equals(data[i], bigView.getData(indexes[1][i])));
+      assertTrue(Arrays.equals(data[i], offHeapView.getData(indexes[2][i])));
+    }
+    try {
+      bigView.addData(data[0]);
+      fail("A snapshot must not be modified");
+    } catch(RuntimeException ex) {
+      // expected
+    }
+    offHeapView.close();
+  }
+
+  @Test
+  public void bigBytesTest1() {
+    // lengths of 128 and more need more than one byte for the length
+    BigStoreOfBytes bytes = new BigStoreOfBytes(9);
+    Random rnd = new Random(18);
+    byte[][] data = new byte[300][];
+    long[] indexes = new long[data.length];
+    for(int i=0; i<data.length; i++) {
+      data[i] = new byte[rnd.nextInt(300)];
+      rnd.nextBytes(data[i]);
+      indexes[i] = (i%3 == 0) ? bytes.addFixedLengthData(data[i]) : bytes.addData(data[i]);
+    }
+    assertTrue(bytes.size() > 512*50);
+    for(int i=0; i<data.length; i++) {
+      if(i%3 == 0) {
+        assertTrue(Arrays.equals(data[i], bytes.getFixedLengthData(indexes[i], data[i].length)));
+      } else {
+        assertTrue(Arrays.equals(data[i], bytes.getData(indexes[i])));
+        assertEquals(data[i].length, bytes.getSize(indexes[i]));
+        int header = data[i].length < 128 ? 1 : 2;
+        assertEquals(bytes.getOffset(indexes[i])+header, bytes.getDataOffset(indexes[i]));
+      }
+    }
+    BigStoreOfBytes copy = new BigStoreOfBytes(bytes);
+    bytes.replaceFixedLengthData(indexes[0], new byte[data[0].length]);
+    assertTrue(Arrays.equals(data[0], copy.getFixedLengthData(indexes[0], data[0].length)));
+    assertTrue(Arrays.equals(data[1], copy.getData(indexes[1])));
+    try {
+      bytes.addData(new byte[511]);
+      fail("Chunk larger than a segment must not be added");
+    } catch(RuntimeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void offHeapTest1() throws Exception {
+    // small segments, so data spans segments
+    OffHeapStoreOfInts ints = new OffHeapStoreOfInts(4);
+    OffHeapStoreOfChars chars = new OffHeapStoreOfChars(4);
+    Random rnd = new Random(17);
+    int[][] data = new int[100][];
+    long[] indexes = new long[data.length];
+    long[] charIndexes = new long[data.length];
+    for(int i=0; i<data.length; i++) {
+      data[i] = new int[rnd.nextInt(40)];
+      for(int j=0; j<data[i].length; j++) {
+        data[i][j] = rnd.nextInt();
+      }
+      indexes[i] = ints.addData(data[i]);
+      charIndexes[i] = chars.addData(toChars(data[i]));
+    }
+    long list = chars.addListData(toChars(data[0]));
+    for(int i=1; i<10; i++) {
+      assertEquals(list, chars.addListData(list, toChars(data[i])));
+    }
+    long fixed = ints.addFixedLengthData(data[1]);
+    for(int i=0; i<data.length; i++) {
+      assertTrue(Arrays.equals(data[i], ints.getData(indexes[i])));
+      assertTrue(Arrays.equals(toChars(data[i]), chars.getData(charIndexes[i])));
+    }
+    assertTrue(Arrays.equals(data[1], ints.getFixedLengthData(fixed, data[1].length)));
+    ints.replaceFixedLengthData(fixed, data[1].clone());
+    assertEquals(10, chars.getListSize(list));
+    for(int i=0; i<10; i++) {
+      assertTrue(Arrays.equals(toChars(data[i]), chars.getListData(list, i)));
+      if(i == 0 || !Arrays.equals(data[i], data[0])) {
+        assertEquals(i, chars.findListElementIndex(list, toChars(data[i])));
+      }
+    }
+    assertEquals(-1, chars.findListElementIndex(list, "not there".toCharArray()));
+    // serialization copies the data back into off-heap memory
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(ints);
+    out.close();
+    OffHeapStoreOfInts copy = (OffHeapStoreOfInts)new ObjectInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())).readObject();
+    assertEquals(ints.size(), copy.size());
+    assertTrue(Arrays.equals(data[5], copy.getData(indexes[5])));
+    assertTrue(ints.getOffHeapBytes() >= 4*ints.size());
+    ints.close();
+    copy.close();
+    chars.close();
+    assertTrue(ints.isClosed());
+    try {
+      ints.addData(data[0]);
+      fail("Closed store must not be used");
+    } catch(RuntimeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void listTest1() {
+    // two long lists built at the same time, so their elements and
+    // directories are interleaved in the stores
+    StoreOfChars chars = new StoreOfChars();
+    OffHeapStoreOfChars offHeap = new OffHeapStoreOfChars(4);
+    // a list at index 0 cannot be appended to
+    chars.addData(new char[]{'x'});
+    int n = 1000;
+    int[] lists = new int[2];
+    long[] offHeapLists = new long[]{-1, -1};
+    for(int i=0; i<n; i++) {
+      for(int l=0; l<2; l++) {
+        char[] element = (l+":"+i).toCharArray();
+        lists[l] = chars.addListData(lists[l], element);
+        offHeapLists[l] = offHeap.addListData(offHeapLists[l], element);
+      }
+    }
+    assertEquals(new String(new char[]{'x'}), new String(chars.getData(0)));
+    for(int l=0; l<2; l++) {
+      assertEquals(n, chars.getListSize(lists[l]));
+      assertEquals(n, offHeap.getListSize(offHeapLists[l]));
+      for(int i=0; i<n; i++) {
+        String element = l+":"+i;
+        assertEquals(element, new String(chars.getListData(lists[l], i)));
+        assertEquals(element, new String(offHeap.getListData(offHeapLists[l], i)));
+      }
+      assertEquals(0, chars.findListElementIndex(lists[l], (l+":0").toCharArray()));
+      assertEquals(n-1, chars.findListElementIndex(lists[l], (l+":"+(n-1)).toCharArray()));
+      assertEquals(-1, chars.findListElementIndex(lists[l], (l+":"+n).toCharArray()));
+      assertEquals(517, offHeap.findListElementIndex(offHeapLists[l], (l+":517").toCharArray()));
+      assertEquals(-1, offHeap.findListElementIndex(offHeapLists[l], "x".toCharArray()));
+    }
+    try {
+      chars.getListData(lists[0], n);
+      fail("Expected an exception for an element after the end of the list");
+    } catch(RuntimeException ex) {
+      // expected
+    }
+    offHeap.close();
+  }
+
+  @Test
+  public void internTest1() {
+    StoreOfInts ints = new StoreOfInts(16, true);
+    StoreOfChars chars = new StoreOfChars(16, true);
+    assertTrue(ints.isInterning());
+    assertFalse(new StoreOfInts().isInterning());
+    Random rnd = new Random(23);
+    // few distinct values, so most chunks added are duplicates
+    int[][] values = new int[200][];
+    for(int i=0; i<values.length; i++) {
+      values[i] = new int[rnd.nextInt(5)];
+      for(int j=0; j<values[i].length; j++) {
+        values[i][j] = rnd.nextInt(3);
+      }
+    }
+    Map<String,Integer> first = new HashMap<String,Integer>();
+    for(int k=0; k<5000; k++) {
+      int[] value = values[rnd.nextInt(values.length)];
+      String key = Arrays.toString(value);
+      int index = ints.addData(value);
+      Integer expected = first.get(key);
+      if(expected == null) {
+        assertEquals(-1, chars.findChunk(toChars(value)));
+        first.put(key, index);
+      } else {
+        assertEquals(expected.intValue(), index);
+      }
+      assertEquals(index, ints.findChunk(value));
+      assertEquals(chars.addData(toChars(value)), chars.findChunk(toChars(value)));
+      assertTrue(Arrays.equals(value, ints.getData(index)));
+    }
+    // every distinct chunk is stored once, with its length
+    int stored = 0;
+    for(String key : first.keySet()) {
+      stored += 1+ints.getSize(first.get(key));
+    }
+    assertEquals(stored, ints.size());
+    assertEquals(-1, ints.findChunk(new int[]{7, 7, 7}));
+    // fixed length data is not interned
+    int fixed = ints.addFixedLengthData(new int[]{0});
+    assertTrue(fixed != ints.addFixedLengthData(new int[]{0}));
+    // list elements after the first are interned too
+    int list = chars.addListData(0, "a".toCharArray());
+    list = chars.addListData(list, "b".toCharArray());
+    list = chars.addListData(list, "a".toCharArray());
+    list = chars.addListData(list, "c".toCharArray());
+    assertEquals(0, chars.findListElementIndex(list, "a".toCharArray()));
+    assertEquals(3, chars.findListElementIndex(list, "c".toCharArray()));
+    assertEquals(-1, chars.findListElementIndex(list, "d".toCharArray()));
+    assertEquals("b", new String(chars.getListData(list, 1)));
+    try {
+      new StoreOfChars().findChunk("a".toCharArray());
+      fail("Expected an exception for findChunk without interning");
+    } catch(RuntimeException ex) {
+      // expected
+    }
+  }
+  
+  private static char[] toChars(int[] data) {
+    char[] chars = new char[data.length];
+    for(int i=0; i<data.length; i++) {
+      chars[i] = (char)data[i];
+    }
+    return chars;
+  }
+}